@@ -1,54 +1,194 @@
 import ast.ASTNode;
-import interpreter.Interpreter;
+import ast.RootNode;
+import compiler.Compiler;
+import interpreter.AstProgram;
+import interpreter.Linker;
+import interpreter.StacklessInterpreter;
+import jvm.JvmProgram;
 import norswap.autumn.Autumn;
+import norswap.autumn.ParseMetrics;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
 import norswap.autumn.positions.LineMap;
 import norswap.autumn.positions.LineMapString;
 import norswap.uranium.Reactor;
 import norswap.utils.visitors.Walker;
+import vm.Disassembler;
+import vm.VM;
+import vm.VMCompiler;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static java.lang.System.exit;
 
 public class NS {
+    /**
+     * Usage: {@code NS [--engine=ast|stackless|closure|jvm|vm] [--parser=autumn|fast]
+     * [--disassemble] [--profile-parse] [--cache=<directory> [--cache-size=<bytes>]] <file> <args...>}
+     *
+     * <p>The engine defaults to {@code ast}, the reference {@link Interpreter}. The {@code stackless}
+     * engine is a variant of it whose recursion depth is not bounded by the Java stack (see
+     * {@link StacklessInterpreter}). The {@code closure}
+     * engine compiles the tree into executable objects first (see {@link Compiler}), the
+     * {@code jvm} engine compiles it to JVM bytecode (see {@link JvmProgram}), and the {@code vm}
+     * engine compiles it to register-based bytecode run by the {@link VM}.
+     *
+     * <p>The parser defaults to {@code autumn}, the {@link NSParser} grammar. The {@code fast}
+     * parser builds the same trees in a fraction of the time (see {@link NSFastParser}), and only
+     * falls back on the grammar to report the errors of the programs that don't parse.
+     *
+     * <p>{@code --disassemble} prints the code compiled for the {@link VM} instead of running the
+     * program.
+     *
+     * <p>{@code --profile-parse} prints where parsing the program spends its time, per rule of the
+     * grammar, to the standard error (see {@link NSParser#profile}). The program is then parsed by
+     * the grammar, whatever the parser.
+     *
+     * <p>{@code --cache} keeps the analysed programs in the given directory, up to
+     * {@code --cache-size} bytes (64 MiB by default), so that running them again skips parsing and
+     * semantic analysis (see {@link ProgramCache}).
+     *
+     * <p>To run many programs, or the same one many times, see {@link NSServer}.
+     */
     public static void main(String[] args) {
-        String filepath = args[0];
-        String[] nsargs = Arrays.stream(args).skip(1).toArray(String[]::new);
+        int status = run(args, NSParser::new, null);
+        if (status != 0)
+            exit(status);
+    }
+
+    /**
+     * Runs NS with the given command line arguments (see {@link #main}), parsing with the grammar
+     * supplied by {@code grammar} if needed, and returns the exit status.
+     *
+     * <p>If {@code cache} is not null, programs prepared to run on an engine are stored in it,
+     * keyed by the engine and a hash of their source, so that running the same source on the same
+     * engine again skips parsing, semantic analysis, linking and compiling.
+     */
+    static int run(String[] args, Supplier<NSParser> grammar, Map<String, Function<String[], Object>> cache) {
+        String engine = "ast";
+        boolean fastParser = false;
+        boolean disassemble = false;
+        boolean profileParse = false;
+        Path cacheDirectory = null;
+        long cacheSize = 64 << 20;
+        int start = 0;
+        for (; start < args.length && args[start].startsWith("--"); ++start) {
+            if (args[start].startsWith("--engine=")) {
+                engine = args[start].substring("--engine=".length());
+            } else if (args[start].equals("--parser=autumn") || args[start].equals("--parser=fast")) {
+                fastParser = args[start].equals("--parser=fast");
+            } else if (args[start].equals("--disassemble")) {
+                disassemble = true;
+            } else if (args[start].equals("--profile-parse")) {
+                profileParse = true;
+            } else if (args[start].startsWith("--cache=")) {
+                cacheDirectory = Path.of(args[start].substring("--cache=".length()));
+            } else if (args[start].startsWith("--cache-size=")) {
+                cacheSize = Long.parseLong(args[start].substring("--cache-size=".length()));
+            } else {
+                System.err.println("Unknown option " + args[start]);
+                return 1;
+            }
+        }
+
+        String filepath = args[start];
+        String[] nsargs = Arrays.stream(args).skip(start + 1).toArray(String[]::new);
+        String content;
         try {
-            Path file = Path.of(filepath);
+            content = Files.readString(Path.of(filepath));
+        } catch (IOException e) {
+            System.err.println("Cannot find file "+filepath);
+            return 0;
+        }
+
+        ProgramCache programCache = cacheDirectory == null ? null : new ProgramCache(cacheDirectory, cacheSize);
+        String key = cache == null && programCache == null ? null : ProgramCache.key(content);
+        Function<String[], Object> program = cache == null || disassemble ? null : cache.get(engine + " " + key);
+
+        if (program == null) {
+            // a cached tree is linked already, and needs no reactor (see Linker#link)
+            RootNode tree = programCache == null ? null : programCache.read(key);
+            Reactor reactor = null;
 
-            String content = Files.readString(file);
+            if (tree == null) {
+                if (fastParser && !profileParse)
+                    tree = NSFastParser.parse(content);
 
-            NSParser grammar = new NSParser();
-            ParseOptions options = ParseOptions.builder().get();
-            ParseResult result = Autumn.parse(grammar.root, content, options);
-            LineMap lineMap = new LineMapString(filepath, content);
+                if (tree == null) {
+                    ParseOptions options = profileParse
+                        ? ParseOptions.builder().metrics(ParseMetrics::new).get()
+                        : ParseOptions.builder().get();
+                    ParseResult result = Autumn.parse(grammar.get().root, content, options);
+                    LineMap lineMap = new LineMapString(filepath, content);
+                    if (profileParse)
+                        System.err.print(NSParser.profile(result.parseMetrics));
 
-            if (!result.fullMatch) {
-                System.out.println(result.toString(lineMap, false));
-                exit(1);
+                    if (!result.fullMatch) {
+                        System.out.println(result.toString(lineMap, false));
+                        return 1;
+                    }
+                    tree = (RootNode) result.topValue();
+                }
+
+                reactor = new Reactor();
+                Walker<ASTNode> walker = SemanticAnalysis.createWalker(reactor);
+                walker.walk(tree);
+                reactor.run();
+
+                if (!reactor.errors().isEmpty()) {
+                    System.out.println(reactor.reportErrors(Object::toString));
+                    return 0;
+                }
+
+                if (programCache != null) {
+                    Linker.link(reactor, tree);
+                    programCache.write(key, tree);
+                }
             }
 
-            ASTNode tree = (ASTNode) result.topValue();
-            Reactor reactor = new Reactor();
-            Walker<ASTNode> walker = SemanticAnalysis.createWalker(reactor);
-            walker.walk(tree);
-            reactor.run();
+            if (disassemble) {
+                System.out.print(Disassembler.disassemble(VMCompiler.compile(reactor, tree)));
+                return 0;
+            }
 
-            if (!reactor.errors().isEmpty()) {
-                System.out.println(reactor.reportErrors(Object::toString));
-                return;
+            program = prepare(engine, reactor, tree);
+            if (program == null) {
+                System.err.println("Unknown engine " + engine);
+                return 1;
             }
+            if (cache != null)
+                cache.put(engine + " " + key, program);
+        }
 
-            Interpreter interpreter = new Interpreter(reactor, nsargs);
-            Object res = interpreter.interpret(tree);
-        } catch (IOException e) {
-            System.err.println("Cannot find file "+filepath);
+        program.apply(nsargs);
+        return 0;
+    }
+
+    /**
+     * Prepares the analysed tree to run on the given engine, and returns the function that runs
+     * it with the given command line arguments, or null if there is no such engine.
+     */
+    private static Function<String[], Object> prepare(String engine, Reactor reactor, RootNode tree) {
+        switch (engine) {
+            case "ast":
+                return AstProgram.link(reactor, tree)::run;
+            case "stackless":
+                return nsargs -> new StacklessInterpreter(reactor, nsargs).interpret(tree);
+            case "closure":
+                return Compiler.compile(reactor, tree)::run;
+            case "jvm":
+                return JvmProgram.compile(reactor, tree)::run;
+            case "vm":
+                vm.Program code = VMCompiler.compile(reactor, tree);
+                return nsargs -> new VM(code).run(nsargs);
+            default:
+                return null;
         }
     }
 }
@@ -0,0 +1,133 @@
+import ast.ASTNode;
+import ast.RootNode;
+import jvm.BytecodeCompiler;
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.autumn.positions.LineMap;
+import norswap.autumn.positions.LineMapString;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static java.lang.System.exit;
+
+/**
+ * Ahead-of-time compiler: compiles a NS file to a JVM class (see {@link BytecodeCompiler}) and
+ * writes it to disk, so that running the program skips parsing, semantic analysis and code
+ * generation.
+ */
+public class NSC {
+    /**
+     * Usage: {@code NSC [--class=<name>] <file> [<output>]}
+     *
+     * <p>The class is named after the file unless {@code --class} is given. If the output ends
+     * with {@code .jar}, a jar whose main class is the compiled program is written, otherwise the
+     * class file is written into the output directory (by default, the current directory).
+     *
+     * <p>The compiled program only needs the runtime classes of NS on its classpath, e.g.
+     * {@code java -cp ns.jar:program.jar Program <args...>}.
+     */
+    public static void main(String[] args) {
+        String className = null;
+        int start = 0;
+        for (; start < args.length && args[start].startsWith("--"); ++start) {
+            if (args[start].startsWith("--class=")) {
+                className = args[start].substring("--class=".length());
+            } else {
+                System.err.println("Unknown option " + args[start]);
+                exit(1);
+            }
+        }
+
+        String filepath = args[start];
+        Path output = Path.of(start + 1 < args.length ? args[start + 1] : ".");
+        if (className == null)
+            className = className(Path.of(filepath));
+
+        try {
+            String content = Files.readString(Path.of(filepath));
+
+            NSParser grammar = new NSParser();
+            ParseOptions options = ParseOptions.builder().get();
+            ParseResult result = Autumn.parse(grammar.root, content, options);
+            LineMap lineMap = new LineMapString(filepath, content);
+
+            if (!result.fullMatch) {
+                System.out.println(result.toString(lineMap, false));
+                exit(1);
+            }
+
+            ASTNode tree = (ASTNode) result.topValue();
+            Reactor reactor = new Reactor();
+            Walker<ASTNode> walker = SemanticAnalysis.createWalker(reactor);
+            walker.walk(tree);
+            reactor.run();
+
+            if (!reactor.errors().isEmpty()) {
+                System.out.println(reactor.reportErrors(Object::toString));
+                exit(1);
+            }
+
+            byte[] code = BytecodeCompiler.compile(reactor, (RootNode) tree, className);
+
+            if (output.toString().endsWith(".jar"))
+                writeJar(output, className, code);
+            else {
+                Path classFile = output.resolve(className.replace('.', '/') + ".class");
+                Files.createDirectories(classFile.getParent());
+                Files.write(classFile, code);
+            }
+
+        } catch (IOException e) {
+            System.err.println("Cannot compile " + filepath + ": " + e);
+            exit(1);
+        }
+    }
+
+    /**
+     * Derives a class name from the name of the file, e.g. {@code fizz-buzz.ns} gives
+     * {@code FizzBuzz}.
+     */
+    private static String className(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".ns"))
+            name = name.substring(0, name.length() - 3);
+
+        StringBuilder builder = new StringBuilder();
+        boolean upper = true;
+        for (char c : name.toCharArray()) {
+            if (!Character.isJavaIdentifierPart(c)) {
+                upper = true;
+                continue;
+            }
+            builder.append(upper ? Character.toUpperCase(c) : c);
+            upper = false;
+        }
+        if (builder.length() == 0 || !Character.isJavaIdentifierStart(builder.charAt(0)))
+            builder.insert(0, "NS");
+        return builder.toString();
+    }
+
+    private static void writeJar(Path output, String className, byte[] code) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        try (OutputStream file = Files.newOutputStream(output);
+             JarOutputStream jar = new JarOutputStream(file, manifest)) {
+            jar.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+            jar.write(code);
+            jar.closeEntry();
+        }
+    }
+}
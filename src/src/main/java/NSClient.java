@@ -0,0 +1,82 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.System.exit;
+
+/**
+ * Runs a program on a {@link NSServer}, as {@link NS} would run it. The client only connects to
+ * the server and copies the output of the run, so it starts much faster than {@link NS}, which
+ * has to build the grammar and to prepare the program first.
+ */
+public class NSClient {
+    /**
+     * Usage: {@code NSClient [--port=<port> | --socket=<path>] <NS arguments...>}
+     *
+     * <p>The options select the server as for {@link NSServer}, the other arguments are those of
+     * {@link NS}. The path of the program is made absolute before being sent to the server, and
+     * the client exits with the status of the run.
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = NSServer.address(args);
+        List<String> nsargs = new ArrayList<>();
+        boolean file = false;
+        for (String arg : args) {
+            if (!file && (arg.startsWith("--port=") || arg.startsWith("--socket=")))
+                continue;
+            if (!file && !arg.startsWith("--")) {
+                file = true;
+                arg = Path.of(arg).toAbsolutePath().toString();
+            }
+            nsargs.add(arg);
+        }
+
+        SocketChannel server;
+        try {
+            server = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+            server.connect(address);
+        } catch (IOException e) {
+            System.err.println("Cannot connect to the NS server at " + address);
+            exit(1);
+            return;
+        }
+
+        try (server) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(server)));
+            request.writeInt(nsargs.size());
+            for (String arg : nsargs)
+                request.writeUTF(arg);
+            request.flush();
+
+            DataInputStream response = new DataInputStream(Channels.newInputStream(server));
+            while (true) {
+                byte kind = response.readByte();
+                int length = response.readInt();
+                if (kind == NSServer.EXIT) {
+                    System.out.flush();
+                    exit(length);
+                }
+                byte[] bytes = response.readNBytes(length);
+                PrintStream stream = kind == NSServer.ERR ? System.err : System.out;
+                stream.write(bytes, 0, bytes.length);
+                stream.flush();
+            }
+        } catch (EOFException e) {
+            System.err.println("The NS server closed the connection before the end of the run");
+            exit(1);
+        }
+    }
+}
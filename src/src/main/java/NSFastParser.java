@@ -0,0 +1,787 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A hand-written parser for the language of {@link NSParser}, which builds the same trees much
+ * faster: the source is split into tokens first, then parsed by recursive descent over the tokens,
+ * with one loop per level of precedence for the binary operators.
+ *
+ * <p>The parser has a method per rule of the grammar, which tries the alternatives of the rule in
+ * the same order and backtracks in the same way, so that it accepts the same sources and
+ * builds the same trees, including for the sources that the grammar parses in surprising ways
+ * (e.g. {@code (a + b) * 2} is not an expression, as its parentheses are parsed as those of
+ * a boolean operation). Any change to the grammar must be made to this parser too, which
+ * {@code ParserDifferentialTests} checks.
+ *
+ * <p>The parser does not report errors: {@link #parse} returns null for the sources the grammar
+ * rejects, which the grammar can then parse again to report the error.
+ */
+public final class NSFastParser {
+
+    // ---------------------------------------------------------------------------------------------
+    // Token kinds
+
+    private static final int EOF      = 0;
+    private static final int ERROR    = 1;
+    private static final int COMMENT  = 2;
+    private static final int IDENT    = 3;
+    private static final int INTEGER  = 4;
+    private static final int STRING   = 5;
+
+    private static final int TRUE     = 6;
+    private static final int FALSE    = 7;
+    private static final int NONE     = 8;
+    private static final int FOR      = 9;
+    private static final int PFOR     = 10;
+    private static final int IN       = 11;
+    private static final int WHILE    = 12;
+    private static final int IF       = 13;
+    private static final int ELSE     = 14;
+    private static final int ELSIF    = 15;
+    private static final int DEF      = 16;
+    private static final int END      = 17;
+    private static final int RETURN   = 18;
+    private static final int FINAL    = 19;
+    private static final int NOT      = 20;
+    private static final int AND      = 21;
+    private static final int OR       = 22;
+
+    private static final int LPAREN   = 23;
+    private static final int RPAREN   = 24;
+    private static final int LBRACKET = 25;
+    private static final int RBRACKET = 26;
+    private static final int LBRACE   = 27;
+    private static final int RBRACE   = 28;
+    private static final int COLON    = 29;
+    private static final int COMMA    = 30;
+    private static final int EQUAL    = 31;
+    private static final int MUL      = 32;
+    private static final int DIV      = 33;
+    private static final int MOD      = 34;
+    private static final int ADD      = 35;
+    private static final int SUB      = 36;
+    private static final int L        = 37;
+    private static final int G        = 38;
+    private static final int LEQ      = 39;
+    private static final int GEQ      = 40;
+    private static final int EQ       = 41;
+    private static final int NEQ      = 42;
+
+    // ---------------------------------------------------------------------------------------------
+    // Levels of precedence of the binary operators, from the loosest
+
+    private static final int DISJUNCTION    = 1;
+    private static final int CONJUNCTION    = 2;
+    private static final int EQUALITY       = 3;
+    private static final int RELATIONAL     = 4;
+    private static final int ADDITIVE       = 5;
+    private static final int MULTIPLICATIVE = 6;
+
+    /** Level of each token kind, 0 if it isn't a binary operator. */
+    private static final int[] LEVELS = new int[NEQ + 1];
+
+    /** {@link BinaryNode} code of each binary operator. */
+    private static final int[] CODES = new int[NEQ + 1];
+
+    static {
+        operator(OR,  DISJUNCTION,    BinaryNode.OR);
+        operator(AND, CONJUNCTION,    BinaryNode.AND);
+        operator(EQ,  EQUALITY,       BinaryNode.EQ);
+        operator(NEQ, EQUALITY,       BinaryNode.NEQ);
+        operator(L,   RELATIONAL,     BinaryNode.L);
+        operator(G,   RELATIONAL,     BinaryNode.G);
+        operator(LEQ, RELATIONAL,     BinaryNode.LEQ);
+        operator(GEQ, RELATIONAL,     BinaryNode.GEQ);
+        operator(IN,  RELATIONAL,     BinaryNode.IN);
+        operator(ADD, ADDITIVE,       BinaryNode.ADD);
+        operator(SUB, ADDITIVE,       BinaryNode.SUB);
+        operator(MUL, MULTIPLICATIVE, BinaryNode.MUL);
+        operator(DIV, MULTIPLICATIVE, BinaryNode.DIV);
+        operator(MOD, MULTIPLICATIVE, BinaryNode.MOD);
+    }
+
+    private static void operator(int kind, int level, int code) {
+        LEVELS[kind] = level;
+        CODES[kind] = code;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final int[] kinds;
+    private final String[] texts;
+    private int pos = 0;
+
+    // Results of the rules that the grammar memoizes, as they are parsed again after backtracking,
+    // by token. The end of a result is stored plus one, so that 0 means "not parsed yet" and -1
+    // means "failed".
+
+    private final ASTNode[] operands;
+    private final int[] operandEnds;
+    private final FunctionCallNode[] calls;
+    private final int[] callEnds;
+
+    private NSFastParser(Lexer lexer) {
+        kinds = lexer.kinds;
+        texts = lexer.texts;
+        operands = new ASTNode[kinds.length];
+        operandEnds = new int[kinds.length];
+        calls = new FunctionCallNode[kinds.length];
+        callEnds = new int[kinds.length];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the tree {@link NSParser} builds for the given source, or null if it doesn't parse.
+     */
+    public static RootNode parse(String source) {
+        NSFastParser parser = new NSFastParser(new Lexer(source));
+        BlockNode block = parser.statementSequence();
+        return parser.kinds[parser.pos] == EOF ? new RootNode(block) : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Helpers
+
+    private boolean accept(int kind) {
+        if (kinds[pos] != kind)
+            return false;
+        ++pos;
+        return true;
+    }
+
+    /** Backtracks to {@code start}, and returns null for the failed rule. */
+    private <T> T fail(int start) {
+        pos = start;
+        return null;
+    }
+
+    /** Returns the list the grammar builds (with {@code ActionContext#$list}) from the items. */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> list(ArrayList<T> items) {
+        return (List<T>) Arrays.asList(items.toArray());
+    }
+
+    /**
+     * Parses one or more {@code item}s separated by commas, or returns null if there are none. As
+     * for any operator, a comma that isn't followed by an item is left to the caller.
+     */
+    private <T> List<T> separated(Supplier<T> item) {
+        T first = item.get();
+        if (first == null)
+            return null;
+        ArrayList<T> items = new ArrayList<>();
+        items.add(first);
+        while (kinds[pos] == COMMA) {
+            int start = pos++;
+            T next = item.get();
+            if (next == null) {
+                pos = start;
+                break;
+            }
+            items.add(next);
+        }
+        return list(items);
+    }
+
+    /**
+     * Parses the operators of the given level and their right operands, after {@code left},
+     * from left to right. An operator that isn't followed by an operand is left to the caller.
+     */
+    private ASTNode binary(ASTNode left, int level, Supplier<ASTNode> operand) {
+        if (left == null)
+            return null;
+        while (LEVELS[kinds[pos]] == level) {
+            int start = pos;
+            int code = CODES[kinds[pos++]];
+            ASTNode right = operand.get();
+            if (right == null) {
+                pos = start;
+                break;
+            }
+            left = new BinaryNode(left, right, code);
+        }
+        return left;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Values
+
+    private IdentifierNode identifier() {
+        return kinds[pos] == IDENT ? new IdentifierNode(texts[pos++]) : null;
+    }
+
+    private StringNode string() {
+        return kinds[pos] == STRING ? new StringNode(texts[pos++]) : null;
+    }
+
+    private IntegerNode integer() {
+        return kinds[pos] == INTEGER ? new IntegerNode(Long.parseLong(texts[pos++])) : null;
+    }
+
+    private FunctionCallNode functionCall() {
+        int start = pos;
+        int end = callEnds[start];
+        if (end != 0) {
+            if (end < 0)
+                return null;
+            pos = end - 1;
+            return calls[start];
+        }
+
+        FunctionCallNode call = null;
+        IdentifierNode name = identifier();
+        if (name != null && accept(LPAREN)) {
+            List<ASTNode> args = separated(this::expression);
+            if (accept(RPAREN))
+                call = new FunctionCallNode(name, args);
+        }
+        if (call == null)
+            pos = start;
+        calls[start] = call;
+        callEnds[start] = call == null ? -1 : pos + 1;
+        return call;
+    }
+
+    /** {@code [expression]}, after an indexed value */
+    private ASTNode index() {
+        int start = pos;
+        if (!accept(LBRACKET))
+            return null;
+        ASTNode index = expression();
+        return index != null && accept(RBRACKET) ? index : fail(start);
+    }
+
+    private ASTNode multipleIndexerAccess() {
+        int start = pos;
+        ASTNode value = functionCall();
+        if (value == null)
+            value = identifier();
+        if (value == null)
+            return null;
+        ASTNode index = index();
+        if (index == null)
+            return fail(start);
+        do value = new BinaryNode(value, index, BinaryNode.IDX_ACCESS);
+        while ((index = index()) != null);
+        return value;
+    }
+
+    private ASTNode anyValue() {
+        ASTNode value = multipleIndexerAccess();
+        if (value == null)
+            value = functionCall();
+        if (value == null)
+            value = identifier();
+        if (value == null && accept(NONE))
+            value = new NoneNode();
+        return value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Numerical operations
+
+    private ASTNode parenNumericalOperation() {
+        int start = pos;
+        if (!accept(LPAREN))
+            return null;
+        ASTNode operation = numericalOperation();
+        return operation != null && accept(RPAREN) ? operation : fail(start);
+    }
+
+    private ASTNode numericalOperator() {
+        ASTNode operator = parenNumericalOperation();
+        if (operator == null)
+            operator = integer();
+        if (operator == null)
+            operator = anyValue();
+        return operator;
+    }
+
+    private ASTNode multiplication() {
+        return binary(numericalOperator(), MULTIPLICATIVE, this::numericalOperator);
+    }
+
+    private ASTNode numericalNegation() {
+        int start = pos;
+        if (!accept(SUB))
+            return null;
+        ASTNode operand = multiplication();
+        return operand != null ? new UnaryNode(operand, UnaryNode.NEGATION) : fail(start);
+    }
+
+    private ASTNode additionOperand() {
+        ASTNode operand = numericalNegation();
+        return operand != null ? operand : multiplication();
+    }
+
+    private ASTNode numericalOperation() {
+        ASTNode operation = binary(additionOperand(), ADDITIVE, this::additionOperand);
+        return operation != null ? operation : parenNumericalOperation();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Boolean operations
+
+    private ASTNode comparisonOperand() {
+        int start = pos;
+        int end = operandEnds[start];
+        if (end != 0) {
+            if (end < 0)
+                return null;
+            pos = end - 1;
+            return operands[start];
+        }
+
+        ASTNode operand = string();
+        if (operand == null)
+            operand = indexable();
+        if (operand == null)
+            operand = boolOperator();
+        if (operand == null)
+            operand = numericalOperation();
+        operands[start] = operand;
+        operandEnds[start] = operand == null ? -1 : pos + 1;
+        return operand;
+    }
+
+    /**
+     * Both {@code eq_neq}, which needs an operator, and {@code comparison}, which the grammar tries
+     * next, from the same first operand.
+     */
+    private ASTNode comparison() {
+        ASTNode first = comparisonOperand();
+        if (first == null)
+            return null;
+        ASTNode equality = binary(first, EQUALITY, this::comparisonOperand);
+        return equality != first ? equality : binary(first, RELATIONAL, this::comparisonOperand);
+    }
+
+    private ASTNode andOperation() {
+        return binary(comparison(), CONJUNCTION, this::comparison);
+    }
+
+    private ASTNode orOperation() {
+        return binary(andOperation(), DISJUNCTION, this::andOperation);
+    }
+
+    private ASTNode parenBoolOperation() {
+        int start = pos;
+        if (!accept(LPAREN))
+            return null;
+        ASTNode operation = orOperation();
+        if (operation == null)
+            operation = logicalNegation();
+        return operation != null && accept(RPAREN) ? operation : fail(start);
+    }
+
+    private ASTNode boolOperator() {
+        ASTNode operator = parenBoolOperation();
+        if (operator == null)
+            operator = logicalNegation();
+        if (operator == null && accept(TRUE))
+            operator = new BoolNode(true);
+        if (operator == null && accept(FALSE))
+            operator = new BoolNode(false);
+        return operator;
+    }
+
+    private ASTNode logicalNegation() {
+        int start = pos;
+        if (!accept(NOT))
+            return null;
+        ASTNode operand = boolOperator();
+        if (operand == null)
+            operand = anyValue();
+        return operand != null ? new UnaryNode(operand, UnaryNode.NOT) : fail(start);
+    }
+
+    private ASTNode bool() {
+        ASTNode bool = orOperation();
+        if (bool == null)
+            bool = logicalNegation();
+        if (bool == null)
+            bool = parenBoolOperation();
+        return bool;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Arrays, maps, sets and list comprehensions
+
+    private ASTNode fullArray() {
+        int start = pos;
+        if (!accept(LBRACKET))
+            return null;
+        List<ASTNode> elements = separated(this::expression);
+        return accept(RBRACKET) ? new ArrayNode(elements) : fail(start);
+    }
+
+    private ASTNode emptyArray() {
+        int start = pos;
+        if (!accept(LBRACKET) || !accept(COLON))
+            return fail(start);
+        ASTNode size = numericalOperation();
+        return size != null && accept(RBRACKET) ? new ArrayNode(size) : fail(start);
+    }
+
+    private BinaryNode mapElement() {
+        int start = pos;
+        ASTNode key = expression();
+        if (key == null || !accept(COLON))
+            return fail(start);
+        ASTNode value = expression();
+        return value != null ? new BinaryNode(key, value, BinaryNode.PAIR) : fail(start);
+    }
+
+    private ASTNode map() {
+        int start = pos;
+        if (!accept(LBRACE))
+            return null;
+        List<BinaryNode> elements = separated(this::mapElement);
+        return accept(RBRACE) ? new MapNode(elements) : fail(start);
+    }
+
+    private ASTNode set() {
+        int start = pos;
+        if (!accept(LBRACE))
+            return null;
+        List<ASTNode> elements = separated(this::expression);
+        return elements != null && accept(RBRACE) ? new SetNode(elements) : fail(start);
+    }
+
+    private ASTNode indexable() {
+        ASTNode indexable = map();
+        if (indexable == null)
+            indexable = set();
+        if (indexable == null)
+            indexable = fullArray();
+        if (indexable == null)
+            indexable = emptyArray();
+        if (indexable == null)
+            indexable = listComprehension();
+        return indexable;
+    }
+
+    /** The iterable of a loop or list comprehension. */
+    private ASTNode iterable() {
+        ASTNode iterable = indexable();
+        return iterable != null ? iterable : anyValue();
+    }
+
+    private ASTNode listComprehension() {
+        int start = pos;
+        if (!accept(LBRACKET))
+            return null;
+        ASTNode expression = expression();
+        if (expression == null || !accept(FOR))
+            return fail(start);
+        IdentifierNode variable = identifier();
+        if (variable == null || !accept(IN))
+            return fail(start);
+        ASTNode iterable = iterable();
+        if (iterable == null)
+            return fail(start);
+        ASTNode condition = null;
+        int conditionStart = pos;
+        if (accept(IF) && (condition = bool()) == null)
+            pos = conditionStart;
+        return accept(RBRACKET)
+            ? new ListComprehensionNode(expression, variable, iterable, condition)
+            : fail(start);
+    }
+
+    private ASTNode expression() {
+        ASTNode expression = orOperation();
+        if (expression == null && accept(NONE))
+            expression = new NoneNode();
+        if (expression == null)
+            expression = indexable();
+        if (expression == null)
+            expression = string();
+        return expression;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Statements
+
+    private ASTNode variableAssignment() {
+        int start = pos;
+        if (accept(FINAL)) {
+            IdentifierNode variable = identifier();
+            ASTNode value = variable != null && accept(EQUAL) ? expression() : null;
+            if (value != null)
+                return new VarAssignmentNode(variable, value, true);
+            pos = start;
+        }
+
+        ASTNode variable = multipleIndexerAccess();
+        if (variable == null)
+            variable = identifier();
+        ASTNode value = variable != null && accept(EQUAL) ? expression() : null;
+        return value != null ? new VarAssignmentNode(variable, value) : fail(start);
+    }
+
+    private ASTNode return_() {
+        if (!accept(RETURN))
+            return null;
+        return new UnaryNode(expression(), UnaryNode.RETURN);
+    }
+
+    private ElseNode elsifBlock() {
+        int start = pos;
+        if (!accept(ELSIF))
+            return null;
+        ASTNode bool = bool();
+        if (bool == null || !accept(COLON))
+            return fail(start);
+        return new ElseNode(bool, statementSequence());
+    }
+
+    private ElseNode elseBlock() {
+        int start = pos;
+        if (!accept(ELSE))
+            return null;
+        return accept(COLON) ? new ElseNode(null, statementSequence()) : fail(start);
+    }
+
+    private ASTNode if_() {
+        int start = pos;
+        if (!accept(IF))
+            return null;
+        ASTNode bool = bool();
+        if (bool == null || !accept(COLON))
+            return fail(start);
+        BlockNode block = statementSequence();
+
+        ArrayList<ElseNode> elses = new ArrayList<>();
+        ElseNode elseBlock;
+        while ((elseBlock = elsifBlock()) != null)
+            elses.add(elseBlock);
+        if ((elseBlock = elseBlock()) != null)
+            elses.add(elseBlock);
+
+        return accept(END) ? new IfNode(bool, block, list(elses)) : fail(start);
+    }
+
+    private ASTNode while_() {
+        int start = pos;
+        if (!accept(WHILE))
+            return null;
+        ASTNode bool = bool();
+        if (bool == null || !accept(COLON))
+            return fail(start);
+        BlockNode block = statementSequence();
+        return accept(END) ? new WhileNode(bool, block) : fail(start);
+    }
+
+    /** Both for and pfor loops. */
+    private ASTNode for_() {
+        int start = pos;
+        boolean parallel = kinds[pos] == PFOR;
+        if (!accept(FOR) && !accept(PFOR))
+            return null;
+        IdentifierNode variable = identifier();
+        if (variable == null || !accept(IN))
+            return fail(start);
+        ASTNode iterable = iterable();
+        if (iterable == null || !accept(COLON))
+            return fail(start);
+        BlockNode block = statementSequence();
+        if (!accept(END))
+            return fail(start);
+        return parallel
+            ? new ForNode(variable, iterable, block, true)
+            : new ForNode(variable, iterable, block);
+    }
+
+    private ParameterNode param() {
+        IdentifierNode name = identifier();
+        return name != null ? new ParameterNode(name) : null;
+    }
+
+    private ASTNode functionDef() {
+        int start = pos;
+        if (!accept(DEF))
+            return null;
+        IdentifierNode name = identifier();
+        if (name == null || !accept(LPAREN))
+            return fail(start);
+        List<ParameterNode> params = separated(this::param);
+        if (!accept(RPAREN) || !accept(COLON))
+            return fail(start);
+        BlockNode block = statementSequence();
+        return accept(END) ? new FunctionDefinitionNode(name, params, block) : fail(start);
+    }
+
+    private ASTNode statement() {
+        switch (kinds[pos]) {
+            case DEF:    return functionDef();
+            case IF:     return if_();
+            case WHILE:  return while_();
+            case FOR:
+            case PFOR:   return for_();
+            case RETURN: return return_();
+            default:     return variableAssignment();
+        }
+    }
+
+    private BlockNode statementSequence() {
+        ArrayList<ASTNode> statements = new ArrayList<>();
+        while (true) {
+            ASTNode statement = statement();
+            if (statement == null && accept(COMMENT))
+                continue;
+            if (statement == null)
+                statement = expression();
+            if (statement == null)
+                break;
+            statements.add(statement);
+        }
+        return new BlockNode(list(statements));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Splits a source into the tokens of the grammar, quirks included: whitespace (spaces, tabs
+     * and line breaks) is only skipped after a token, not at the start of the source, while a
+     * comment is a token of its own, which runs to the end of its line (included) and is not
+     * followed by whitespace. Where the grammar has no token to match, the tokens end with an
+     * {@link #ERROR} token, which no rule accepts, instead of {@link #EOF}.
+     */
+    private static final class Lexer {
+        int[] kinds = new int[64];
+        String[] texts = new String[64];
+        private int count = 0;
+
+        Lexer(String source) {
+            int length = source.length();
+            int pos = 0;
+            while (pos < length) {
+                char c = source.charAt(pos);
+                int start = pos;
+
+                if (c == '#') {
+                    int newline = source.indexOf('\n', pos);
+                    pos = newline < 0 ? length : newline + 1;
+                    add(COMMENT, null);
+                    continue;
+                }
+
+                if (isIdStart(c)) {
+                    while (pos < length && isIdPart(source.charAt(pos)))
+                        ++pos;
+                    String word = source.substring(start, pos);
+                    int keyword = keyword(word);
+                    add(keyword < 0 ? IDENT : keyword, keyword < 0 ? word : null);
+                } else if (isDigit(c)) {
+                    while (pos < length && isDigit(source.charAt(pos)))
+                        ++pos;
+                    // an integer can't be followed by an identifier, but can be by a reserved word
+                    if (pos < length && isIdStart(source.charAt(pos))) {
+                        int end = pos;
+                        while (end < length && isIdPart(source.charAt(end)))
+                            ++end;
+                        if (keyword(source.substring(pos, end)) < 0)
+                            break;
+                    }
+                    add(INTEGER, source.substring(start, pos));
+                } else if (c == '"') {
+                    int quote = source.indexOf('"', pos + 1);
+                    if (quote < 0)
+                        break;
+                    pos = quote + 1;
+                    add(STRING, source.substring(start + 1, quote));
+                } else {
+                    int kind = punctuation(c, pos + 1 < length ? source.charAt(pos + 1) : '\0');
+                    if (kind < 0)
+                        break;
+                    pos += kind >= LEQ ? 2 : 1;
+                    add(kind, null);
+                }
+
+                while (pos < length && isWhitespace(source.charAt(pos)))
+                    ++pos;
+            }
+            add(pos < length ? ERROR : EOF, null);
+        }
+
+        private void add(int kind, String text) {
+            if (count == kinds.length) {
+                kinds = Arrays.copyOf(kinds, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+            }
+            kinds[count] = kind;
+            texts[count] = text;
+            ++count;
+        }
+
+        /** Returns the kind of the given punctuation, or -1 if it isn't one. */
+        private static int punctuation(char c, char next) {
+            switch (c) {
+                case '(': return LPAREN;
+                case ')': return RPAREN;
+                case '[': return LBRACKET;
+                case ']': return RBRACKET;
+                case '{': return LBRACE;
+                case '}': return RBRACE;
+                case ':': return COLON;
+                case ',': return COMMA;
+                case '*': return MUL;
+                case '/': return DIV;
+                case '%': return MOD;
+                case '+': return ADD;
+                case '-': return SUB;
+                case '=': return next == '=' ? EQ  : EQUAL;
+                case '<': return next == '=' ? LEQ : L;
+                case '>': return next == '=' ? GEQ : G;
+                case '!': return next == '=' ? NEQ : -1;
+                default:  return -1;
+            }
+        }
+
+        /** Returns the kind of the given reserved word, or -1 if it isn't one. */
+        private static int keyword(String word) {
+            switch (word) {
+                case "True":   return TRUE;
+                case "False":  return FALSE;
+                case "None":   return NONE;
+                case "for":    return FOR;
+                case "pfor":   return PFOR;
+                case "in":     return IN;
+                case "while":  return WHILE;
+                case "if":     return IF;
+                case "else":   return ELSE;
+                case "elsif":  return ELSIF;
+                case "def":    return DEF;
+                case "end":    return END;
+                case "return": return RETURN;
+                case "final":  return FINAL;
+                case "not":    return NOT;
+                case "and":    return AND;
+                case "or":     return OR;
+                default:       return -1;
+            }
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isIdStart(char c) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+        }
+
+        private static boolean isIdPart(char c) {
+            return isIdStart(c) || isDigit(c);
+        }
+    }
+}
@@ -1,16 +1,32 @@
 import norswap.autumn.Autumn;
 import norswap.autumn.Grammar;
+import norswap.autumn.ParseMetrics;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserMetrics;
 import norswap.autumn.actions.ActionContext;
 import norswap.autumn.positions.LineMapString;
 
 import ast.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public final class NSParser extends Grammar {
 
+    /**
+     * Number of results remembered by the memoized rules, which are those that the grammar retries
+     * at the same position after backtracking.
+     */
+    private static final int MEMO = 8;
+
     public rule NEWLINE = str("\n");
     public rule HASH    = str("#");
 
@@ -34,6 +50,7 @@ public final class NSParser extends Grammar {
     public rule NONE    = reserved("None").push($ -> new NoneNode());
 
     public rule FOR      = reserved("for");
+    public rule PFOR     = reserved("pfor");
     public rule IN       = reserved("in");
     public rule WHILE    = reserved("while");
     public rule IF       = reserved("if");
@@ -75,7 +92,7 @@ public final class NSParser extends Grammar {
     // Variable names
     public rule identifier_lit = identifier(seq(id_start, id_part.at_least(0))).push(ActionContext::str);
 
-    public rule identifier = identifier_lit.push($ -> new IdentifierNode($.$0()));
+    public rule identifier = identifier_lit.push($ -> new IdentifierNode($.$0())).memo(MEMO);
 
 
     // Strings
@@ -97,7 +114,7 @@ public final class NSParser extends Grammar {
             .infix(COMMA)).push(ActionContext::$list);
 
     public rule function_call = lazy(() -> seq(identifier, LPAREN, list.or_push_null(), RPAREN))
-                                .push($ -> new FunctionCallNode($.$0(), $.$1()));
+                                .push($ -> new FunctionCallNode($.$0(), $.$1())).memo(MEMO);
 
     // Array and map access
     public rule indexer_access = lazy(() -> seq(choice(function_call, identifier), LBRACKET, this.expression ,RBRACKET))
@@ -142,16 +159,20 @@ public final class NSParser extends Grammar {
 
     // BOOLEAN OPERATIONS
 
+    // Operand of comparisons, parsed by eq_neq first then again by comparison when there is no == or !=
+    public rule comparison_operand = lazy(() -> choice(string, this.indexable, this.bool_operator, numerical_operation)).memo(MEMO);
+
     // Value comparison
     public rule comparison = lazy(() -> left_expression()
-            .operand(choice(string, this.indexable, this.bool_operator, numerical_operation))
+            .operand(comparison_operand)
             .infix(L,   $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.L))
             .infix(G,   $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.G))
             .infix(LEQ, $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.LEQ))
-            .infix(GEQ, $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.GEQ)));
+            .infix(GEQ, $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.GEQ))
+            .infix(IN,  $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.IN)));
 
     public rule eq_neq = lazy(() -> left_expression()
-            .operand(choice(string, this.indexable, this.bool_operator, numerical_operation))
+            .operand(comparison_operand)
             .infix(EQ,  $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.EQ))
             .infix(NEQ, $ -> new BinaryNode($.$0(), $.$1(), BinaryNode.NEQ))
             .requireOperator());
@@ -202,7 +223,10 @@ public final class NSParser extends Grammar {
 
     public rule map = seq(LBRACE, map_elements_list.or_push_null(), RBRACE).push($ -> new MapNode($.$0()));
 
-    public rule indexable = lazy(() -> choice(map, array, this.list_comprehension));
+    // Set declaration
+    public rule set = seq(LBRACE, list, RBRACE).push($ -> new SetNode($.$0()));
+
+    public rule indexable = lazy(() -> choice(map, set, array, this.list_comprehension));
 
 
     // List comprehension
@@ -247,6 +271,9 @@ public final class NSParser extends Grammar {
     public rule for_ = lazy(() -> seq(FOR, identifier, IN, choice(indexable, any_value), COLON, this.statement_sequence, END))
                             .push($ -> new ForNode($.$0(), $.$1(), $.$2()));
 
+    public rule pfor = lazy(() -> seq(PFOR, identifier, IN, choice(indexable, any_value), COLON, this.statement_sequence, END))
+                            .push($ -> new ForNode($.$0(), $.$1(), $.$2(), true));
+
 
     // Function definition
     public rule param = identifier.push($ -> new ParameterNode($.$0()));
@@ -260,7 +287,7 @@ public final class NSParser extends Grammar {
 
 
     // Regrouping statements
-    public rule statement = choice(function_def, if_, while_, for_, return_, variable_assignment);
+    public rule statement = choice(function_def, if_, while_, for_, pfor, return_, variable_assignment);
 
     public rule statement_sequence = choice(statement, line_comment, expression).at_least(0).push($ -> new BlockNode($.$list()));
 
@@ -284,4 +311,42 @@ public final class NSParser extends Grammar {
         }
         return result;
     }
+
+    /**
+     * Returns a report of where a parse run with {@link ParseOptions#metrics} spent its time,
+     * giving for each rule of the grammar that was invoked its number of invocations, its self
+     * time (spent in the rule itself, and in the parsers of its definition that are not rules) and
+     * its total time (including the rules it invokes), by decreasing self time.
+     */
+    public static String profile (ParseMetrics metrics) {
+        List<Parser> rules = new ArrayList<>();
+        Map<Parser, Long> selfTimes = new HashMap<>();
+        for (Parser parser : metrics.metrics.keySet()) {
+            if (parser.rule() == null)
+                continue;
+            rules.add(parser);
+            selfTimes.put(parser, selfTime(parser, metrics, Collections.newSetFromMap(new IdentityHashMap<>())));
+        }
+        rules.sort(Comparator.comparing(selfTimes::get).reversed());
+
+        StringBuilder report = new StringBuilder(String.format(
+            "%-40s %12s %12s %12s%n", "RULE", "INVOCATIONS", "SELF (ms)", "TOTAL (ms)"));
+        for (Parser rule : rules) {
+            ParserMetrics m = metrics.metrics.get(rule);
+            report.append(String.format("%-40s %,12d %12.1f %12.1f%n",
+                rule.rule(), m.invocations, selfTimes.get(rule) / 1e6, m.totalTime / 1e6));
+        }
+        return report.toString();
+    }
+
+    private static long selfTime (Parser parser, ParseMetrics metrics, Set<Parser> visited) {
+        if (!visited.add(parser))
+            return 0;
+        ParserMetrics m = metrics.metrics.get(parser);
+        long time = m == null ? 0 : m.selfTime;
+        for (Parser child : parser.children())
+            if (child.rule() == null)
+                time += selfTime(child, metrics, visited);
+        return time;
+    }
 }
\ No newline at end of file
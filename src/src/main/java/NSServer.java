@@ -0,0 +1,178 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.lang.System.exit;
+
+/**
+ * Runs programs on behalf of {@link NSClient}s, in a JVM that stays up between runs: the grammar
+ * is only built once, the engines get compiled by the JIT along the way, and programs are only
+ * prepared (parsed, analysed and compiled) the first time their source runs on an engine (see
+ * {@link NS#run}).
+ *
+ * <p>A request is the number of arguments, as an int, followed by the arguments of {@link NS},
+ * each written by {@link DataOutputStream#writeUTF}. Relative paths, including those of the
+ * files opened by the program, are resolved against the working directory of the server.
+ *
+ * <p>The response is a sequence of frames, each made of a byte telling what the frame holds and
+ * an int: {@link #OUT} and {@link #ERR} frames hold this many bytes of the standard output or
+ * error of the run, and the last frame, {@link #EXIT}, holds the exit status itself.
+ *
+ * <p>Requests are served one at a time, as programs print to {@link System#out}, which is
+ * redirected to the client for the duration of its request. Other clients wait for the request
+ * to end, so a program that runs for long (or forever) blocks every other client meanwhile.
+ *
+ * <p>A run that fails, even with an {@link Error}, is reported to its client, whose request ends
+ * with status 1, and the server keeps serving. Only the {@link VirtualMachineError}s that leave
+ * the JVM unusable (i.e. other than running out of stack or memory) stop the server.
+ */
+public class NSServer {
+    static final int DEFAULT_PORT = 7171;
+
+    static final byte EXIT = 0, OUT = 1, ERR = 2;
+
+    /**
+     * Usage: {@code NSServer [--port=<port> | --socket=<path>] [--cache=<size>]}
+     *
+     * <p>The server listens on the loopback interface, on port {@value #DEFAULT_PORT} unless
+     * {@code --port} is given, or on the given Unix domain socket. The programs prepared for the
+     * last {@code --cache} (by default, 64) sources and engines that were run are kept.
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = address(args);
+        int cacheSize = 64;
+        for (String arg : args) {
+            if (arg.startsWith("--cache=")) {
+                cacheSize = Integer.parseInt(arg.substring("--cache=".length()));
+            } else if (!arg.startsWith("--port=") && !arg.startsWith("--socket=")) {
+                System.err.println("Unknown option " + arg);
+                exit(1);
+            }
+        }
+
+        int maxSize = cacheSize;
+        Map<String, Function<String[], Object>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Function<String[], Object>> eldest) {
+                return size() > maxSize;
+            }
+        };
+        NSParser grammar = new NSParser();
+
+        ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+            ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            : ServerSocketChannel.open();
+        if (address instanceof UnixDomainSocketAddress)
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        server.bind(address);
+
+        while (true) {
+            try (SocketChannel client = server.accept()) {
+                serve(client, grammar, cache);
+            } catch (IOException e) {
+                System.err.println("Lost client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the address given by the {@code --port} or {@code --socket} option among
+     * {@code args}, or the default one.
+     */
+    static SocketAddress address(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--port="))
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(arg.substring("--port=".length())));
+            if (arg.startsWith("--socket="))
+                return UnixDomainSocketAddress.of(Path.of(arg.substring("--socket=".length())));
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+    }
+
+    private static void serve(SocketChannel client, NSParser grammar,
+                              Map<String, Function<String[], Object>> cache) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream response = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Malformed request");
+        String[] args = new String[count];
+        for (int i = 0; i < args.length; ++i)
+            args[i] = in.readUTF();
+
+        PrintStream oldOut = System.out, oldErr = System.err;
+        PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(response, OUT)), true);
+        PrintStream err = new PrintStream(new BufferedOutputStream(new Frames(response, ERR)), true);
+        System.setOut(out);
+        System.setErr(err);
+        int status;
+        try {
+            status = NS.run(args, () -> grammar, cache);
+        } catch (StackOverflowError | OutOfMemoryError e) {
+            // the stack and the memory of the run are reclaimed once it ends
+            e.printStackTrace();
+            status = 1;
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            status = 1;
+        } finally {
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+
+        out.flush();
+        err.flush();
+        if (out.checkError() || err.checkError())
+            throw new IOException("Cannot write the output of " + String.join(" ", args));
+        response.writeByte(EXIT);
+        response.writeInt(status);
+        response.flush();
+    }
+
+    /** Writes what is written to it as frames of the given kind. */
+    private static final class Frames extends OutputStream {
+        private final DataOutputStream response;
+        private final byte kind;
+
+        Frames(DataOutputStream response, byte kind) {
+            this.response = response;
+            this.kind = kind;
+        }
+
+        @Override public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0)
+                return;
+            synchronized (response) {
+                response.writeByte(kind);
+                response.writeInt(length);
+                response.write(bytes, offset, length);
+            }
+        }
+
+        @Override public void flush() throws IOException {
+            response.flush();
+        }
+    }
+}
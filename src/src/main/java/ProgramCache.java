@@ -0,0 +1,180 @@
+import ast.RootNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A directory holding the linked trees (see {@link interpreter.Linker}) of the programs that
+ * were run, so that running them again skips parsing and semantic analysis.
+ *
+ * <p>Trees are keyed by a hash of their source and of {@link #VERSION}, which must be bumped for
+ * every change that makes older trees invalid: to the fields of the serialized classes (the nodes
+ * and the scopes, whose {@code serialVersionUID} is fixed, so that such changes don't make older
+ * entries fail to deserialize), to the grammar, to the semantic analysis and to the linker. An
+ * entry that fails to deserialize anyway is deleted.
+ *
+ * <p>Entries are only deserialized into the classes of trees (see {@link #FILTER}), as the
+ * directory may be shared: an entry that holds other classes is deleted, like an invalid one.
+ *
+ * <p>The least recently used entries are deleted when the entries exceed the size of the cache.
+ * Errors while reading or writing the cache are not reported: the program is then analysed as
+ * if it weren't cached.
+ */
+final class ProgramCache
+{
+    // ---------------------------------------------------------------------------------------------
+
+    static final int VERSION = 5;
+
+    private static final String SUFFIX = ".ast";
+
+    /**
+     * Accepts the classes of the nodes, the scopes and the collections they hold, up to a depth
+     * and an array length that trees too deep to be written (see {@link #write}) never reach.
+     */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+        "maxdepth=10000;maxarray=1000000;ast.*;scopes.*;Types.*;java.util.*;java.lang.*;!*");
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Path directory;
+    private final long maxSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    ProgramCache (Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the key of the entry of the program whose source is {@code content}, which is
+     * also the hash {@link NS#run} uses to cache prepared programs.
+     */
+    static String key (String content)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("NS " + VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(content.getBytes(StandardCharsets.UTF_8)))
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every JVM implements SHA-256
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the tree cached under {@code key}, or null if there is none (or if it is invalid).
+     */
+    RootNode read (String key)
+    {
+        Path file = directory.resolve(key + SUFFIX);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ObjectInputStream stream = new ObjectInputStream(in);
+            stream.setObjectInputFilter(FILTER);
+            RootNode root = (RootNode) stream.readObject();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return root;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (InvalidClassException | ClassNotFoundException | ClassCastException e) {
+            delete(file);
+            return null;
+        } catch (IOException | StackOverflowError e) {
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Caches the linked tree {@code root} under {@code key}, then evicts entries if needed.
+     */
+    void write (String key, RootNode root)
+    {
+        Path file = directory.resolve(key + SUFFIX);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            // entries are renamed into place, so that concurrent runs never read partial entries
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                ObjectOutputStream stream = new ObjectOutputStream(out);
+                stream.writeObject(root);
+                stream.flush();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+            evict();
+        } catch (IOException | StackOverflowError e) {
+            // too deep to serialize, or the directory isn't writable: the program runs uncached
+        } finally {
+            if (temp != null)
+                delete(temp);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Deletes the least recently used entries until the entries fit in {@link #maxSize}.
+     */
+    private void evict () throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long size = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                files.add(entry);
+                attributes.put(entry, attrs);
+                size += attrs.size();
+            }
+        }
+
+        files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+        for (int i = 0; i < files.size() && size > maxSize; ++i) {
+            delete(files.get(i));
+            size -= attributes.get(files.get(i)).size();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void delete (Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {}
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -15,7 +15,10 @@ import norswap.utils.visitors.ReflectiveFieldWalker;
 import norswap.utils.visitors.Walker;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
@@ -31,6 +34,24 @@ public final class SemanticAnalysis {
     /** Current scope. */
     private Scope scope;
 
+    /** Effects of the function bodies and list comprehensions being analysed, innermost last. */
+    private final List<Effects> effects = new ArrayList<>();
+
+    /** Effects of every function body and list comprehension. */
+    private final IdentityHashMap<ASTNode, Effects> allEffects = new IdentityHashMap<>();
+
+    /** Calls made from function bodies and list comprehensions, resolved at the end of the walk. */
+    private final List<Call> calls = new ArrayList<>();
+
+    /** The occurrences of reduction variables in their reduction assignments. */
+    private final Set<IdentifierNode> reductionOperands = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Variables assigned values that may be collections allocated elsewhere, see {@link #isFresh}. */
+    private final Set<DeclarationNode> aliased = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Modifications of collections in function bodies and pfor loops, checked at the end of the walk. */
+    private final List<Store> stores = new ArrayList<>();
+
     // ---------------------------------------------------------------------------------------------
 
     private SemanticAnalysis(Reactor reactor) {
@@ -59,6 +80,7 @@ public final class SemanticAnalysis {
         walker.register(ArrayNode.class,                PRE_VISIT,  analysis::array);
         walker.register(ListComprehensionNode.class,    PRE_VISIT,  analysis::listComprehension);
         walker.register(MapNode.class,                  PRE_VISIT,  analysis::map);
+        walker.register(SetNode.class,                  PRE_VISIT,  analysis::set);
         walker.register(FunctionCallNode.class,         PRE_VISIT,  analysis::functionCall);
         walker.register(UnaryNode.class,                PRE_VISIT,  analysis::unaryExpression);
         walker.register(BinaryNode.class,               PRE_VISIT,  analysis::binaryExpression);
@@ -73,11 +95,11 @@ public final class SemanticAnalysis {
         walker.register(ElseNode.class,                 PRE_VISIT,  analysis::else_);
         walker.register(WhileNode.class,                PRE_VISIT,  analysis::while_);
 
-        walker.register(RootNode.class,                 POST_VISIT, analysis::popScope);
+        walker.register(RootNode.class,                 POST_VISIT, analysis::endRoot);
         walker.register(BlockNode.class,                POST_VISIT, analysis::popScope);
-        walker.register(FunctionDefinitionNode.class,   POST_VISIT, analysis::popScope);
-        walker.register(ForNode.class,                  POST_VISIT, analysis::popScope);
-        walker.register(ListComprehensionNode.class,    POST_VISIT, analysis::popScope);
+        walker.register(FunctionDefinitionNode.class,   POST_VISIT, analysis::endEffects);
+        walker.register(ForNode.class,                  POST_VISIT, analysis::endEffects);
+        walker.register(ListComprehensionNode.class,    POST_VISIT, analysis::endEffects);
 
         // statements
         walker.register(VarAssignmentNode.class,        PRE_VISIT,  analysis::varAssignment);
@@ -114,8 +136,19 @@ public final class SemanticAnalysis {
         DeclarationContext maybeCtx = scope.lookup(node.value);
 
         if (maybeCtx != null) {
+            if (!reductionOperands.contains(node))
+                for (Effects loop : enclosingLoops())
+                    if (maybeCtx.scope.depth < loop.scope.depth)
+                        loop.reads.add(node);
+            List<Effects> enclosing = enclosingEffects();
+            Effects function = enclosing.isEmpty() ? null : enclosing.get(enclosing.size() - 1);
+            if (function != null && function.node instanceof FunctionDefinitionNode
+                    && maybeCtx.scope.depth < function.scope.depth)
+                function.readsOuter.add(maybeCtx.declaration);
+
             R.set(node, "decl",  maybeCtx.declaration);
             R.set(node, "scope", maybeCtx.scope);
+            R.set(node, "slot",  maybeCtx.scope.slot(node.value));
 
             if (maybeCtx.declaration instanceof ForNode || maybeCtx.declaration instanceof ListComprehensionNode) {
                 R.set(node, "type", Type.UNKNOWN_TYPE);
@@ -169,6 +202,7 @@ public final class SemanticAnalysis {
     private void listComprehension(ListComprehensionNode node) {
         scope = new Scope(node, scope);
         R.set(node, "scope", scope);
+        beginEffects(node);
 
         if (node.condition != null) {
             R.rule(node.attr("type"))
@@ -226,16 +260,55 @@ public final class SemanticAnalysis {
 
 
 
+    private void set(SetNode node) {
+        Attribute[] deps = node.elements.stream().map(it -> it.attr("type")).toArray(Attribute[]::new);
+
+        R.rule(node.attr("type"))
+                .using(deps)
+                .by(r -> {
+                    r.set(node, "type", Type.SET);
+
+                    for (int i = 0; i < deps.length; i++) {
+                        Type type = r.get(i);
+                        if (!(type == Type.BOOLEAN || type == Type.STRING || type == Type.INTEGER || type == Type.UNKNOWN_TYPE)) {
+                            r.errorFor("elements of a set must be strings, integers or booleans", node, node.attr("type"));
+                            return;
+                        }
+                    }
+                });
+    }
+
+
+
     private void functionCall(FunctionCallNode node) {
 
         final Scope scope = this.scope;
 
+        if (!effects.isEmpty())
+            calls.add(new Call(node, scope, enclosingEffects()));
+
+        DeclarationContext function = scope.lookup(node.functionName.value);
+        if (function != null && function.declaration instanceof SyntheticDeclarationNode
+                && MUTATING_BUILTINS.contains(node.functionName.value)
+                && node.args != null && !node.args.isEmpty() && node.args.get(0) instanceof IdentifierNode) {
+            String name = ((IdentifierNode) node.args.get(0)).value;
+            DeclarationContext ctx = scope.lookup(name);
+            for (Effects loop : enclosingLoops())
+                if (ctx != null && ctx.scope.depth < loop.scope.depth) {
+                    R.rule().by(r -> r.error("Cannot modify " + name + ", declared outside of the pfor loop", node));
+                    break;
+                }
+            if (ctx != null)
+                store(node, ctx, name);
+        }
+
         R.rule(node, "type")
                 .using()
                 .by(r -> {
 
 
-                    DeclarationContext maybeCtx = scope.lookup(node.functionName.value);
+                    // the function the name refers to where it is called, unless it is declared later
+                    DeclarationContext maybeCtx = function != null ? function : scope.lookup(node.functionName.value);
 
                     if (maybeCtx != null) {
                         List<ParameterNode> params = null;
@@ -277,19 +350,94 @@ public final class SemanticAnalysis {
                         .using(node.args.get(0).attr("type"))
                         .by(r -> {
                             Type nodeType = r.get(0);
-                            if (!(nodeType == Type.ARRAY || nodeType == Type.MAP || nodeType == Type.UNKNOWN_TYPE)) {
-                                r.errorFor("Argument of indexer function must be an array or a map", node);
+                            if (!(nodeType == Type.ARRAY || nodeType == Type.MAP || nodeType == Type.SET || nodeType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("Argument of indexer function must be an array, a map or a set", node);
                             }
                         });
                 break;
             case "sort":
+            case "sort_in_place":
                 rule.set(node, "type", Type.ARRAY);
                 R.rule()
                         .using(node.args.get(0).attr("type"))
                         .by(r -> {
                             Type nodeType = r.get(0);
                             if (!(nodeType == Type.ARRAY || nodeType == Type.UNKNOWN_TYPE)) {
-                                r.errorFor("Argument of sort function must be an array", node);
+                                r.errorFor("Argument of " + node.functionName.value + " function must be an array", node);
+                            }
+                        });
+                break;
+            case "append":
+                rule.set(node, "type", Type.NONE);
+                R.rule()
+                        .using(node.args.get(0).attr("type"))
+                        .by(r -> {
+                            Type nodeType = r.get(0);
+                            if (!(nodeType == Type.ARRAY || nodeType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("First argument of append function must be an array", node);
+                            }
+                        });
+                break;
+            case "pop":
+                rule.set(node, "type", Type.UNKNOWN_TYPE);
+                R.rule()
+                        .using(node.args.get(0).attr("type"))
+                        .by(r -> {
+                            Type nodeType = r.get(0);
+                            if (!(nodeType == Type.ARRAY || nodeType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("Argument of pop function must be an array", node);
+                            }
+                        });
+                break;
+            case "set":
+                rule.set(node, "type", Type.SET);
+                R.rule()
+                        .using(node.args.get(0).attr("type"))
+                        .by(r -> {
+                            Type nodeType = r.get(0);
+                            if (!(nodeType == Type.ARRAY || nodeType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("Argument of set function must be an array", node);
+                            }
+                        });
+                break;
+            case "add":
+                rule.set(node, "type", Type.NONE);
+                R.rule()
+                        .using(node.args.get(0).attr("type"), node.args.get(1).attr("type"))
+                        .by(r -> {
+                            Type setType = r.get(0);
+                            Type elementType = r.get(1);
+                            if (!(setType == Type.SET || setType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("First argument of add function must be a set", node);
+                            } else if (!(elementType == Type.BOOLEAN || elementType == Type.STRING || elementType == Type.INTEGER || elementType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("elements of a set must be strings, integers or booleans", node);
+                            }
+                        });
+                break;
+            case "get":
+                rule.set(node, "type", Type.UNKNOWN_TYPE);
+                R.rule()
+                        .using(node.args.get(0).attr("type"))
+                        .by(r -> {
+                            Type nodeType = r.get(0);
+                            if (!(nodeType == Type.MAP || nodeType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("First argument of get function must be a map", node);
+                            }
+                        });
+                break;
+            case "slice":
+                rule.set(node, "type", Type.ARRAY);
+                R.rule()
+                        .using(node.args.get(0).attr("type"), node.args.get(1).attr("type"), node.args.get(2).attr("type"))
+                        .by(r -> {
+                            Type arrayType = r.get(0);
+                            Type fromType = r.get(1);
+                            Type toType = r.get(2);
+                            if (!(arrayType == Type.ARRAY || arrayType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("First argument of slice function must be an array", node);
+                            } else if (!(fromType == Type.INTEGER || fromType == Type.UNKNOWN_TYPE)
+                                    || !(toType == Type.INTEGER || toType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("Bounds of slice function must be integers", node);
                             }
                         });
                 break;
@@ -314,8 +462,8 @@ public final class SemanticAnalysis {
                         .using(node.args.get(0).attr("type"))
                         .by(r -> {
                             Type childType = r.get(0);
-                            if (!(childType == Type.ARRAY || childType == Type.MAP || childType == Type.UNKNOWN_TYPE)) {
-                                r.errorFor("Argument of len function must be an array or a map", node);
+                            if (!(childType == Type.ARRAY || childType == Type.MAP || childType == Type.SET || childType == Type.UNKNOWN_TYPE)) {
+                                r.errorFor("Argument of len function must be an array, a map or a set", node);
                             }
                         });
                 break;
@@ -359,11 +507,14 @@ public final class SemanticAnalysis {
                 break;
             case UnaryNode.RETURN:
                 FunctionDefinitionNode funDef = currentFunction();
+                boolean inLoop = !enclosingLoops().isEmpty();
                 R.rule()
                         .using()
                         .by(r -> {
                             if (funDef == null) {
                                 r.error("Cannot return when not in a function", node);
+                            } else if (inLoop) {
+                                r.error("Cannot return from a pfor loop", node);
                             }
                         });
 
@@ -450,6 +601,17 @@ public final class SemanticAnalysis {
                 else
                     r.error("Only Arrays and Map objects can be indexed", node);
             });
+        } else if (node.isMembership()) {
+            R.rule(node, "type")
+            .using(node.right.attr("type"))
+            .by(r -> {
+                Type right = r.get(0);
+
+                if (right == Type.SET || right == Type.MAP || right == Type.UNKNOWN_TYPE)
+                    r.set(0, Type.BOOLEAN);
+                else
+                    r.error("Membership can only be tested in sets and maps", node);
+            });
         }
     }
 
@@ -481,15 +643,19 @@ public final class SemanticAnalysis {
 
     public void functionDeclaration(FunctionDefinitionNode node) {
         DeclarationContext declCtx = scope.lookup(node.name.value);
+        // functions shadow the built-in functions they are named after
+        boolean taken = declCtx != null && !(declCtx.declaration instanceof SyntheticDeclarationNode
+            && ((SyntheticDeclarationNode) declCtx.declaration).kind() == DeclarationKind.FUNCTION);
         Scope s = new Scope(node, scope);
-        if (declCtx == null) {
+        if (!taken)
             scope.declare(node.name.value, node);
-            scope = s;
-        }
+        // entered even if the name is taken, as the end of the definition leaves it
+        scope = s;
+        beginEffects(node);
 
         R.rule(node.attr("scope"), node.attr("type"))
                 .by(r -> {
-                    if (declCtx == null) {
+                    if (!taken) {
                         r.set(node, "scope", s);
                         r.set(node, "type", Type.UNKNOWN_TYPE);
                     } else {
@@ -559,15 +725,38 @@ public final class SemanticAnalysis {
                 });
 
         scope.declare(node.variable.value, node);
+        if (node.parallel)
+            beginEffects(node);
     }
 
 
+    /**
+     * Returns whether {@code decl} declares a function, defined by the program or built-in.
+     */
+    private static boolean isFunction(DeclarationNode decl) {
+        return decl instanceof FunctionDefinitionNode
+            || decl instanceof SyntheticDeclarationNode
+                && ((SyntheticDeclarationNode) decl).kind() == DeclarationKind.FUNCTION;
+    }
+
     public void varAssignment(VarAssignmentNode node) {
         DeclarationContext maybeCtx;
         if (node.left instanceof IdentifierNode) {
             maybeCtx = scope.lookup(((IdentifierNode) node.left).value);
+            // assigning the name of a function declares a variable, which shadows the function
+            boolean declares = maybeCtx == null || isFunction(maybeCtx.declaration);
+
+            if (!isFresh(node.right))
+                aliased.add(declares ? node : maybeCtx.declaration);
 
-            if (maybeCtx == null || maybeCtx.declaration instanceof FunctionDefinitionNode) {
+            if (!declares) {
+                for (Effects e : enclosingEffects())
+                    if (maybeCtx.scope.depth < e.scope.depth)
+                        e.impure = e.writesOuter = true;
+                loopAssignment(node, maybeCtx);
+            }
+
+            if (declares) {
                 scope.declare(((IdentifierNode) node.left).value, node);
                 R.set(node, "scope", scope);
 
@@ -578,6 +767,13 @@ public final class SemanticAnalysis {
             }
         } else if (node.left instanceof BinaryNode && ((BinaryNode) node.left).code == BinaryNode.IDX_ACCESS) {
             maybeCtx = scope.lookup(((IdentifierNode) ((BinaryNode) node.left).left).value);
+            // the indexed array or map may be shared with the caller
+            for (Effects e : enclosingEffects())
+                e.impure = true;
+            if (maybeCtx != null) {
+                loopStore(node, maybeCtx);
+                store(node, maybeCtx, ((IdentifierNode) ((BinaryNode) node.left).left).value);
+            }
         } else {
             maybeCtx = null;
         }
@@ -598,6 +794,331 @@ public final class SemanticAnalysis {
     }
 
 
+    // endregion
+    // =============================================================================================
+    // region [Purity]
+    // =============================================================================================
+
+    /**
+     * Built-in functions that do I/O or modify their arguments.
+     */
+    private static final Set<String> IMPURE_BUILTINS = Set.of(
+        "print", "println", "open", "close", "read", "write", "append", "pop", "add", "sort_in_place");
+
+    /**
+     * Built-in functions that modify their first argument.
+     */
+    private static final Set<String> MUTATING_BUILTINS = Set.of("append", "pop", "add", "sort_in_place");
+
+    /**
+     * What evaluating a function body or a list comprehension may do, besides computing values.
+     *
+     * <p>It is impure if it may assign variables declared outside of it, assign elements of
+     * arrays or maps, call an impure built-in, or call a function that is impure or not known
+     * statically. Whether it calls impure functions is only known once the whole program has been
+     * walked, see {@link #resolvePurity()}.
+     *
+     * <p>The body of a {@code pfor} loop also has effects, used to check that its iterations can
+     * run concurrently: it may only assign variables declared outside of it through reductions,
+     * which it may not otherwise read, and may not call functions that assign variables declared
+     * outside of them or that read its reductions.
+     */
+    private static final class Effects {
+        final ASTNode node;
+        final Scope scope;
+        boolean impure;
+        /** Whether a function assigns variables declared outside of it. */
+        boolean writesOuter;
+        /** Variables declared outside of a function and read by it, or by the functions it calls. */
+        final Set<DeclarationNode> readsOuter = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<Effects> callees = new ArrayList<>();
+        /** Variables declared outside of a pfor loop and reduced in it, with their operator. */
+        final IdentityHashMap<DeclarationNode, Integer> reductions = new IdentityHashMap<>();
+        /** Occurrences of variables declared outside of a pfor loop, besides reductions. */
+        final List<IdentifierNode> reads = new ArrayList<>();
+
+        Effects(ASTNode node, Scope scope) {
+            this.node = node;
+            this.scope = scope;
+        }
+    }
+
+    private static final class Call {
+        final FunctionCallNode node;
+        final Scope scope;
+        final List<Effects> callers;
+
+        Call(FunctionCallNode node, Scope scope, List<Effects> callers) {
+            this.node = node;
+            this.scope = scope;
+            this.callers = callers;
+        }
+    }
+
+    private void beginEffects(ASTNode node) {
+        Effects e = new Effects(node, scope);
+        effects.add(e);
+        allEffects.put(node, e);
+    }
+
+    public void endEffects(ASTNode node) {
+        if (!effects.isEmpty() && effects.get(effects.size() - 1).node == node)
+            effects.remove(effects.size() - 1);
+        popScope(node);
+    }
+
+    /**
+     * Returns the effects of the current node, up to the innermost function body: defining a
+     * function has no effect on the enclosing function, calling it does.
+     */
+    private List<Effects> enclosingEffects() {
+        List<Effects> result = new ArrayList<>();
+        for (int i = effects.size() - 1; i >= 0; --i) {
+            result.add(effects.get(i));
+            if (effects.get(i).node instanceof FunctionDefinitionNode)
+                break;
+        }
+        return result;
+    }
+
+    /** Returns the effects of the enclosing pfor loops, up to the innermost function body. */
+    private List<Effects> enclosingLoops() {
+        List<Effects> result = new ArrayList<>();
+        for (Effects e : enclosingEffects())
+            if (e.node instanceof ForNode)
+                result.add(e);
+        return result;
+    }
+
+    /**
+     * Returns whether {@code node} is a reduction of the variable it assigns: {@code x = x + e},
+     * {@code x = x * e}, {@code x = x and e} or {@code x = x or e}.
+     */
+    private static boolean isReduction(VarAssignmentNode node) {
+        if (!(node.right instanceof BinaryNode))
+            return false;
+        BinaryNode right = (BinaryNode) node.right;
+        return (right.code == BinaryNode.ADD || right.code == BinaryNode.MUL
+                || right.code == BinaryNode.AND || right.code == BinaryNode.OR)
+            && right.left instanceof IdentifierNode
+            && ((IdentifierNode) right.left).value.equals(((IdentifierNode) node.left).value);
+    }
+
+    /**
+     * Checks an assignment to a variable declared in {@code ctx}, which must be a reduction if the
+     * variable is declared outside of an enclosing pfor loop.
+     */
+    private void loopAssignment(VarAssignmentNode node, DeclarationContext ctx) {
+        Scope outermost = null;
+        List<Effects> loops = enclosingLoops();
+        for (Effects loop : loops)
+            if (ctx.scope.depth < loop.scope.depth)
+                outermost = loop.scope;
+        if (outermost == null)
+            return;
+
+        String name = ((IdentifierNode) node.left).value;
+        if (!isReduction(node)) {
+            R.rule().by(r -> r.error("Cannot assign to " + name + ", declared outside of the pfor loop, "
+                + "except to reduce it (" + name + " = " + name + " + ...)", node));
+            return;
+        }
+
+        R.set(node, "pforScope", outermost);
+        reductionOperands.add((IdentifierNode) node.left);
+        reductionOperands.add((IdentifierNode) ((BinaryNode) node.right).left);
+        int code = ((BinaryNode) node.right).code;
+        for (Effects loop : loops) {
+            if (ctx.scope.depth >= loop.scope.depth)
+                continue;
+            Integer previous = loop.reductions.putIfAbsent(ctx.declaration, code);
+            if (previous != null && previous != code)
+                R.rule().by(r -> r.error("Cannot reduce " + name + " with different operators in a pfor loop", node));
+        }
+    }
+
+    /**
+     * Checks a store into an element of a variable declared in {@code ctx}, which must be a map if
+     * the variable is declared outside of an enclosing pfor loop.
+     */
+    private void loopStore(VarAssignmentNode node, DeclarationContext ctx) {
+        Scope outermost = null;
+        for (Effects loop : enclosingLoops())
+            if (ctx.scope.depth < loop.scope.depth)
+                outermost = loop.scope;
+        if (outermost == null)
+            return;
+
+        R.set(node, "pforScope", outermost);
+        R.rule()
+                .using(((BinaryNode) node.left).left.attr("type"))
+                .by(r -> {
+                    Type type = r.get(0);
+                    if (!(type == Type.MAP || type == Type.UNKNOWN_TYPE))
+                        r.error("Only maps declared outside of a pfor loop can be assigned into", node);
+                });
+    }
+
+    /**
+     * Built-in functions whose results are not collections, or newly allocated ones.
+     */
+    private static final Set<String> FRESH_BUILTINS = Set.of(
+        "range", "indexer", "sort", "slice", "set", "int", "len", "read");
+
+    /**
+     * Returns whether the value of {@code node} is not a collection, or one it allocates. A
+     * variable only assigned such values holds collections allocated by the function call or the
+     * loop iteration that assigned it, if it is declared in the function body or the loop.
+     */
+    private boolean isFresh(ASTNode node) {
+        if (node instanceof ArrayNode || node instanceof MapNode || node instanceof SetNode
+                || node instanceof ListComprehensionNode || node instanceof IntegerNode
+                || node instanceof StringNode || node instanceof BoolNode || node instanceof NoneNode
+                || node instanceof UnaryNode)
+            return true;
+        if (node instanceof BinaryNode)
+            return ((BinaryNode) node).code != BinaryNode.IDX_ACCESS;
+        if (!(node instanceof FunctionCallNode))
+            return false;
+        String name = ((FunctionCallNode) node).functionName.value;
+        DeclarationContext ctx = scope.lookup(name);
+        return ctx != null && ctx.declaration instanceof SyntheticDeclarationNode && FRESH_BUILTINS.contains(name);
+    }
+
+    /**
+     * A store into an element of a variable ({@code x[i] = e}), or a call to a built-in that
+     * modifies a variable, in a function body or a pfor loop.
+     */
+    private static final class Store {
+        final ASTNode node;
+        final DeclarationContext ctx;
+        final String name;
+        /** The scope of the innermost function body, if any. */
+        final Scope function;
+        /** The scope of the outermost pfor loop, up to the innermost function body, if any. */
+        final Scope loop;
+
+        Store(ASTNode node, DeclarationContext ctx, String name, Scope function, Scope loop) {
+            this.node = node;
+            this.ctx = ctx;
+            this.name = name;
+            this.function = function;
+            this.loop = loop;
+        }
+
+        /** Whether the variable holds collections allocated within {@code scope}. */
+        boolean owned(Scope scope, Set<DeclarationNode> aliased) {
+            return ctx.declaration instanceof VarAssignmentNode && !aliased.contains(ctx.declaration)
+                && ctx.scope.depth >= scope.depth;
+        }
+    }
+
+    private void store(ASTNode node, DeclarationContext ctx, String name) {
+        Scope function = null, loop = null;
+        for (Effects e : enclosingEffects()) {
+            if (e.node instanceof FunctionDefinitionNode)
+                function = e.scope;
+            else if (e.node instanceof ForNode)
+                loop = e.scope;
+        }
+        if (function != null || loop != null)
+            stores.add(new Store(node, ctx, name, function, loop));
+    }
+
+    /**
+     * Checks the stores into variables declared in a pfor loop, which must hold collections
+     * allocated by the iteration, or else be maps (see {@link #loopStore} for variables declared
+     * outside of it). Marks the stores in function bodies into collections not allocated by the
+     * call, which pfor loops calling the function check at run time.
+     */
+    private void checkStores() {
+        for (Store store : stores) {
+            ASTNode node = store.node;
+            if (store.function != null && !store.owned(store.function, aliased))
+                R.set(node, "shared", true);
+            if (store.loop == null || store.ctx.scope.depth < store.loop.depth || store.owned(store.loop, aliased))
+                continue;
+
+            if (node instanceof FunctionCallNode) {
+                R.rule().by(r -> r.error("Cannot modify " + store.name + " in a pfor loop, "
+                    + "as it may hold a collection allocated outside of it", node));
+                continue;
+            }
+            R.set(node, "pforScope", store.loop);
+            R.rule()
+                    .using(((BinaryNode) ((VarAssignmentNode) node).left).left.attr("type"))
+                    .by(r -> {
+                        Type type = r.get(0);
+                        if (!(type == Type.MAP || type == Type.UNKNOWN_TYPE))
+                            r.error("Cannot assign into " + store.name + " in a pfor loop, "
+                                + "as it may hold an array allocated outside of it", node);
+                    });
+        }
+    }
+
+    public void endRoot(RootNode node) {
+        resolvePurity();
+        popScope(node);
+    }
+
+    /**
+     * Resolves the calls made by function bodies and list comprehensions, then sets the
+     * {@code pure} attribute of every list comprehension.
+     */
+    private void resolvePurity() {
+        checkStores();
+        for (Call call : calls) {
+            String name = call.node.functionName.value;
+            DeclarationContext ctx = call.scope.lookup(name);
+            Object decl = ctx == null ? null : ctx.declaration;
+            Effects callee = allEffects.get(decl);
+
+            for (Effects caller : call.callers) {
+                if (callee != null && decl instanceof FunctionDefinitionNode)
+                    caller.callees.add(callee);
+                else if (!(decl instanceof SyntheticDeclarationNode) || IMPURE_BUILTINS.contains(name))
+                    caller.impure = true;
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Effects e : allEffects.values()) {
+                if (!e.impure && e.callees.stream().anyMatch(callee -> callee.impure))
+                    changed = e.impure = true;
+                if (!e.writesOuter && e.callees.stream().anyMatch(callee -> callee.writesOuter))
+                    changed = e.writesOuter = true;
+                for (Effects callee : e.callees)
+                    if (e.readsOuter.addAll(callee.readsOuter))
+                        changed = true;
+            }
+        }
+
+        for (Effects e : allEffects.values()) {
+            if (e.node instanceof ListComprehensionNode)
+                R.set(e.node, "pure", !e.impure);
+            if (e.node instanceof ForNode)
+                checkLoop(e);
+        }
+    }
+
+    private void checkLoop(Effects loop) {
+        for (IdentifierNode read : loop.reads) {
+            DeclarationNode decl = R.get(read, "decl");
+            if (loop.reductions.containsKey(decl))
+                R.rule().by(r -> r.error("Cannot use " + read.value + " in the pfor loop reducing it, "
+                    + "besides reducing it", read));
+        }
+        for (Effects callee : loop.callees)
+            if (callee.writesOuter)
+                R.rule().by(r -> r.error("Cannot call " + ((FunctionDefinitionNode) callee.node).name.value
+                    + " in a pfor loop, as it assigns variables declared outside of it", loop.node));
+            else if (callee.readsOuter.stream().anyMatch(loop.reductions::containsKey))
+                R.rule().by(r -> r.error("Cannot call " + ((FunctionDefinitionNode) callee.node).name.value
+                    + " in a pfor loop, as it reads variables reduced in the loop", loop.node));
+    }
+
     // endregion
     // =============================================================================================
     // region [Other Statements]
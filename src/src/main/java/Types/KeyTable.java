@@ -0,0 +1,187 @@
+package Types;
+
+import java.util.Arrays;
+
+/**
+ * The keys of a {@link PolymorphMap} or the elements of a {@link PolymorphSet}: integers,
+ * strings or booleans, in the order in which they were first inserted.
+ *
+ * <p>Keys are stored in insertion order: integer keys are kept unboxed in {@link #longKeys} (with
+ * a null {@link #objectKeys} entry), other keys in {@link #objectKeys}, which is only allocated
+ * once the table has such a key. Keys are never removed, so the index of a key never changes.
+ * Integer and string keys are found through separate open-addressing tables of key indices (with
+ * linear probing), the two boolean keys through dedicated fields.
+ */
+abstract class KeyTable {
+    static final int INITIAL_CAPACITY = 8;
+
+    private long[] longKeys = new long[INITIAL_CAPACITY];
+    private Object[] objectKeys = null;
+    int size = 0;
+
+    /** Indices of integer keys, plus one (0 marks a free slot). */
+    private int[] longTable = new int[INITIAL_CAPACITY * 2];
+    private int longCount = 0;
+
+    /** Indices of string keys, plus one (0 marks a free slot). */
+    private int[] stringTable = new int[INITIAL_CAPACITY * 2];
+    private int stringCount = 0;
+
+    /** Indices of the boolean keys, or -1. */
+    private int falseIndex = -1, trueIndex = -1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when the table runs out of room for keys, so that subclasses can grow the arrays
+     * they keep in parallel with the keys.
+     */
+    abstract void grow(int capacity);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Whether a table of the given length must grow to accept another key. */
+    private static boolean full(int[] table, int count) {
+        return 4 * (count + 1) > 3 * table.length;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the index of {@code key}, or -1. */
+    private int indexOf(long key) {
+        int mask = longTable.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int index = longTable[i] - 1;
+            if (index < 0) return -1;
+            if (longKeys[index] == key) return index;
+        }
+    }
+
+    /** Returns the index of {@code key}, or -1. */
+    private int indexOf(String key) {
+        int mask = stringTable.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int index = stringTable[i] - 1;
+            if (index < 0) return -1;
+            if (key.equals(objectKeys[index])) return index;
+        }
+    }
+
+    /** Returns the index of {@code key}, or -1 (including for invalid keys). */
+    int indexOf(Object key) {
+        if (key instanceof Long)
+            return indexOf((long) (Long) key);
+        if (key instanceof String)
+            return indexOf((String) key);
+        if (key instanceof Boolean)
+            return (Boolean) key ? trueIndex : falseIndex;
+        return -1;
+    }
+
+    /** Appends a key and returns its index. */
+    private int append(long longKey, Object objectKey) {
+        if (size == longKeys.length) {
+            int capacity = size + (size >> 1);
+            longKeys = Arrays.copyOf(longKeys, capacity);
+            if (objectKeys != null)
+                objectKeys = Arrays.copyOf(objectKeys, capacity);
+            grow(capacity);
+        }
+        if (objectKey != null) {
+            if (objectKeys == null)
+                objectKeys = new Object[longKeys.length];
+            objectKeys[size] = objectKey;
+        }
+        longKeys[size] = longKey;
+        return size++;
+    }
+
+    /** Records the given index in {@code table}, which must have a free slot. */
+    private static void record(int[] table, int hash, int index) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = index + 1;
+    }
+
+    private void growLongTable() {
+        int[] old = longTable;
+        longTable = new int[old.length * 2];
+        for (int index : old)
+            if (index != 0)
+                record(longTable, hash(longKeys[index - 1]), index - 1);
+    }
+
+    private void growStringTable() {
+        int[] old = stringTable;
+        stringTable = new int[old.length * 2];
+        for (int index : old)
+            if (index != 0)
+                record(stringTable, hash((String) objectKeys[index - 1]), index - 1);
+    }
+
+    /**
+     * Adds {@code key} if it is not in the table yet, and returns its index, or -1 if it is not a
+     * valid key.
+     */
+    int addKey(Object key) {
+        int index = indexOf(key);
+        if (index >= 0)
+            return index;
+
+        if (key instanceof Long) {
+            long k = (Long) key;
+            if (full(longTable, longCount))
+                growLongTable();
+            index = append(k, null);
+            record(longTable, hash(k), index);
+            ++longCount;
+        } else if (key instanceof String) {
+            if (full(stringTable, stringCount))
+                growStringTable();
+            index = append(0, key);
+            record(stringTable, hash((String) key), index);
+            ++stringCount;
+        } else if (key instanceof Boolean) {
+            index = append(0, key);
+            if ((Boolean) key)
+                trueIndex = index;
+            else
+                falseIndex = index;
+        }
+        return index;
+    }
+
+    /** Returns the key with the given index, in iteration order. */
+    Object key(int index) {
+        Object key = objectKeys == null ? null : objectKeys[index];
+        return key != null ? key : (Object) longKeys[index];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Object[] keys() {
+        Object[] keys = new Object[size];
+        for (int i = 0; i < size; ++i)
+            keys[i] = key(i);
+        return keys;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Whether {@code key} is in the table. Testing for an integer key does not allocate. */
+    public boolean contains(Object key) {
+        return indexOf(key) >= 0;
+    }
+}
@@ -1,44 +1,373 @@
 package Types;
 
-import interpreter.Interpreter;
+import interpreter.Builtins;
 import interpreter.None;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+/**
+ * An NS array. Arrays whose elements are all integers, all booleans or all strings are backed by a
+ * {@code long[]}, {@code boolean[]} or {@code String[]} respectively, other arrays by an
+ * {@code Object[]}. The first write of an element that does not fit the specialised store converts
+ * it to the generic one, for good.
+ *
+ * <p>At most one of these stores is non-null. If none is, the array is lazy: either a view of the
+ * keys of a {@link PolymorphMap} or of the elements of a {@link PolymorphSet} (which are never
+ * removed nor reordered, see {@link KeyTable}), or else a range, whose elements are consecutive
+ * integers. Lazy arrays take constant memory until they are first written to.
+ *
+ * <p>Arrays of a given size, filled with None ({@code [:n]}, see {@link #nones}), have no store
+ * until their first write. Only the first {@link #filled} elements are in the store, the others
+ * are None: writing the next element in order picks the store of an array that has none, or else
+ * extends the store if the element fits it, so that e.g. filling the array with integers in order
+ * gives a {@code long[]}. Other writes convert the store to the generic one, None included.
+ *
+ * <p>The elements of an array are those of its store from {@link #offset}, for {@link #size}
+ * elements. The store may have room for more elements, so that appending is amortised O(1).
+ *
+ * <p>Clones and slices share the store of the original until one of them is written to, at which
+ * point the writer gets its own copy of its part of the store.
+ *
+ * <p>Iterating reads each element and the size of the array when they are reached, so writes to
+ * elements that have not been reached yet, and elements appended during the iteration, are seen by
+ * the iteration.
+ */
 public class PolymorphArray implements Iterable<Object> {
+    private long[] longs;
+    private boolean[] bools;
+    private String[] strings;
     private Object[] array;
+    private KeyTable keys;
+    private int offset;
+    private int size;
+    /** Number of elements in the store, the following ones up to {@link #size} are None. */
+    private int filled;
+    /** Whether the store may be shared with clones or slices of this array. */
+    private boolean shared;
 
+    /**
+     * Creates an array of the given elements. If it is backed by the generic store, the array
+     * takes ownership of {@code array} rather than copying it (unless it is not an
+     * {@code Object[]}).
+     */
     public PolymorphArray(Object... array) {
-        this.array = Arrays.stream(array).toArray();
+        this.size = array.length;
+        store(array);
     }
 
-    public void set(int index, Object value) {
-        if (index >= array.length || index < 0) {
-            throw new ArrayIndexOutOfBoundsException("Index "+index+" for array of size "+array.length);
+    private PolymorphArray(int offset, int size, long[] longs, boolean[] bools, String[] strings,
+                           Object[] array, KeyTable keys) {
+        this.offset = offset;
+        this.size = size;
+        this.filled = size;
+        this.longs = longs;
+        this.bools = bools;
+        this.strings = strings;
+        this.array = array;
+        this.keys = keys;
+    }
+
+    /**
+     * Creates an array holding the keys of {@code map}, in iteration order, without copying them.
+     * Keys added to the map afterwards are not part of the array.
+     */
+    public static PolymorphArray keys(PolymorphMap map) {
+        return view(map);
+    }
+
+    /**
+     * Creates an array holding the elements of {@code set}, in iteration order, without copying
+     * them. Elements added to the set afterwards are not part of the array.
+     */
+    public static PolymorphArray elements(PolymorphSet set) {
+        return view(set);
+    }
+
+    private static PolymorphArray view(KeyTable keys) {
+        int size = keys.size();
+        return size > 0
+            ? new PolymorphArray(0, size, null, null, null, null, keys)
+            : new PolymorphArray(0, 0, null, null, null, new Object[0], null);
+    }
+
+    /**
+     * Creates an array holding the integers from 0 to {@code size} (excluded), without allocating
+     * them.
+     */
+    public static PolymorphArray range(int size) {
+        return size > 0
+            ? new PolymorphArray(0, size, null, null, null, null, null)
+            : new PolymorphArray(0, 0, null, null, null, new Object[0], null);
+    }
+
+    /**
+     * Creates an array of {@code size} None elements, without allocating them.
+     */
+    public static PolymorphArray nones(int size) {
+        if (size == 0)
+            return new PolymorphArray(0, 0, null, null, null, new Object[0], null);
+        PolymorphArray array = new PolymorphArray(0, size, null, null, null, null, null);
+        array.filled = 0;
+        return array;
+    }
+
+    private static boolean all(Object[] array, int size, Class<?> klass) {
+        for (int i = 0; i < size; ++i)
+            if (array[i] == null || array[i].getClass() != klass)
+                return false;
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index >= size || index < 0) {
+            throw new ArrayIndexOutOfBoundsException("Index "+index+" for array of size "+size);
         }
-        array[index] = value;
     }
 
-    public Object get(int index) {
-        if (index >= array.length || index < 0) {
-            throw new ArrayIndexOutOfBoundsException("Index "+index+" for array of size "+array.length);
+    /**
+     * Picks the store for the first {@link #size} elements of {@code values}, whose length is the
+     * capacity of the store.
+     */
+    private void store(Object[] values) {
+        longs = null;
+        bools = null;
+        strings = null;
+        array = null;
+        keys = null;
+        offset = 0;
+        filled = size;
+        shared = false;
+
+        if (size > 0 && all(values, size, Long.class)) {
+            longs = new long[values.length];
+            for (int i = 0; i < size; ++i)
+                longs[i] = (Long) values[i];
+        } else if (size > 0 && all(values, size, Boolean.class)) {
+            bools = new boolean[values.length];
+            for (int i = 0; i < size; ++i)
+                bools[i] = (Boolean) values[i];
+        } else if (size > 0 && all(values, size, String.class))
+            strings = Arrays.copyOf(values, values.length, String[].class);
+        else
+            array = values.getClass() == Object[].class ? values : Arrays.copyOf(values, values.length, Object[].class);
+    }
+
+    private boolean isLazy() {
+        return longs == null && array == null && strings == null && bools == null;
+    }
+
+    private boolean isRange() {
+        return isLazy() && keys == null && filled == size;
+    }
+
+    private int capacity() {
+        return longs != null ? longs.length
+            : bools != null ? bools.length
+            : strings != null ? strings.length
+            : array.length;
+    }
+
+    /**
+     * Makes sure the array has its own store, with room for at least {@code capacity} elements,
+     * before writing to it.
+     */
+    private void own(int capacity) {
+        if (isLazy()) {
+            if (filled < size)
+                return; // None elements only: the first write picks the store (see put)
+            Object[] values = new Object[Math.max(capacity, size)];
+            for (int i = 0; i < size; ++i)
+                values[i] = get(i);
+            store(values);
+            return;
+        }
+
+        if (!shared && offset + capacity <= capacity())
+            return;
+
+        int to = offset + Math.max(capacity, size);
+        if (longs != null)   longs   = Arrays.copyOfRange(longs,   offset, to);
+        if (bools != null)   bools   = Arrays.copyOfRange(bools,   offset, to);
+        if (strings != null) strings = Arrays.copyOfRange(strings, offset, to);
+        if (array != null)   array   = Arrays.copyOfRange(array,   offset, to);
+        offset = 0;
+        shared = false;
+    }
+
+    /**
+     * Converts the (owned) store of the array to the generic store, which holds every element.
+     */
+    private void generalize() {
+        boolean lazy = isLazy();
+        int start = lazy ? 0 : offset;
+        Object[] values = new Object[lazy ? size : capacity()];
+        for (int i = 0; i < size; ++i)
+            values[start + i] = get(i);
+        array = values;
+        offset = start;
+        filled = size;
+        longs = null;
+        bools = null;
+        strings = null;
+    }
+
+    /**
+     * Picks the store of an array of None elements only, for its first element {@code value}.
+     */
+    private void allocate(Object value) {
+        offset = 0;
+        if (value instanceof Long)
+            longs = new long[size];
+        else if (value instanceof Boolean)
+            bools = new boolean[size];
+        else if (value instanceof String)
+            strings = new String[size];
+    }
+
+    private boolean fits(Object value) {
+        return longs != null && value instanceof Long
+            || bools != null && value instanceof Boolean
+            || strings != null && value instanceof String;
+    }
+
+    /** Writes an element, whose index must be within the (owned) store. */
+    private void put(int index, Object value) {
+        if (index >= filled) {
+            if (index == filled && isLazy())
+                allocate(value);
+            if (index == filled && fits(value))
+                ++filled;
+            else {
+                generalize();
+                array[offset + index] = value;
+                return;
+            }
+        }
+        int i = offset + index;
+        if (array != null) {
+            array[i] = value;
+            return;
+        }
+        if (longs != null && value instanceof Long) {
+            longs[i] = (Long) value;
+            return;
+        }
+        if (strings != null && value instanceof String) {
+            strings[i] = (String) value;
+            return;
         }
-        return array[index];
+        if (bools != null && value instanceof Boolean) {
+            bools[i] = (Boolean) value;
+            return;
+        }
+        generalize();
+        array[i] = value;
+    }
+
+    public void set(int index, Object value) {
+        checkIndex(index);
+        own(size);
+        put(index, value);
+    }
+
+    public Object get(int index) {
+        checkIndex(index);
+        if (index >= filled)
+            return None.INSTANCE;
+        int i = offset + index;
+        if (longs != null)   return longs[i];
+        if (array != null)   return array[i];
+        if (strings != null) return strings[i];
+        if (bools != null)   return bools[i];
+        if (keys != null)    return keys.key(i);
+        return (long) i;
     }
 
     public int size() {
-        return array.length;
+        return size;
+    }
+
+    /**
+     * Adds an element at the end of the array.
+     */
+    public void append(Object value) {
+        if (size == 0) {
+            // an empty array has no elements to constrain its store
+            Object[] values = new Object[4];
+            values[0] = value;
+            size = 1;
+            store(values);
+            return;
+        }
+        if (filled < size) {
+            own(size);
+            generalize();
+        }
+        if (isLazy() || shared || offset + size == capacity())
+            own(size + (size >> 1) + 1);
+        ++size;
+        put(size - 1, value);
+    }
+
+    /**
+     * Removes the last element of the array, and returns it.
+     */
+    public Object pop() {
+        if (size == 0)
+            throw new ArrayIndexOutOfBoundsException("Cannot pop from an empty array");
+        Object value = get(size - 1);
+        if (array != null && !shared)
+            array[offset + size - 1] = null;
+        --size;
+        filled = Math.min(filled, size);
+        return value;
+    }
+
+    /**
+     * Returns the elements from index {@code from} (included) to {@code to} (excluded), without
+     * copying them.
+     */
+    public PolymorphArray slice(int from, int to) {
+        if (from < 0 || to > size || from > to)
+            throw new ArrayIndexOutOfBoundsException(
+                "Slice from "+from+" to "+to+" for array of size "+size);
+        PolymorphArray slice = new PolymorphArray(offset + from, to - from, longs, bools, strings, array, keys);
+        slice.filled = Math.max(0, Math.min(filled - from, to - from));
+        if (to == from)
+            slice.store(new Object[0]);
+        else if (!isLazy())
+            shared = slice.shared = true;
+        return slice;
     }
 
     public PolymorphArray clone() {
-        return new PolymorphArray(array.clone());
+        return slice(0, size);
     }
 
     public void sort() {
-        Arrays.sort(array);
+        if (isRange())
+            return;
+        own(size);
+        if (filled < size)
+            generalize();
+        int to = offset + size;
+        if (longs != null)
+            Arrays.sort(longs, offset, to);
+        else if (strings != null)
+            Arrays.sort(strings, offset, to);
+        else if (bools != null) {
+            int falses = 0;
+            for (int i = offset; i < to; ++i)
+                if (!bools[i]) ++falses;
+            Arrays.fill(bools, offset, offset + falses, false);
+            Arrays.fill(bools, offset + falses, to, true);
+        } else
+            Arrays.sort(array, offset, to);
     }
 
     @Override
@@ -46,15 +375,37 @@ public class PolymorphArray implements Iterable<Object> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         PolymorphArray that = (PolymorphArray) o;
-        return Arrays.equals(array, that.array);
+        if (size != that.size) return false;
+        if (isRange() && that.isRange())
+            return offset == that.offset;
+        if (longs != null && that.longs != null && filled == size && that.filled == size)
+            return Arrays.equals(longs, offset, offset + size, that.longs, that.offset, that.offset + size);
+        for (int i = 0; i < size; ++i)
+            if (!Objects.equals(get(i), that.get(i)))
+                return false;
+        return true;
     }
 
     @Override
     public Iterator<Object> iterator() {
-        return Arrays.stream(array).iterator();
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Object next() {
+                if (index >= size)
+                    throw new NoSuchElementException();
+                return get(index++);
+            }
+        };
     }
 
     public String toString() {
-        return "["+Arrays.stream(array).map(Interpreter::recConvertToString).collect(Collectors.joining(", "))+"]";
+        return "["+IntStream.range(0, size).mapToObj(this::get).map(Builtins::recConvertToString).collect(Collectors.joining(", "))+"]";
     }
 }
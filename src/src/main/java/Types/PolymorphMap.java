@@ -1,44 +1,42 @@
 package Types;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
-import static interpreter.Interpreter.recConvertToString;
+import static interpreter.Builtins.recConvertToString;
 import static norswap.utils.Util.cast;
 
-public class PolymorphMap {
-    private final HashMap<Long, Object> integerMap;
-    private final HashMap<String, Object> stringMap;
-    private final HashMap<Boolean, Object> boolMap;
+/**
+ * An NS map, whose keys are integers, strings or booleans. Iteration follows the order in which
+ * keys were first inserted.
+ *
+ * <p>The keys are held by the {@link KeyTable} this class extends, and the value of the key with
+ * index {@code i} is {@code values[i]}.
+ */
+public class PolymorphMap extends KeyTable {
+    private Object[] values = new Object[INITIAL_CAPACITY];
 
-    public PolymorphMap() {
-        integerMap = new HashMap<>();
-        stringMap  = new HashMap<>();
-        boolMap    = new HashMap<>();
+    public PolymorphMap() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    void grow(int capacity) {
+        values = Arrays.copyOf(values, capacity);
     }
 
+    // ---------------------------------------------------------------------------------------------
+
     public void put(Object key, Object value) {
-        if (key instanceof Long) {
-            integerMap.put((Long) key, value);
-        } else if (key instanceof String) {
-            stringMap.put((String) key, value);
-        } else if (key instanceof Boolean) {
-            boolMap.put((Boolean) key, value);
-        }
+        int entry = addKey(key);
+        if (entry >= 0)
+            values[entry] = value;
     }
 
     public Object get(Object key) {
-        Object res = null;
-        if (key instanceof Long) {
-            res = integerMap.get((Long) key);
-        } else if (key instanceof String) {
-            res = stringMap.get((String) key);
-        } else if (key instanceof Boolean) {
-            res = boolMap.get((Boolean) key);
-        }
+        int entry = indexOf(key);
+        Object res = entry < 0 ? null : values[entry];
 
         if (res == null)
             throw new RuntimeException("Invalid key : " + cast(key));
@@ -46,49 +44,24 @@ public class PolymorphMap {
             return res;
     }
 
-    public Object[] keys() {
-        Object[] keys = new Object[integerMap.size()+stringMap.size()+boolMap.size()];
-        int i = 0;
-        for (Long key : integerMap.keySet()) {
-            keys[i] = key;
-            i += 1;
-        }
-        for (String key : stringMap.keySet()) {
-            keys[i] = key;
-            i += 1;
-        }
-        for (Boolean key : boolMap.keySet()) {
-            keys[i] = key;
-            i += 1;
-        }
-        return keys;
+    /**
+     * Returns the value of {@code key}, or {@code defaultValue} if the map has no such key (unlike
+     * {@link #get}, which throws).
+     */
+    public Object getOrDefault(Object key, Object defaultValue) {
+        int entry = indexOf(key);
+        return entry < 0 ? defaultValue : values[entry];
     }
 
     public Object[][] entries() {
-        Object[][] entries = new Object[integerMap.size()+stringMap.size()+boolMap.size()][2];
-        int i = 0;
-        for (Map.Entry<Long, Object> entry : integerMap.entrySet()) {
-            entries[i][0] = entry.getKey();
-            entries[i][1] = entry.getValue();
-            i += 1;
-        }
-        for (Map.Entry<String, Object> entry : stringMap.entrySet()) {
-            entries[i][0] = entry.getKey();
-            entries[i][1] = entry.getValue();
-            i += 1;
-        }
-        for (Map.Entry<Boolean, Object> entry : boolMap.entrySet()) {
-            entries[i][0] = entry.getKey();
-            entries[i][1] = entry.getValue();
-            i += 1;
+        Object[][] entries = new Object[size][2];
+        for (int i = 0; i < size; ++i) {
+            entries[i][0] = key(i);
+            entries[i][1] = values[i];
         }
         return entries;
     }
 
-    public int size() {
-        return integerMap.size() + stringMap.size() + boolMap.size();
-    }
-
     public String toString() {
         return "{"+ Arrays.stream(this.entries()).map((e) -> recConvertToString(e[0]) + ": " + recConvertToString(e[1])).collect(Collectors.joining(", ")) + "}";
     }
@@ -98,6 +71,12 @@ public class PolymorphMap {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         PolymorphMap that = (PolymorphMap) o;
-        return Objects.equals(integerMap, that.integerMap) && Objects.equals(stringMap, that.stringMap) && Objects.equals(boolMap, that.boolMap);
+        if (size != that.size) return false;
+        for (int i = 0; i < size; ++i) {
+            int entry = that.indexOf(key(i));
+            if (entry < 0 || !Objects.equals(values[i], that.values[entry]))
+                return false;
+        }
+        return true;
     }
 }
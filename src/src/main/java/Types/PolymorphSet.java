@@ -0,0 +1,49 @@
+package Types;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static interpreter.Builtins.recConvertToString;
+
+/**
+ * An NS set, whose elements are integers, strings or booleans. Iteration follows the order in
+ * which elements were first added.
+ *
+ * <p>Elements are held by the {@link KeyTable} this class extends: testing whether a set contains
+ * an integer does not allocate.
+ */
+public class PolymorphSet extends KeyTable {
+
+    public PolymorphSet() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    void grow(int capacity) {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds an element to the set, unless it is already in it. Other values than integers, strings
+     * and booleans are ignored.
+     */
+    public void add(Object element) {
+        addKey(element);
+    }
+
+    public String toString() {
+        return "{"+ Arrays.stream(keys()).map(e -> recConvertToString(e)).collect(Collectors.joining(", ")) + "}";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PolymorphSet that = (PolymorphSet) o;
+        if (size != that.size) return false;
+        for (int i = 0; i < size; ++i)
+            if (!that.contains(key(i)))
+                return false;
+        return true;
+    }
+}
@@ -6,6 +6,7 @@ public enum Type {
     BOOLEAN,
     ARRAY,
     MAP,
+    SET,
     NONE,
     FILE,
     UNKNOWN_TYPE
@@ -1,8 +1,20 @@
 package ast;
 
+import Types.Type;
 import norswap.uranium.Attribute;
 
-public class ASTNode {
+import java.io.Serializable;
+
+/**
+ * Base class of the nodes of the tree. Trees are serializable once linked (see
+ * {@link interpreter.Linker}), together with their scopes, so that they can be cached.
+ */
+public class ASTNode implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Type inferred by semantic analysis, filled in by {@link interpreter.Linker}. */
+    public Type type;
 
     public final Attribute attr (String name) {
         return new Attribute(this, name);
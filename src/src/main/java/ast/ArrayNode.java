@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Objects;
 
 public class ArrayNode extends ASTNode{
+    private static final long serialVersionUID = 1L;
+
     public List<ASTNode> elements;
     public ASTNode size;
 
@@ -4,6 +4,8 @@ import java.util.Objects;
 
 public class BinaryNode extends ASTNode {
 
+    private static final long serialVersionUID = 1L;
+
     public static final int ADD         = 0;
     public static final int SUB         = 1;
     public static final int MUL         = 2;
@@ -25,6 +27,8 @@ public class BinaryNode extends ASTNode {
 
     public static final int IDX_ACCESS  = 14;
 
+    public static final int IN          = 15;
+
     public ASTNode left;
     public ASTNode right;
     public int code;
@@ -66,4 +70,8 @@ public class BinaryNode extends ASTNode {
     public boolean isIdxAccess() {
         return code == IDX_ACCESS;
     }
+
+    public boolean isMembership() {
+        return code == IN;
+    }
 }
@@ -1,10 +1,15 @@
 package ast;
 
+import scopes.Scope;
+
 import java.util.List;
 import java.util.Objects;
 
 public class BlockNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public List<ASTNode> statements;
+    public Scope scope;
 
     public BlockNode(List<ASTNode> statements) {
         this.statements = statements;
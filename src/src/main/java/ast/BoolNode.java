@@ -3,6 +3,8 @@ package ast;
 
 public class BoolNode extends ASTNode {
 
+    private static final long serialVersionUID = 1L;
+
     public boolean value;
 
     public BoolNode(boolean value) {
@@ -1,12 +1,19 @@
 package ast;
 
+import scopes.Scope;
+
 import java.util.List;
 import java.util.Objects;
 
 public class ForNode extends ASTNode implements DeclarationNode {
+    private static final long serialVersionUID = 1L;
+
     public IdentifierNode variable;
     public ASTNode list;
     public BlockNode block;
+    public Scope scope;
+    /** Whether this is a {@code pfor} loop, whose iterations may run concurrently. */
+    public boolean parallel;
 
     public ForNode(IdentifierNode variable, ASTNode list, BlockNode block) {
         this.variable = variable;
@@ -14,12 +21,17 @@ public class ForNode extends ASTNode implements DeclarationNode {
         this.block = block;
     }
 
+    public ForNode(IdentifierNode variable, ASTNode list, BlockNode block, boolean parallel) {
+        this(variable, list, block);
+        this.parallel = parallel;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ForNode forNode = (ForNode) o;
-        return Objects.equals(variable, forNode.variable) && Objects.equals(list, forNode.list) && Objects.equals(block, forNode.block);
+        return parallel == forNode.parallel && Objects.equals(variable, forNode.variable) && Objects.equals(list, forNode.list) && Objects.equals(block, forNode.block);
     }
 
 }
@@ -5,8 +5,16 @@ import java.util.Objects;
 
 public class FunctionCallNode extends ASTNode {
 
+    private static final long serialVersionUID = 1L;
+
     public IdentifierNode functionName;
     public List<ASTNode> args;
+    /**
+     * Whether this is a call to a built-in that modifies a collection that a function body did
+     * not allocate, which may then be shared by the iterations of a {@code pfor} loop calling the
+     * function.
+     */
+    public boolean shared;
 
     public FunctionCallNode(IdentifierNode functionName, List<ASTNode> args) {
         this.functionName = functionName;
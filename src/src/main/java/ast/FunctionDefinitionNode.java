@@ -1,12 +1,17 @@
 package ast;
 
+import scopes.Scope;
+
 import java.util.List;
 import java.util.Objects;
 
 public class FunctionDefinitionNode extends ASTNode implements DeclarationNode {
+    private static final long serialVersionUID = 1L;
+
     public IdentifierNode name;
     public List<ParameterNode> args;
     public BlockNode block;
+    public Scope scope;
 
     public FunctionDefinitionNode(IdentifierNode name, List<ParameterNode> args, BlockNode block) {
         this.name = name;
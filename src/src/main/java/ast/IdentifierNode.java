@@ -1,10 +1,20 @@
 package ast;
 
+import scopes.DeclarationContext;
+
 import java.util.Objects;
 
 public class IdentifierNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public String value;
 
+    /** Declaration this identifier resolves to, filled in by {@link interpreter.Linker}. */
+    public DeclarationContext context;
+
+    /** Slot of the referenced variable in its scope, or -1 if it doesn't refer to a variable. */
+    public int slot = -1;
+
     public IdentifierNode(String v) {
         this.value = v;
     }
@@ -1,6 +1,8 @@
 package ast;
 
 public class IntegerNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public long value;
     public IntegerNode(long v) {
         this.value = v;
@@ -1,12 +1,19 @@
 package ast;
 
+import scopes.Scope;
+
 import java.util.Objects;
 
 public class ListComprehensionNode extends ASTNode implements DeclarationNode {
+    private static final long serialVersionUID = 1L;
+
     public ASTNode expression;
     public IdentifierNode variable;
     public ASTNode iterable;
     public ASTNode condition;
+    public Scope scope;
+    /** Whether the comprehension can be evaluated in parallel, see {@code SemanticAnalysis}. */
+    public boolean pure;
 
     public ListComprehensionNode(ASTNode expression, IdentifierNode variable, ASTNode iterable, ASTNode condition) {
         this.expression = expression;
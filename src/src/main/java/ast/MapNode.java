@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Objects;
 
 public class MapNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public List<BinaryNode> elements;
 
     public MapNode(List<BinaryNode> elements) {
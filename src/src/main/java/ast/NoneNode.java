@@ -1,6 +1,8 @@
 package ast;
 
 public class NoneNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public NoneNode() {}
 
     @Override
@@ -3,6 +3,8 @@ package ast;
 import java.util.Objects;
 
 public class ParameterNode extends ASTNode implements DeclarationNode {
+    private static final long serialVersionUID = 1L;
+
     public IdentifierNode param;
 
     public ParameterNode(IdentifierNode param) {
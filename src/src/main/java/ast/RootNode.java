@@ -1,10 +1,15 @@
 package ast;
 
+import scopes.Scope;
+
 import java.util.List;
 import java.util.Objects;
 
 public class RootNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public BlockNode block;
+    public Scope scope;
 
     public RootNode(BlockNode block) {
         this.block = block;
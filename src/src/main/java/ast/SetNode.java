@@ -0,0 +1,22 @@
+package ast;
+
+import java.util.List;
+import java.util.Objects;
+
+public class SetNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
+    public List<ASTNode> elements;
+
+    public SetNode(List<ASTNode> elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SetNode setNode = (SetNode) o;
+        return Objects.equals(this.elements, setNode.elements);
+    }
+}
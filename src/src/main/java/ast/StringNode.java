@@ -1,6 +1,8 @@
 package ast;
 
 public class StringNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public String value;
 
     public StringNode(String v) {
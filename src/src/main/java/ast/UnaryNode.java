@@ -3,6 +3,8 @@ package ast;
 import java.util.Objects;
 
 public class UnaryNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public static final int NEGATION    = 0;
     public static final int NOT         = 1;
     public static final int RETURN      = 2;
@@ -1,13 +1,27 @@
 package ast;
 
 import ast.ASTNode;
+import scopes.Scope;
 
 import java.util.Objects;
 
 public class VarAssignmentNode extends ASTNode implements DeclarationNode {
+    private static final long serialVersionUID = 1L;
+
     public ASTNode left;
     public ASTNode right;
     public boolean final_;
+    /**
+     * The scope of the outermost {@code pfor} loop this assignment writes outside of, if any: then
+     * the assignment is either a reduction ({@code x = x + e}) or a store into a map.
+     */
+    public Scope pforScope;
+    /**
+     * Whether this assignment is a store into an element of a collection that a function body
+     * did not allocate, which may then be shared by the iterations of a {@code pfor} loop calling
+     * the function.
+     */
+    public boolean shared;
 
     public VarAssignmentNode(ASTNode left, ASTNode right) {
         this.left = left;
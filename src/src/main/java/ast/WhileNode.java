@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Objects;
 
 public class WhileNode extends ASTNode {
+    private static final long serialVersionUID = 1L;
+
     public ASTNode bool;
     public BlockNode block;
 
@@ -0,0 +1,149 @@
+package compiler;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import Types.PolymorphSet;
+import interpreter.None;
+import interpreter.PassthroughException;
+import scopes.Scope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static interpreter.Builtins.index;
+import static interpreter.Builtins.isPrimitive;
+import static interpreter.Builtins.setElement;
+import static interpreter.Builtins.type;
+
+/**
+ * Executables for collection literals and list comprehensions.
+ */
+final class Collections
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Collections() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Array literal listing its elements: {@code [a, b, c]}. */
+    static final class ArrayLiteral extends Executable {
+        private final Executable[] elements;
+
+        ArrayLiteral (Executable[] elements) {
+            this.elements = elements;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object[] values = new Object[elements.length];
+            for (int i = 0; i < elements.length; ++i)
+                values[i] = elements[i].execute(frame);
+            return new PolymorphArray(values);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Set literal listing its elements: {@code {a, b, c}}. */
+    static final class SetLiteral extends Executable {
+        private final Executable[] elements;
+
+        SetLiteral (Executable[] elements) {
+            this.elements = elements;
+        }
+
+        @Override public Object execute (Frame frame) {
+            PolymorphSet set = new PolymorphSet();
+            for (Executable element : elements)
+                set.add(setElement(element.execute(frame)));
+            return set;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Array of a given size, filled with None: {@code [:n]}. */
+    static final class SizedArray extends Executable {
+        private final Executable size;
+
+        SizedArray (Executable size) {
+            this.size = size;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return PolymorphArray.nones(index(size.execute(frame)));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Map literal: {@code {k1: v1, k2: v2}}. */
+    static final class MapLiteral extends Executable {
+        private final Executable[] keys;
+        private final Executable[] values;
+
+        MapLiteral (Executable[] keys, Executable[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override public Object execute (Frame frame) {
+            PolymorphMap map = new PolymorphMap();
+            for (int i = 0; i < keys.length; ++i) {
+                Object key = keys[i].execute(frame);
+                if (!isPrimitive(key))
+                    throw new PassthroughException(new RuntimeException("Cannot use " + type(key) + " as key in map"));
+                map.put(key, values[i].execute(frame));
+            }
+            return map;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * List comprehension: {@code [expression for variable in iterable if condition]}. The iterable
+     * runs in the enclosing frame, the expression and condition in the comprehension's frame.
+     */
+    static final class ListComprehension extends Executable {
+        private final Scope scope;
+        private final int slot;
+        private final Executable iterable;
+        private final Executable expression;
+        private final Executable condition;
+
+        ListComprehension (Scope scope, int slot, Executable iterable, Executable expression, Executable condition) {
+            this.scope = scope;
+            this.slot = slot;
+            this.iterable = iterable;
+            this.expression = expression;
+            this.condition = condition;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object list = iterable.execute(frame);
+            if (!(list instanceof PolymorphArray))
+                throw new PassthroughException(new RuntimeException("List comprehension must iterate over an array, not " + type(list)));
+
+            List<Object> result = new ArrayList<>();
+            Frame inner = new Frame(scope, frame);
+
+            PolymorphArray array = (PolymorphArray) list;
+            for (int i = 0; i < array.size(); ++i) {
+                inner.values[slot] = array.get(i);
+                if (condition != null) {
+                    Object test = condition.execute(inner);
+                    if (!(test instanceof Boolean))
+                        throw new PassthroughException(new RuntimeException("Filter condition in list comprehension must be a boolean not " + type(test)));
+                    if (!(Boolean) test)
+                        continue;
+                }
+                result.add(expression.execute(inner));
+            }
+
+            return new PolymorphArray(result.toArray());
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,340 @@
+package compiler;
+
+import Types.Type;
+import ast.*;
+import compiler.Functions.CompiledFunction;
+import interpreter.Builtin;
+import interpreter.Linker;
+import interpreter.None;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ValuedVisitor;
+import scopes.DeclarationKind;
+import scopes.RootScope;
+import scopes.Scope;
+import scopes.SyntheticDeclarationNode;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Compiles an analysed AST into a tree of {@link Executable}s, which can then be run through
+ * {@link Program#run(String[])}.
+ *
+ * <p>This engine implements the same semantics as the reference {@link interpreter.Interpreter},
+ * but performs all the decisions that only depend on the tree (which operator to apply, where a
+ * variable lives, which function is called) once, at compile time.
+ *
+ * <p>The compiler keeps track of the depth of the frame the code being compiled will run in, which
+ * is the depth of the innermost enclosing scope. A variable declared in a scope at depth {@code d}
+ * is thus always found {@code depth - d} frames up the chain.
+ */
+public final class Compiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final ValuedVisitor<ASTNode, Executable> visitor = new ValuedVisitor<>();
+    private final IdentityHashMap<FunctionDefinitionNode, CompiledFunction> functions = new IdentityHashMap<>();
+
+    /** Depth of the frame in which the code being compiled runs. */
+    private int depth;
+
+    /** Depth of the frame of the function being compiled. */
+    private int functionDepth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Compiler ()
+    {
+        // SCOPES
+        visitor.register(BlockNode.class, this::block);
+
+        // PRIMITIVE LITERALS
+        visitor.register(NoneNode.class, n -> new Variables.Constant(None.INSTANCE));
+        visitor.register(BoolNode.class, n -> new Variables.Constant(n.value));
+        visitor.register(IntegerNode.class, n -> new Variables.Constant(n.value));
+        visitor.register(StringNode.class, n -> new Variables.Constant(n.value));
+
+        // VARIABLES
+        visitor.register(IdentifierNode.class, this::identifier);
+        visitor.register(VarAssignmentNode.class, this::varAssignment);
+
+        // COLLECTIONS
+        visitor.register(MapNode.class, this::map);
+        visitor.register(ArrayNode.class, this::array);
+        visitor.register(SetNode.class, this::set);
+        visitor.register(ListComprehensionNode.class, this::listComprehension);
+
+        // OPERATIONS
+        visitor.register(UnaryNode.class, this::unary);
+        visitor.register(BinaryNode.class, this::binary);
+
+        // STATEMENTS
+        visitor.register(IfNode.class, this::if_);
+        visitor.register(ForNode.class, this::for_);
+        visitor.register(WhileNode.class, this::while_);
+
+        // FUNCTIONS
+        visitor.register(FunctionCallNode.class, this::functionCall);
+        visitor.registerFallback(node -> new Variables.Constant(null));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given tree, which must have been analysed without errors by {@code reactor}.
+     */
+    public static Program compile (Reactor reactor, RootNode root)
+    {
+        Linker.link(reactor, root);
+        Compiler compiler = new Compiler();
+        RootScope scope = (RootScope) root.scope;
+        compiler.depth = scope.depth;
+        return new Program(scope, compiler.compile(root.block));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Executable compile (ASTNode node) {
+        return visitor.apply(node);
+    }
+
+    private Executable[] compile (List<? extends ASTNode> nodes) {
+        Executable[] executables = new Executable[nodes == null ? 0 : nodes.size()];
+        for (int i = 0; i < executables.length; ++i)
+            executables[i] = compile(nodes.get(i));
+        return executables;
+    }
+
+    /** Compiles {@code node} to run in a new frame for {@code scope}. */
+    private Executable compileIn (Scope scope, ASTNode node) {
+        int outer = depth;
+        depth = scope.depth;
+        Executable executable = compile(node);
+        depth = outer;
+        return executable;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // SCOPES
+
+    private Executable block (BlockNode n)
+    {
+        int outer = depth;
+        depth = n.scope.depth;
+        Executable[] statements = compile(n.statements);
+        depth = outer;
+        return new Statements.Block(n.scope, statements);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // VARIABLES
+
+    private Executable identifier (IdentifierNode n)
+    {
+        if (n.slot < 0)
+            return new Variables.Constant(n.context.declaration);
+
+        int hops = depth - n.context.scope.depth;
+        return hops == 0
+            ? new Variables.ReadLocal(n.slot)
+            : new Variables.Read(hops, n.slot);
+    }
+
+    private Executable varAssignment (VarAssignmentNode n)
+    {
+        if (n.left instanceof IdentifierNode) {
+            IdentifierNode left = (IdentifierNode) n.left;
+            return new Variables.Assign(depth - left.context.scope.depth, left.slot, compile(n.right));
+        }
+
+        if (n.left instanceof BinaryNode && ((BinaryNode) n.left).code == BinaryNode.IDX_ACCESS) {
+            BinaryNode access = (BinaryNode) n.left;
+            return new Variables.AssignIndexed(
+                compile(access.left), compile(access.right), compile(n.right), n.left.toString());
+        }
+
+        throw new Error("Should not get here");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // COLLECTIONS
+
+    private Executable map (MapNode n)
+    {
+        int size = n.elements == null ? 0 : n.elements.size();
+        Executable[] keys = new Executable[size];
+        Executable[] values = new Executable[size];
+        for (int i = 0; i < size; ++i) {
+            keys[i] = compile(n.elements.get(i).left);
+            values[i] = compile(n.elements.get(i).right);
+        }
+        return new Collections.MapLiteral(keys, values);
+    }
+
+    private Executable array (ArrayNode n)
+    {
+        if (n.elements != null)
+            return new Collections.ArrayLiteral(compile(n.elements));
+        if (n.size != null)
+            return new Collections.SizedArray(compile(n.size));
+        throw new Error("Should not get here");
+    }
+
+    private Executable set (SetNode n) {
+        return new Collections.SetLiteral(compile(n.elements));
+    }
+
+    private Executable listComprehension (ListComprehensionNode n)
+    {
+        Executable iterable = compile(n.iterable);
+        Executable expression = compileIn(n.scope, n.expression);
+        Executable condition = n.condition == null ? null : compileIn(n.scope, n.condition);
+        return new Collections.ListComprehension(n.scope, n.variable.slot, iterable, expression, condition);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // OPERATIONS
+
+    private Executable unary (UnaryNode n)
+    {
+        switch (n.code) {
+            case UnaryNode.NEGATION:
+                return n.child.type == Type.INTEGER
+                    ? new Operations.LongNegate(compile(n.child))
+                    : new Operations.Negate(compile(n.child));
+            case UnaryNode.NOT:
+                return new Operations.Not(compile(n.child));
+            case UnaryNode.RETURN:
+                return new Operations.Return(n.child == null ? null : returned(n.child), depth - functionDepth);
+        }
+        throw new Error("Should not get here");
+    }
+
+    /** Compiles the value of a return statement, turning calls to user functions into tail calls. */
+    private Executable returned (ASTNode n)
+    {
+        if (!(n instanceof FunctionCallNode))
+            return compile(n);
+
+        FunctionCallNode call = (FunctionCallNode) n;
+        Object decl = call.functionName.context.declaration;
+        if (!(decl instanceof FunctionDefinitionNode))
+            return compile(n);
+
+        CompiledFunction function = function((FunctionDefinitionNode) decl);
+        return new Functions.TailCall(function, depth - function.scope.parent.depth, compile(call.args));
+    }
+
+    private Executable binary (BinaryNode n)
+    {
+        Executable left = compile(n.left);
+        Executable right = compile(n.right);
+
+        if (n.left.type == Type.INTEGER && n.right.type == Type.INTEGER) {
+            switch (n.code) {
+                case BinaryNode.ADD:    return new Operations.LongAdd(left, right);
+                case BinaryNode.SUB:    return new Operations.LongSub(left, right);
+                case BinaryNode.MUL:    return new Operations.LongMul(left, right);
+                case BinaryNode.DIV:    return new Operations.LongDiv(left, right);
+                case BinaryNode.MOD:    return new Operations.LongMod(left, right);
+                case BinaryNode.EQ:     return new Operations.LongEqual(left, right);
+                case BinaryNode.NEQ:    return new Operations.LongNotEqual(left, right);
+                case BinaryNode.LEQ:    return new Operations.LongLessEqual(left, right);
+                case BinaryNode.GEQ:    return new Operations.LongGreaterEqual(left, right);
+                case BinaryNode.L:      return new Operations.LongLess(left, right);
+                case BinaryNode.G:      return new Operations.LongGreater(left, right);
+            }
+        }
+
+        switch (n.code) {
+            case BinaryNode.ADD:        return new Operations.Add(left, right);
+            case BinaryNode.SUB:        return new Operations.Sub(left, right);
+            case BinaryNode.MUL:        return new Operations.Mul(left, right);
+            case BinaryNode.DIV:        return new Operations.Div(left, right);
+            case BinaryNode.MOD:        return new Operations.Mod(left, right);
+            case BinaryNode.OR:         return new Operations.Or(left, right);
+            case BinaryNode.AND:        return new Operations.And(left, right);
+            case BinaryNode.EQ:         return new Operations.Equal(left, right);
+            case BinaryNode.NEQ:        return new Operations.NotEqual(left, right);
+            case BinaryNode.LEQ:        return new Operations.LessEqual(left, right);
+            case BinaryNode.GEQ:        return new Operations.GreaterEqual(left, right);
+            case BinaryNode.L:          return new Operations.Less(left, right);
+            case BinaryNode.G:          return new Operations.Greater(left, right);
+            case BinaryNode.IDX_ACCESS: return new Operations.Index(left, right);
+            case BinaryNode.IN:         return new Operations.In(left, right);
+        }
+        throw new Error("Should not get here");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // STATEMENTS
+
+    private Executable if_ (IfNode n)
+    {
+        int size = 1 + (n.else_blocks == null ? 0 : n.else_blocks.size());
+        Executable[] conditions = new Executable[size];
+        Executable[] blocks = new Executable[size];
+
+        conditions[0] = compile(n.bool);
+        blocks[0] = compile(n.block);
+        for (int i = 1; i < size; ++i) {
+            ElseNode branch = n.else_blocks.get(i - 1);
+            conditions[i] = branch.bool == null ? null : compile(branch.bool);
+            blocks[i] = compile(branch.block);
+        }
+        return new Statements.If(conditions, blocks);
+    }
+
+    private Executable for_ (ForNode n) {
+        return new Statements.For(n.scope, n.variable.slot,
+            compileIn(n.scope, n.list), compileIn(n.scope, n.block));
+    }
+
+    private Executable while_ (WhileNode n) {
+        return new Statements.While(compile(n.bool), compile(n.block));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // FUNCTIONS
+
+    private Executable functionCall (FunctionCallNode n)
+    {
+        Object decl = n.functionName.context.declaration;
+        Executable[] args = compile(n.args);
+
+        if (decl instanceof SyntheticDeclarationNode
+                && ((SyntheticDeclarationNode) decl).kind() == DeclarationKind.FUNCTION)
+            return new Functions.BuiltinCall(Builtin.of(((SyntheticDeclarationNode) decl).name()), args);
+
+        if (decl instanceof FunctionDefinitionNode) {
+            CompiledFunction function = function((FunctionDefinitionNode) decl);
+            return new Functions.Call(function, depth - function.scope.parent.depth, args);
+        }
+
+        // semantic analysis only allows calls to functions and built-ins
+        throw new Error("Should not get here");
+    }
+
+    /**
+     * Returns the compiled version of the given function, compiling it on first use.
+     */
+    private CompiledFunction function (FunctionDefinitionNode n)
+    {
+        CompiledFunction function = functions.get(n);
+        if (function != null) return function;
+
+        int[] params = new int[n.args == null ? 0 : n.args.size()];
+        for (int i = 0; i < params.length; ++i)
+            params[i] = n.args.get(i).param.slot;
+
+        function = new CompiledFunction(n, params);
+        functions.put(n, function);
+        int outer = functionDepth;
+        functionDepth = n.scope.depth;
+        function.body = compileIn(n.scope, n.block);
+        functionDepth = outer;
+        return function;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,37 @@
+package compiler;
+
+/**
+ * A piece of compiled code, ready to be executed.
+ *
+ * <p>The {@link Compiler} turns each AST node into an executable specialised for that node (e.g.
+ * one class per arithmetic operator), so that no dispatch on the node kind or operator code
+ * remains at run time.
+ *
+ * <p>Executables for operations whose operand types are not known statically specialise
+ * themselves on the types they observe at run time: they record the types seen on the first
+ * execution and switch to code assuming these types, guarded by type checks that revert them to
+ * the generic code if the assumption ever fails.
+ */
+public abstract class Executable
+{
+    /**
+     * Executes the code in the given frame, and returns its value ({@code null} for statements
+     * that do not produce any value, {@link Functions#RETURN} for statements that complete with a
+     * return).
+     */
+    public abstract Object execute (Frame frame);
+
+    /**
+     * Executes an expression expected to produce an integer, and returns it unboxed. Executables
+     * for integer operations override this, so that nested arithmetic does not allocate
+     * intermediate values.
+     *
+     * @throws UnexpectedResultException if the value is not an integer
+     */
+    public long executeLong (Frame frame) {
+        Object value = execute(frame);
+        if (value instanceof Long)
+            return (Long) value;
+        throw new UnexpectedResultException(value);
+    }
+}
@@ -0,0 +1,45 @@
+package compiler;
+
+import scopes.Scope;
+
+/**
+ * The runtime instantiation of a {@link Scope} in code produced by the {@link Compiler}.
+ *
+ * <p>Frames are chained following the lexical nesting of scopes. Since the compiler knows the
+ * depth of the frame in which each piece of code runs, variable accesses are compiled to a fixed
+ * number of hops up the chain, followed by an array access.
+ */
+public final class Frame
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final Frame parent;
+    public final Object[] values;
+
+    /**
+     * For the frame of a function, the value of the return statement that completed the current
+     * invocation (see {@link Functions#RETURN}).
+     */
+    Object returned;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Frame (Scope scope, Frame parent) {
+        this.parent = parent;
+        this.values = new Object[scope.size()];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the frame {@code hops} levels up the chain.
+     */
+    public Frame up (int hops) {
+        Frame frame = this;
+        for (int i = 0; i < hops; ++i)
+            frame = frame.parent;
+        return frame;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,154 @@
+package compiler;
+
+import ast.FunctionDefinitionNode;
+import interpreter.Builtin;
+import interpreter.None;
+import scopes.Scope;
+
+/**
+ * Compiled functions and the executables calling them.
+ */
+final class Functions
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Functions() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Result of a statement completed by a return statement. Blocks and loops stop executing and
+     * pass it up to the {@link CompiledFunction}, which finds the returned value in its frame
+     * ({@link Frame#returned}).
+     */
+    static final Object RETURN = new Object();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The compiled body of a user-defined function. The body is filled in after the function has
+     * been registered with the compiler, so that recursive calls can refer to it.
+     */
+    static final class CompiledFunction {
+        final FunctionDefinitionNode node;
+        final Scope scope;
+        final int[] params;
+        Executable body;
+
+        CompiledFunction (FunctionDefinitionNode node, int[] params) {
+            this.node = node;
+            this.scope = node.scope;
+            this.params = params;
+        }
+
+        /**
+         * Invokes the function in a frame linked to {@code parent}, then runs the tail calls it
+         * makes (see {@link TailCall}) in a loop.
+         */
+        Object invoke (Frame parent, Object[] args) {
+            CompiledFunction function = this;
+            while (true) {
+                Frame frame = new Frame(function.scope, parent);
+                for (int i = 0; i < function.params.length; ++i)
+                    frame.values[function.params[i]] = args[i];
+
+                if (function.body.execute(frame) != RETURN)
+                    return None.INSTANCE;
+                if (!(frame.returned instanceof PendingCall))
+                    return frame.returned;
+
+                PendingCall call = (PendingCall) frame.returned;
+                function = call.function;
+                parent = call.parent;
+                args = call.args;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static Object[] arguments (Executable[] args, Frame frame) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; ++i)
+            values[i] = args[i].execute(frame);
+        return values;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Call to a user-defined function. The frame of the function is linked to the frame of its
+     * lexically enclosing scope, which is found {@code hops} levels up from the caller's frame.
+     */
+    static final class Call extends Executable {
+        private final CompiledFunction function;
+        private final int hops;
+        private final Executable[] args;
+
+        Call (CompiledFunction function, int hops, Executable[] args) {
+            this.function = function;
+            this.hops = hops;
+            this.args = args;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object[] values = arguments(args, frame);
+            return function.invoke(frame.up(hops), values);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A call in tail position whose arguments have been evaluated, see {@link TailCall}. */
+    static final class PendingCall {
+        final CompiledFunction function;
+        final Frame parent;
+        final Object[] args;
+
+        PendingCall (CompiledFunction function, Frame parent, Object[] args) {
+            this.function = function;
+            this.parent = parent;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Call to a user-defined function in tail position ({@code return f(...)}). It only evaluates
+     * the arguments: the {@link CompiledFunction} running the return statement makes the call
+     * itself, so that tail calls run in constant stack space.
+     */
+    static final class TailCall extends Executable {
+        private final CompiledFunction function;
+        private final int hops;
+        private final Executable[] args;
+
+        TailCall (CompiledFunction function, int hops, Executable[] args) {
+            this.function = function;
+            this.hops = hops;
+            this.args = args;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return new PendingCall(function, frame.up(hops), arguments(args, frame));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Call to a built-in function, resolved at compile time. */
+    static final class BuiltinCall extends Executable {
+        private final Builtin builtin;
+        private final Executable[] args;
+
+        BuiltinCall (Builtin builtin, Executable[] args) {
+            this.builtin = builtin;
+            this.args = args;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return builtin.call(arguments(args, frame));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
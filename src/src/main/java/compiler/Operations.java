@@ -0,0 +1,710 @@
+package compiler;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import interpreter.Builtins;
+import interpreter.None;
+import interpreter.PassthroughException;
+
+import static interpreter.Builtins.isPrimitive;
+import static interpreter.Builtins.type;
+
+/**
+ * Executables for unary and binary operations, one class per operator.
+ *
+ * <p>Comparisons and indexing specialise themselves on the operand types they observe (see
+ * {@link Executable}). Each of them is in one of the following states: uninitialized (not
+ * executed yet), specialised for the types seen on the first execution, or generic, which is
+ * also where a specialised executable goes when its guard fails, so that it does not keep
+ * switching back and forth.
+ */
+final class Operations
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Operations() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Base class for binary operations. */
+    abstract static class Binary extends Executable {
+        final Executable left;
+        final Executable right;
+
+        Binary (Executable left, Executable right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static PassthroughException operandError (String operation, Object left, Object right) {
+        return new PassthroughException(new ClassCastException("Cannot do " + operation + " on "
+            + type(left) + " and "
+            + type(right) + "."));
+    }
+
+    private static final String ARITHMETIC = "arithmetic operations";
+
+    // ---------------------------------------------------------------------------------------------
+
+    // Arithmetic is only defined on integers, so the arithmetic executables always evaluate their
+    // operands through executeLong: a value of another type can only lead to an error.
+
+    /** Integer addition. */
+    static final class Add extends Binary {
+        Add (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            long l, r;
+            try {
+                l = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, e.value, right.execute(frame));
+            }
+            try {
+                r = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, l, e.value);
+            }
+            return l + r;
+        }
+    }
+
+    /** Integer subtraction. */
+    static final class Sub extends Binary {
+        Sub (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            long l, r;
+            try {
+                l = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, e.value, right.execute(frame));
+            }
+            try {
+                r = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, l, e.value);
+            }
+            return l - r;
+        }
+    }
+
+    /** Integer multiplication. */
+    static final class Mul extends Binary {
+        Mul (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            long l, r;
+            try {
+                l = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, e.value, right.execute(frame));
+            }
+            try {
+                r = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, l, e.value);
+            }
+            return l * r;
+        }
+    }
+
+    /** Integer division. */
+    static final class Div extends Binary {
+        Div (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            long l, r;
+            try {
+                l = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, e.value, right.execute(frame));
+            }
+            try {
+                r = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, l, e.value);
+            }
+            return l / r;
+        }
+    }
+
+    /** Integer remainder. */
+    static final class Mod extends Binary {
+        Mod (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            long l, r;
+            try {
+                l = left.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, e.value, right.execute(frame));
+            }
+            try {
+                r = right.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw operandError(ARITHMETIC, l, e.value);
+            }
+            return l % r;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Logical disjunction (both operands are always evaluated). */
+    static final class Or extends Binary {
+        Or (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (!(l instanceof Boolean && r instanceof Boolean))
+                throw operandError("logic operations", l, r);
+            return (Boolean) l || (Boolean) r;
+        }
+    }
+
+    /** Logical conjunction (both operands are always evaluated). */
+    static final class And extends Binary {
+        And (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (!(l instanceof Boolean && r instanceof Boolean))
+                throw operandError("logic operations", l, r);
+            return (Boolean) l && (Boolean) r;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    // States of the self-specialising executables.
+    private static final int UNINITIALIZED = 0;
+    private static final int LONGS         = 1;
+    private static final int STRINGS       = 2;
+    private static final int ARRAY         = 3;
+    private static final int MAP           = 4;
+    private static final int GENERIC       = 5;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Base class for equality comparisons, which specialise themselves for integer operands if
+     * those are the first operands they see.
+     */
+    abstract static class Equality extends Binary {
+        private int state = UNINITIALIZED;
+
+        Equality (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        final boolean equal (Frame frame) {
+            switch (state) {
+                case LONGS: {
+                    long l;
+                    try {
+                        l = left.executeLong(frame);
+                    } catch (UnexpectedResultException e) {
+                        state = GENERIC;
+                        return e.value.equals(right.execute(frame));
+                    }
+                    try {
+                        return l == right.executeLong(frame);
+                    } catch (UnexpectedResultException e) {
+                        state = GENERIC;
+                        return false;
+                    }
+                }
+                case GENERIC:
+                    return left.execute(frame).equals(right.execute(frame));
+                default: {
+                    Object l = left.execute(frame);
+                    Object r = right.execute(frame);
+                    state = l instanceof Long && r instanceof Long ? LONGS : GENERIC;
+                    return l.equals(r);
+                }
+            }
+        }
+    }
+
+    /** Equality comparison. */
+    static final class Equal extends Equality {
+        Equal (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return equal(frame);
+        }
+    }
+
+    /** Inequality comparison. */
+    static final class NotEqual extends Equality {
+        NotEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return !equal(frame);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static int compare (Object left, Object right) {
+        if (left instanceof Long && right instanceof Long)
+            return ((Long) left).compareTo((Long) right);
+        if (left instanceof String && right instanceof String)
+            return ((String) left).compareTo((String) right);
+        throw operandError("inequality comparisons", left, right);
+    }
+
+    /**
+     * Base class for inequality comparisons, which specialise themselves for integer or string
+     * operands, depending on the first operands they see.
+     */
+    abstract static class Comparison extends Binary {
+        private int state = UNINITIALIZED;
+
+        Comparison (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        final int compare (Frame frame) {
+            switch (state) {
+                case LONGS: {
+                    long l;
+                    try {
+                        l = left.executeLong(frame);
+                    } catch (UnexpectedResultException e) {
+                        return deoptimize(e.value, right.execute(frame));
+                    }
+                    try {
+                        return Long.compare(l, right.executeLong(frame));
+                    } catch (UnexpectedResultException e) {
+                        return deoptimize(l, e.value);
+                    }
+                }
+                case STRINGS: {
+                    Object l = left.execute(frame);
+                    Object r = right.execute(frame);
+                    if (l instanceof String && r instanceof String)
+                        return ((String) l).compareTo((String) r);
+                    return deoptimize(l, r);
+                }
+                case GENERIC:
+                    return Operations.compare(left.execute(frame), right.execute(frame));
+                default: {
+                    Object l = left.execute(frame);
+                    Object r = right.execute(frame);
+                    state = l instanceof Long   && r instanceof Long   ? LONGS
+                          : l instanceof String && r instanceof String ? STRINGS
+                          : GENERIC;
+                    return Operations.compare(l, r);
+                }
+            }
+        }
+
+        private int deoptimize (Object l, Object r) {
+            state = GENERIC;
+            return Operations.compare(l, r);
+        }
+    }
+
+    /** {@code <=} comparison of integers or strings. */
+    static final class LessEqual extends Comparison {
+        LessEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return compare(frame) <= 0;
+        }
+    }
+
+    /** {@code >=} comparison of integers or strings. */
+    static final class GreaterEqual extends Comparison {
+        GreaterEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return compare(frame) >= 0;
+        }
+    }
+
+    /** {@code <} comparison of integers or strings. */
+    static final class Less extends Comparison {
+        Less (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return compare(frame) < 0;
+        }
+    }
+
+    /** {@code >} comparison of integers or strings. */
+    static final class Greater extends Comparison {
+        Greater (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return compare(frame) > 0;
+        }
+    }
+
+    /** {@code in} test of membership in a set. */
+    static final class In extends Binary {
+        In (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object element = left.execute(frame);
+            return Builtins.contains(right.execute(frame), element);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static Object index (Object l, Object r) {
+        if (l instanceof PolymorphArray && r instanceof Long) {
+            try {
+                return ((PolymorphArray) l).get(Builtins.index(r));
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new PassthroughException(e);
+            }
+        } else if (l instanceof PolymorphMap && isPrimitive(r)) {
+            try {
+                return ((PolymorphMap) l).get(r);
+            } catch (RuntimeException e) {
+                throw new PassthroughException(e);
+            }
+        }
+
+        if (l instanceof PolymorphMap)
+            throw new PassthroughException(new ClassCastException(type(r) + " cannot index a map"));
+        else if (l instanceof PolymorphArray)
+            throw new PassthroughException(new ClassCastException(type(r) + " cannot index an array"));
+        else
+            throw new PassthroughException(new ClassCastException("Only array and map can be indexed, not " + type(l)));
+    }
+
+    /**
+     * Indexing of an array or a map, which specialises itself for arrays indexed by integers or
+     * for maps, depending on the first indexed value it sees.
+     */
+    static final class Index extends Binary {
+        private int state = UNINITIALIZED;
+
+        Index (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            switch (state) {
+                case ARRAY: {
+                    Object l = left.execute(frame);
+                    if (!(l instanceof PolymorphArray))
+                        return deoptimize(l, right.execute(frame));
+                    long i;
+                    try {
+                        i = right.executeLong(frame);
+                    } catch (UnexpectedResultException e) {
+                        return deoptimize(l, e.value);
+                    }
+                    try {
+                        return ((PolymorphArray) l).get(Builtins.index(i));
+                    } catch (ArrayIndexOutOfBoundsException e) {
+                        throw new PassthroughException(e);
+                    }
+                }
+                case MAP: {
+                    Object l = left.execute(frame);
+                    Object r = right.execute(frame);
+                    if (!(l instanceof PolymorphMap))
+                        return deoptimize(l, r);
+                    return index(l, r);
+                }
+                case GENERIC:
+                    return index(left.execute(frame), right.execute(frame));
+                default: {
+                    Object l = left.execute(frame);
+                    Object r = right.execute(frame);
+                    state = l instanceof PolymorphArray && r instanceof Long ? ARRAY
+                          : l instanceof PolymorphMap ? MAP
+                          : GENERIC;
+                    return index(l, r);
+                }
+            }
+        }
+
+        private Object deoptimize (Object l, Object r) {
+            state = GENERIC;
+            return index(l, r);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Integer negation. */
+    static final class Negate extends Executable {
+        private final Executable child;
+
+        Negate (Executable child) {
+            this.child = child;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            try {
+                return - child.executeLong(frame);
+            } catch (UnexpectedResultException e) {
+                throw new PassthroughException(new RuntimeException("Cannot negate a non-int value " + type(e.value)));
+            }
+        }
+    }
+
+    /** Logical negation. */
+    static final class Not extends Executable {
+        private final Executable child;
+
+        Not (Executable child) {
+            this.child = child;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object arg = child.execute(frame);
+            if (!(arg instanceof Boolean))
+                throw new PassthroughException(new RuntimeException("Cannot apply not operator on a non-boolean value " + type(arg)));
+            return !(Boolean) arg;
+        }
+    }
+
+    /**
+     * Returns from the enclosing function, whose frame is {@code hops} levels up. See
+     * {@link Functions#RETURN}.
+     */
+    static final class Return extends Executable {
+        private final Executable child;
+        private final int hops;
+
+        Return (Executable child, int hops) {
+            this.child = child;
+            this.hops = hops;
+        }
+
+        @Override public Object execute (Frame frame) {
+            frame.up(hops).returned = child == null ? None.INSTANCE : child.execute(frame);
+            return Functions.RETURN;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Operations whose operands are known to be integers (see {@link interpreter.Linker}), which
+    // are evaluated through {@link Executable#executeLong} without any check nor boxing.
+
+    /** Integer addition of integer operands. */
+    static final class LongAdd extends Binary {
+        LongAdd (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            return left.executeLong(frame) + right.executeLong(frame);
+        }
+    }
+
+    /** Integer subtraction of integer operands. */
+    static final class LongSub extends Binary {
+        LongSub (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            return left.executeLong(frame) - right.executeLong(frame);
+        }
+    }
+
+    /** Integer multiplication of integer operands. */
+    static final class LongMul extends Binary {
+        LongMul (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            return left.executeLong(frame) * right.executeLong(frame);
+        }
+    }
+
+    /** Integer division of integer operands. */
+    static final class LongDiv extends Binary {
+        LongDiv (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            return left.executeLong(frame) / right.executeLong(frame);
+        }
+    }
+
+    /** Integer remainder of integer operands. */
+    static final class LongMod extends Binary {
+        LongMod (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            return left.executeLong(frame) % right.executeLong(frame);
+        }
+    }
+
+    /** Negation of an integer operand. */
+    static final class LongNegate extends Executable {
+        private final Executable child;
+
+        LongNegate (Executable child) {
+            this.child = child;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override public long executeLong (Frame frame) {
+            return - child.executeLong(frame);
+        }
+    }
+
+    /** Equality comparison of integer operands. */
+    static final class LongEqual extends Binary {
+        LongEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return left.executeLong(frame) == right.executeLong(frame);
+        }
+    }
+
+    /** Inequality comparison of integer operands. */
+    static final class LongNotEqual extends Binary {
+        LongNotEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return left.executeLong(frame) != right.executeLong(frame);
+        }
+    }
+
+    /** {@code <=} comparison of integer operands. */
+    static final class LongLessEqual extends Binary {
+        LongLessEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return left.executeLong(frame) <= right.executeLong(frame);
+        }
+    }
+
+    /** {@code >=} comparison of integer operands. */
+    static final class LongGreaterEqual extends Binary {
+        LongGreaterEqual (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return left.executeLong(frame) >= right.executeLong(frame);
+        }
+    }
+
+    /** {@code <} comparison of integer operands. */
+    static final class LongLess extends Binary {
+        LongLess (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return left.executeLong(frame) < right.executeLong(frame);
+        }
+    }
+
+    /** {@code >} comparison of integer operands. */
+    static final class LongGreater extends Binary {
+        LongGreater (Executable left, Executable right) {
+            super(left, right);
+        }
+
+        @Override public Object execute (Frame frame) {
+            return left.executeLong(frame) > right.executeLong(frame);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,53 @@
+package compiler;
+
+import Types.PolymorphArray;
+import interpreter.InterpreterException;
+import interpreter.None;
+import interpreter.PassthroughException;
+import norswap.utils.exceptions.Exceptions;
+import scopes.RootScope;
+
+/**
+ * A program compiled by the {@link Compiler}, which can be run any number of times.
+ */
+public final class Program
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final RootScope scope;
+    private final Executable body;
+
+    // ---------------------------------------------------------------------------------------------
+
+    Program (RootScope scope, Executable body) {
+        this.scope = scope;
+        this.body = body;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the program with the given command line arguments, and returns the value of its last
+     * statement.
+     */
+    public Object run (String[] args)
+    {
+        Frame root = new Frame(scope, null);
+        root.values[scope.slot(scope._true  .name())] = true;
+        root.values[scope.slot(scope._false .name())] = false;
+        root.values[scope.slot(scope._none  .name())] = None.INSTANCE;
+        root.values[scope.slot(scope._args  .name())] = new PolymorphArray((Object[]) args);
+
+        try {
+            return body.execute(root);
+        } catch (PassthroughException e) {
+            throw Exceptions.runtime(e.getCause());
+        } catch (InterpreterException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InterpreterException("exception while executing program", e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
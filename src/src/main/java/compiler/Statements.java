@@ -0,0 +1,140 @@
+package compiler;
+
+import Types.PolymorphArray;
+import interpreter.PassthroughException;
+import scopes.Scope;
+
+import static interpreter.Builtins.type;
+
+/**
+ * Executables for blocks and control-flow statements.
+ *
+ * <p>All of them stop and propagate {@link Functions#RETURN} when one of their statements
+ * completes with a return.
+ */
+final class Statements
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Statements() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A block, which runs in its own frame and evaluates to the value of its last statement. */
+    static final class Block extends Executable {
+        private final Scope scope;
+        private final Executable[] statements;
+
+        Block (Scope scope, Executable[] statements) {
+            this.scope = scope;
+            this.statements = statements;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Frame inner = new Frame(scope, frame);
+            Object result = null;
+            for (Executable statement : statements) {
+                result = statement.execute(inner);
+                if (result == Functions.RETURN)
+                    break;
+            }
+            return result;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Statements evaluate to null, unless they complete with a return. */
+    private static Object completion (Object result) {
+        return result == Functions.RETURN ? result : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * An if statement with its elsif and else branches. The conditions and blocks are ordered, and
+     * a null condition stands for the else branch.
+     */
+    static final class If extends Executable {
+        private final Executable[] conditions;
+        private final Executable[] blocks;
+
+        If (Executable[] conditions, Executable[] blocks) {
+            this.conditions = conditions;
+            this.blocks = blocks;
+        }
+
+        @Override public Object execute (Frame frame) {
+            for (int i = 0; i < conditions.length; ++i) {
+                if (conditions[i] == null)
+                    return completion(blocks[i].execute(frame));
+                Object test = conditions[i].execute(frame);
+                if (!(test instanceof Boolean))
+                    throw new PassthroughException(new RuntimeException(
+                        (i == 0 ? "If" : "Elsif") + " statement needs boolean condition, not " + type(test)));
+                if ((Boolean) test)
+                    return completion(blocks[i].execute(frame));
+            }
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A while loop. */
+    static final class While extends Executable {
+        private final Executable condition;
+        private final Executable block;
+
+        While (Executable condition, Executable block) {
+            this.condition = condition;
+            this.block = block;
+        }
+
+        @Override public Object execute (Frame frame) {
+            while (true) {
+                Object test = condition.execute(frame);
+                if (!(test instanceof Boolean))
+                    throw new PassthroughException(new RuntimeException("While loop needs boolean condition, not " + type(test)));
+                if (!(Boolean) test)
+                    return null;
+                if (block.execute(frame) == Functions.RETURN)
+                    return Functions.RETURN;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A for loop, whose list and block both run in the loop's frame. */
+    static final class For extends Executable {
+        private final Scope scope;
+        private final int slot;
+        private final Executable list;
+        private final Executable block;
+
+        For (Scope scope, int slot, Executable list, Executable block) {
+            this.scope = scope;
+            this.slot = slot;
+            this.list = list;
+            this.block = block;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Frame inner = new Frame(scope, frame);
+            Object iterable = list.execute(inner);
+            if (!(iterable instanceof PolymorphArray))
+                throw new PassthroughException(new RuntimeException("Cannot iterate over " + type(iterable)));
+
+            PolymorphArray array = (PolymorphArray) iterable;
+            for (int i = 0; i < array.size(); ++i) {
+                inner.values[slot] = array.get(i);
+                if (block.execute(inner) == Functions.RETURN)
+                    return Functions.RETURN;
+            }
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
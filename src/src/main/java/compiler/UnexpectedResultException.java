@@ -0,0 +1,20 @@
+package compiler;
+
+import norswap.utils.exceptions.NoStackException;
+
+/**
+ * Thrown by the specialised execute methods of {@link Executable} (e.g.
+ * {@link Executable#executeLong}) when the value of the expression does not have the expected
+ * type. The exception carries the value, so that the caller can fall back to the generic path
+ * without evaluating the expression again.
+ */
+public final class UnexpectedResultException extends NoStackException
+{
+    private static final long serialVersionUID = 1L;
+
+    public final Object value;
+
+    public UnexpectedResultException (Object value) {
+        this.value = value;
+    }
+}
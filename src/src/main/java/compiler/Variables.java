@@ -0,0 +1,146 @@
+package compiler;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import interpreter.None;
+import interpreter.PassthroughException;
+
+import static interpreter.Builtins.index;
+import static interpreter.Builtins.isPrimitive;
+import static interpreter.Builtins.type;
+
+/**
+ * Executables for literals and variable accesses.
+ */
+final class Variables
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Variables() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A literal, or a reference to a function or built-in. */
+    static final class Constant extends Executable {
+        private final Object value;
+
+        Constant (Object value) {
+            this.value = value;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return value;
+        }
+
+        @Override public long executeLong (Frame frame) {
+            if (value instanceof Long)
+                return (Long) value;
+            throw new UnexpectedResultException(value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Reads a variable declared in the current frame. */
+    static final class ReadLocal extends Executable {
+        private final int slot;
+
+        ReadLocal (int slot) {
+            this.slot = slot;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return frame.values[slot];
+        }
+
+        @Override public long executeLong (Frame frame) {
+            Object value = frame.values[slot];
+            if (value instanceof Long)
+                return (Long) value;
+            throw new UnexpectedResultException(value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Reads a variable declared in an enclosing frame. */
+    static final class Read extends Executable {
+        private final int hops;
+        private final int slot;
+
+        Read (int hops, int slot) {
+            this.hops = hops;
+            this.slot = slot;
+        }
+
+        @Override public Object execute (Frame frame) {
+            return frame.up(hops).values[slot];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Assigns a variable. */
+    static final class Assign extends Executable {
+        private final int hops;
+        private final int slot;
+        private final Executable value;
+
+        Assign (int hops, int slot, Executable value) {
+            this.hops = hops;
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object rvalue = value.execute(frame);
+            frame.up(hops).values[slot] = rvalue;
+            return rvalue;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Assigns an entry of an array or a map. */
+    static final class AssignIndexed extends Executable {
+        private final Executable indexable;
+        private final Executable index;
+        private final Executable value;
+        private final String description;
+
+        AssignIndexed (Executable indexable, Executable index, Executable value, String description) {
+            this.indexable = indexable;
+            this.index = index;
+            this.value = value;
+            this.description = description;
+        }
+
+        @Override public Object execute (Frame frame) {
+            Object target = indexable.execute(frame);
+            if (target == None.INSTANCE) {
+                throw new PassthroughException(new NullPointerException("Indexing null array " + description));
+            } else if (target instanceof PolymorphArray) {
+                PolymorphArray array = (PolymorphArray) target;
+                int i = index(index.execute(frame));
+                try {
+                    array.set(i, value.execute(frame));
+                    return null;
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new PassthroughException(e);
+                }
+            } else if (target instanceof PolymorphMap) {
+                PolymorphMap map = (PolymorphMap) target;
+                Object key = index.execute(frame);
+                if (isPrimitive(key)) {
+                    map.put(key, value.execute(frame));
+                } else {
+                    throw new PassthroughException(new RuntimeException("Can only use string, integers and booleans as keys of a map, not " + type(key)));
+                }
+                return null;
+            }
+            throw new Error("Should not get here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
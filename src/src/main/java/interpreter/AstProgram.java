@@ -0,0 +1,55 @@
+package interpreter;
+
+import ast.RootNode;
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+
+/**
+ * A program linked for the tree-walking {@link Interpreter}, which can be run any number of
+ * times, including concurrently from several threads.
+ *
+ * <p>The tree is only read once linked: everything an execution writes (frames, the value being
+ * returned, the state of pfor loops) belongs to the {@link Interpreter} that {@link #run} creates
+ * for it. Executions only share the values they are given, and none are shared by default, as
+ * even {@code args} is copied into a fresh array.
+ */
+public final class AstProgram
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final RootNode root;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private AstProgram (RootNode root) {
+        this.root = root;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Links the given tree, which must have been analysed without errors by {@code reactor}. The
+     * tree must not be linked again (e.g. by another engine) while the program runs.
+     */
+    public static AstProgram link (Reactor reactor, RootNode root) {
+        Linker.link(reactor, root);
+        return new AstProgram(root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the program with the given command line arguments, and returns the value of its last
+     * statement.
+     */
+    public Object run (String[] args)
+    {
+        try {
+            return new Interpreter(args).run(root);
+        } catch (PassthroughException e) {
+            throw Exceptions.runtime(e.getCause());
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
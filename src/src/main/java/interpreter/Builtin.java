@@ -0,0 +1,64 @@
+package interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The built-in functions, implemented in {@link Builtins}. Engines resolve a call to a built-in
+ * once if they can, otherwise they look it up by name at every call (see {@link #of}).
+ */
+public enum Builtin
+{
+    RANGE   ("range")   { public Object call (Object[] a) { return Builtins.range(a[0]); } },
+    INDEXER ("indexer") { public Object call (Object[] a) { return Builtins.indexer(a[0]); } },
+    SORT    ("sort")    { public Object call (Object[] a) { return Builtins.sort(a[0]); } },
+    SORT_IN_PLACE ("sort_in_place") { public Object call (Object[] a) { return Builtins.sortInPlace(a[0]); } },
+    APPEND  ("append")  { public Object call (Object[] a) { return Builtins.append(a[0], a[1]); } },
+    POP     ("pop")     { public Object call (Object[] a) { return Builtins.pop(a[0]); } },
+    SET     ("set")     { public Object call (Object[] a) { return Builtins.set(a[0]); } },
+    ADD     ("add")     { public Object call (Object[] a) { return Builtins.add(a[0], a[1]); } },
+    GET     ("get")     { public Object call (Object[] a) { return Builtins.get(a[0], a[1], a[2]); } },
+    SLICE   ("slice")   { public Object call (Object[] a) { return Builtins.slice(a[0], a[1], a[2]); } },
+    INT     ("int")     { public Object call (Object[] a) { return Builtins.parseInt(a[0]); } },
+    PRINT   ("print")   { public Object call (Object[] a) { return Builtins.print(a[0]); } },
+    PRINTLN ("println") { public Object call (Object[] a) { return Builtins.println(a[0]); } },
+    LEN     ("len")     { public Object call (Object[] a) { return Builtins.len(a[0]); } },
+    OPEN    ("open")    { public Object call (Object[] a) { return Builtins.open(a[0], a[1]); } },
+    CLOSE   ("close")   { public Object call (Object[] a) { return Builtins.close(a[0]); } },
+    READ    ("read")    { public Object call (Object[] a) { return Builtins.read(a[0]); } },
+    WRITE   ("write")   { public Object call (Object[] a) { return Builtins.write(a[0], a[1]); } };
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final Map<String, Builtin> BY_NAME = new HashMap<>();
+
+    static {
+        for (Builtin builtin : values())
+            BY_NAME.put(builtin.name, builtin);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Name of the built-in in NS. */
+    public final String name;
+
+    Builtin (String name) {
+        this.name = name;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public abstract Object call (Object[] args);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the built-in with the given name.
+     */
+    public static Builtin of (String name) {
+        Builtin builtin = BY_NAME.get(name);
+        if (builtin == null)
+            throw new Error("Unknown built-in function " + name);
+        return builtin;
+    }
+}
@@ -0,0 +1,271 @@
+package interpreter;
+
+import Types.File;
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import Types.PolymorphSet;
+import ast.FunctionDefinitionNode;
+
+import java.io.IOException;
+
+/**
+ * Runtime support shared by the execution engines: the implementation of the built-in functions
+ * declared in {@link scopes.RootScope} (which engines call through {@link Builtin}), and helpers
+ * to convert and describe runtime values.
+ */
+public final class Builtins {
+
+    private Builtins() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static boolean isPrimitive(Object o) {
+        return o instanceof String || o instanceof Long || o instanceof Boolean;
+    }
+
+    public static String convertToString(Object arg) {
+        if (arg instanceof FunctionDefinitionNode)
+            return ((FunctionDefinitionNode) arg).name.value;
+        else if (arg instanceof Boolean)
+            return (boolean) arg ? "True" : "False";
+        else
+            return arg.toString();
+    }
+
+    public static String recConvertToString(Object arg) {
+        if (arg instanceof String)
+            return "\"" + arg + "\"";
+        return convertToString(arg);
+    }
+
+    public static String type(Object arg) {
+        if (arg instanceof Long) return "int";
+        if (arg instanceof Boolean) return "bool";
+        if (arg instanceof String) return "string";
+        if (arg instanceof PolymorphArray) return "array";
+        if (arg instanceof PolymorphMap) return "map";
+        if (arg instanceof PolymorphSet) return "set";
+        if (arg instanceof File) return "file";
+        if (arg instanceof None) return "None";
+        return "unknown type";
+    }
+
+    /**
+     * Converts an integer value to an array index, rejecting indices that are out of the range
+     * supported by arrays.
+     */
+    public static int index(Object value) {
+        return index((long) (Long) value);
+    }
+
+    /**
+     * See {@link #index(Object)}.
+     */
+    public static int index(long index) {
+        if (index < 0)
+            throw new ArrayIndexOutOfBoundsException("Negative index: " + index);
+        if (index >= Integer.MAX_VALUE - 1)
+            throw new ArrayIndexOutOfBoundsException("Index exceeds max array index (2ˆ31 - 2): " + index);
+        return (int) index;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static PolymorphArray range(Object limit) {
+        try {
+            return PolymorphArray.range(Math.toIntExact((Long) limit));
+        } catch (ArithmeticException e) {
+            throw new PassthroughException(new RuntimeException("Argument of range function exceeds max array size: " + limit));
+        }
+    }
+
+    public static PolymorphArray indexer(Object indexable) {
+        if (indexable instanceof PolymorphArray) {
+            PolymorphArray array = (PolymorphArray) indexable;
+            return PolymorphArray.range(array.size());
+        } else if (indexable instanceof PolymorphMap) {
+            return PolymorphArray.keys((PolymorphMap) indexable);
+        } else if (indexable instanceof PolymorphSet) {
+            return PolymorphArray.elements((PolymorphSet) indexable);
+        } else {
+            throw new PassthroughException(new RuntimeException("Argument of indexer function must be an array, a map or a set, not " + type(indexable)));
+        }
+    }
+
+    public static PolymorphArray sort(Object array) {
+        if (array instanceof PolymorphArray) {
+            PolymorphArray original = (PolymorphArray) array;
+            PolymorphArray copy = original.clone();
+            try {
+                copy.sort();
+                return copy;
+            } catch (ClassCastException e) {
+                throw new PassthroughException(e);
+            }
+        } else {
+            throw new PassthroughException(new RuntimeException("Argument of sort function must be an array, not " + type(array)));
+        }
+    }
+
+    /**
+     * Sorts the array itself rather than a copy, and returns it.
+     */
+    public static PolymorphArray sortInPlace(Object array) {
+        if (array instanceof PolymorphArray) {
+            PolymorphArray original = (PolymorphArray) array;
+            try {
+                original.sort();
+                return original;
+            } catch (ClassCastException e) {
+                throw new PassthroughException(e);
+            }
+        } else {
+            throw new PassthroughException(new RuntimeException("Argument of sort_in_place function must be an array, not " + type(array)));
+        }
+    }
+
+    public static None append(Object array, Object value) {
+        if (array instanceof PolymorphArray) {
+            ((PolymorphArray) array).append(value);
+            return None.INSTANCE;
+        } else {
+            throw new PassthroughException(new RuntimeException("First argument of append function must be an array, not " + type(array)));
+        }
+    }
+
+    public static Object pop(Object array) {
+        if (array instanceof PolymorphArray) {
+            return ((PolymorphArray) array).pop();
+        } else {
+            throw new PassthroughException(new RuntimeException("Argument of pop function must be an array, not " + type(array)));
+        }
+    }
+
+    /**
+     * Returns a view of the elements of {@code array} from index {@code from} (included) to
+     * {@code to} (excluded). The view and the array do not see each other's writes.
+     */
+    public static PolymorphArray slice(Object array, Object from, Object to) {
+        if (!(array instanceof PolymorphArray))
+            throw new PassthroughException(new RuntimeException("First argument of slice function must be an array, not " + type(array)));
+        if (!(from instanceof Long) || !(to instanceof Long))
+            throw new PassthroughException(new RuntimeException("Bounds of slice function must be integers, not " + type(from) + " and " + type(to)));
+        return ((PolymorphArray) array).slice(index(from), index(to));
+    }
+
+    /**
+     * Returns the set of the elements of an array.
+     */
+    public static PolymorphSet set(Object array) {
+        if (!(array instanceof PolymorphArray))
+            throw new PassthroughException(new RuntimeException("Argument of set function must be an array, not " + type(array)));
+        PolymorphSet set = new PolymorphSet();
+        for (Object element : (PolymorphArray) array)
+            set.add(setElement(element));
+        return set;
+    }
+
+    public static None add(Object set, Object element) {
+        if (set instanceof PolymorphSet) {
+            ((PolymorphSet) set).add(setElement(element));
+            return None.INSTANCE;
+        } else {
+            throw new PassthroughException(new RuntimeException("First argument of add function must be a set, not " + type(set)));
+        }
+    }
+
+    /**
+     * Checks that a value can be an element of a set.
+     */
+    public static Object setElement(Object element) {
+        if (!isPrimitive(element))
+            throw new PassthroughException(new RuntimeException("Cannot use " + type(element) + " as element of a set"));
+        return element;
+    }
+
+    /**
+     * Returns the value of {@code key} in {@code map}, or {@code defaultValue} if there is none.
+     */
+    public static Object get(Object map, Object key, Object defaultValue) {
+        if (map instanceof PolymorphMap)
+            return ((PolymorphMap) map).getOrDefault(key, defaultValue);
+        throw new PassthroughException(new RuntimeException("First argument of get function must be a map, not " + type(map)));
+    }
+
+    /**
+     * Implements {@code element in collection}, for the elements of a set or the keys of a map.
+     */
+    public static Boolean contains(Object collection, Object element) {
+        if (collection instanceof PolymorphSet)
+            return ((PolymorphSet) collection).contains(element);
+        if (collection instanceof PolymorphMap)
+            return ((PolymorphMap) collection).contains(element);
+        throw new PassthroughException(new RuntimeException("Cannot test membership in " + type(collection)));
+    }
+
+    public static Long parseInt(Object s) {
+        if (s instanceof String) {
+            return Long.parseLong((String) s);
+        } else {
+            throw new PassthroughException(new RuntimeException("Argument of int function must be a string, not " + type(s)));
+        }
+    }
+
+    public static None print(Object obj) {
+        System.out.print(convertToString(obj));
+        return None.INSTANCE;
+    }
+
+    public static None println(Object obj) {
+        System.out.println(convertToString(obj));
+        return None.INSTANCE;
+    }
+
+    public static Long len(Object sized) {
+        if (sized instanceof PolymorphArray) {
+            return (long) ((PolymorphArray) sized).size();
+        } else if (sized instanceof PolymorphMap) {
+            return (long) ((PolymorphMap) sized).size();
+        } else if (sized instanceof PolymorphSet) {
+            return (long) ((PolymorphSet) sized).size();
+        } else {
+            throw new PassthroughException(new RuntimeException("Argument of len function must be an array, a map or a set, not " + type(sized)));
+        }
+    }
+
+    public static File open(Object filename, Object mode) {
+        try {
+            return new File((String) filename, (String) mode);
+        } catch (IOException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    public static None close(Object file) {
+        try {
+            ((File) file).close();
+        } catch (IOException e) {
+            throw new PassthroughException(e);
+        }
+        return None.INSTANCE;
+    }
+
+    public static Object read(Object file) {
+        try {
+            return ((File) file).read();
+        } catch (IOException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    public static None write(Object file, Object s) {
+        try {
+            ((File) file).write(s);
+        } catch (IOException e) {
+            throw new PassthroughException(e);
+        }
+        return None.INSTANCE;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
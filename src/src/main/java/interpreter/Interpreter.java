@@ -1,43 +1,55 @@
 package interpreter;
 
-import Types.File;
 import Types.PolymorphArray;
 import Types.PolymorphMap;
+import Types.PolymorphSet;
+import Types.Type;
 import ast.*;
-import norswap.uranium.Reactor;
-import norswap.utils.exceptions.Exceptions;
-import norswap.utils.exceptions.NoStackException;
+import jvm.NSRuntime;
 import norswap.utils.visitors.ValuedVisitor;
-import scopes.DeclarationKind;
 import scopes.RootScope;
 import scopes.Scope;
 import scopes.SyntheticDeclarationNode;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.LongStream;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static interpreter.Builtins.contains;
+import static interpreter.Builtins.index;
+import static interpreter.Builtins.isPrimitive;
+import static interpreter.Builtins.setElement;
+import static interpreter.Builtins.type;
 import static norswap.utils.Util.cast;
 import static norswap.utils.Vanilla.coIterate;
 import static norswap.utils.Vanilla.map;
 
-
+/**
+ * The state of one execution of an {@link AstProgram}: an interpreter runs a single program, once,
+ * on a single thread (pfor loops and pure list comprehensions run their parts on interpreters of
+ * their own).
+ */
 public final class Interpreter {
     // ---------------------------------------------------------------------------------------------
 
     private final ValuedVisitor<ASTNode, Object> visitor = new ValuedVisitor<>();
-    private final Reactor reactor;
     private ScopeStorage storage = null;
-    private RootScope rootScope;
-    private ScopeStorage rootStorage;
 
-    private String[] args;
+    /** The pfor loop whose iterations this interpreter runs, concurrently with other ones. */
+    private ForNode pfor = null;
+
+    /** The contributions of these iterations to the variables reduced by {@link #pfor}. */
+    private IdentityHashMap<DeclarationNode, Reduction> reductions;
+
+    private final String[] args;
 
     // ---------------------------------------------------------------------------------------------
 
-    public Interpreter(Reactor reactor, String[] args) {
-        this.reactor = reactor;
+    Interpreter(String[] args) {
         this.args = args;
 
         // SCOPES
@@ -57,6 +69,7 @@ public final class Interpreter {
         // COLLECTIONS
         visitor.register(MapNode.class, this::map_);
         visitor.register(ArrayNode.class, this::array);
+        visitor.register(SetNode.class, this::set);
         visitor.register(ListComprehensionNode.class, this::listComprehension);
 
         // OPERATIONS
@@ -74,64 +87,47 @@ public final class Interpreter {
         visitor.registerFallback(node -> null);
     }
 
-    public Object interpret(ASTNode root) {
-        try {
-            return run(root);
-        } catch (PassthroughException e) {
-            throw Exceptions.runtime(e.getCause());
-        }
-    }
-
     public Object run(ASTNode node) {
         try {
             return visitor.apply(node);
-        } catch (InterpreterException | PassthroughException | Return e) {
+        } catch (InterpreterException | PassthroughException e) {
             throw e;
         } catch (RuntimeException e) {
             throw new InterpreterException("exception while executing " + node, e);
         }
     }
 
-    private static class Return extends NoStackException {
-        final Object value;
+    /**
+     * Value of statements completed by a return statement. Blocks and loops stop executing and
+     * pass it up to {@link #functionCall}, which finds the returned value in {@link #returned}.
+     */
+    private static final Object RETURN = new Object();
 
-        private Return(Object value) {
-            this.value = value;
-        }
+    /** Value of the last executed return statement. */
+    private Object returned;
+
+    /** Statements evaluate to null, unless they complete with a return. */
+    private static Object completion(Object result) {
+        return result == RETURN ? RETURN : null;
     }
 
     private <T> T get(ASTNode node) {
         return cast(run(node));
     }
 
-    private boolean isPrimitive(Object o) {
-        return o instanceof String || o instanceof Long || o instanceof Boolean;
-    }
-
-    public static String convertToString(Object arg) {
-        if (arg instanceof FunctionDefinitionNode)
-            return ((FunctionDefinitionNode) arg).name.value;
-        else if (arg instanceof Boolean)
-            return (boolean) arg ? "True" : "False";
-        else
-            return arg.toString();
-    }
-
-    public static String recConvertToString(Object arg) {
-        if (arg instanceof String)
-            return "\"" + arg + "\"";
-        return convertToString(arg);
-    }
-
-    private String type(Object arg) {
-        if (arg instanceof Long) return "int";
-        if (arg instanceof Boolean) return "bool";
-        if (arg instanceof String) return "string";
-        if (arg instanceof PolymorphArray) return "array";
-        if (arg instanceof PolymorphMap) return "map";
-        if (arg instanceof File) return "file";
-        if (arg instanceof None) return "None";
-        return "unknown type";
+    /**
+     * Evaluates an expression of type {@link Type#INTEGER}. Arithmetic on operands known to be
+     * integers is evaluated without boxing intermediate results.
+     */
+    private long getLong(ASTNode node) {
+        if (node instanceof IntegerNode)
+            return ((IntegerNode) node).value;
+        if (node instanceof BinaryNode && isLongArithmetic((BinaryNode) node))
+            return arithmeticLong((BinaryNode) node);
+        if (node instanceof UnaryNode && ((UnaryNode) node).code == UnaryNode.NEGATION
+                && ((UnaryNode) node).child.type == Type.INTEGER)
+            return - getLong(((UnaryNode) node).child);
+        return (Long) run(node);
     }
 
 
@@ -139,8 +135,8 @@ public final class Interpreter {
     private Object root(RootNode n) {
         assert storage == null;
 
-        rootScope = reactor.get(n, "scope");
-        storage = rootStorage = new ScopeStorage(rootScope, null);
+        RootScope rootScope = (RootScope) n.scope;
+        storage = new ScopeStorage(rootScope, null);
         storage.initRoot(rootScope, args);
 
         Object res = get(n.block);
@@ -149,11 +145,12 @@ public final class Interpreter {
     }
 
     private Object block(BlockNode n) {
-        Scope scope = reactor.get(n, "scope");
-        storage = new ScopeStorage(scope, storage);
+        storage = new ScopeStorage(n.scope, storage);
         Object res = null;
         for (ASTNode statement : n.statements) {
             res = get(statement);
+            if (res == RETURN)
+                break;
         }
         storage = storage.parent;
         return res;
@@ -180,39 +177,33 @@ public final class Interpreter {
 
     // VARIABLES
     private Object identifier(IdentifierNode n) {
-        Scope scope = reactor.get(n, "scope");
-        DeclarationNode decl = reactor.get(n, "decl");
+        if (n.slot >= 0)
+            return storage.get(n.context.scope, n.slot);
 
-        if (decl instanceof VarAssignmentNode
-                || decl instanceof ParameterNode
-                || decl instanceof ForNode
-                || decl instanceof ListComprehensionNode
-                || decl instanceof SyntheticDeclarationNode
-                && ((SyntheticDeclarationNode) decl).kind() == DeclarationKind.VARIABLE)
-            return scope == rootScope
-                    ? rootStorage.get(scope, n.value)
-                    : storage.get(scope, n.value);
-
-        return decl;
+        return n.context.declaration;
     }
 
     private Object varAssignment(VarAssignmentNode n) {
+        if (n.left instanceof IdentifierNode && pfor != null && n.pforScope == pfor.scope)
+            return reduce(n);
+
         if (n.left instanceof IdentifierNode) {
-            Scope scope = reactor.get(n.left, "scope");
-            String name = ((IdentifierNode) n.left).value;
+            IdentifierNode left = (IdentifierNode) n.left;
             Object rvalue = get(n.right);
-            storage.set(scope, name, rvalue);
+            storage.set(left.context.scope, left.slot, rvalue);
             return rvalue;
         }
 
         if (n.left instanceof BinaryNode && ((BinaryNode) n.left).code == BinaryNode.IDX_ACCESS) {
             BinaryNode arrayAccess = (BinaryNode) n.left;
             Object indexable = get(arrayAccess.left);
+            if (pfor != null && (n.pforScope == pfor.scope || n.shared) && !(indexable instanceof PolymorphMap))
+                throw new PassthroughException(new RuntimeException("Only maps can be assigned into when the iterations of a pfor loop may share them, not " + type(indexable)));
             if (indexable == None.INSTANCE) {
                 throw new PassthroughException(new NullPointerException("Indexing null array " + n.left));
             } else if (indexable instanceof PolymorphArray) {
                 PolymorphArray array = (PolymorphArray) indexable;
-                int index = getIndex(arrayAccess.right);
+                int index = index(get(arrayAccess.right));
                 try {
                     array.set(index, get(n.right));
                     return null;
@@ -223,7 +214,11 @@ public final class Interpreter {
                 PolymorphMap map = (PolymorphMap) indexable;
                 Object indexer = get(arrayAccess.right);
                 if (isPrimitive(indexer)) {
-                    map.put(indexer, get(n.right));
+                    Object value = get(n.right);
+                    if (pfor == null)
+                        map.put(indexer, value);
+                    else
+                        locked(map, () -> { map.put(indexer, value); return null; });
                 } else {
                     throw new PassthroughException(new RuntimeException("Can only use string, integers and booleans as keys of a map, not " + type(indexer)));
                 }
@@ -234,25 +229,17 @@ public final class Interpreter {
         throw new Error("Should not get here");
     }
 
-    private int getIndex(ASTNode node) {
-        long index = get(node);
-        if (index < 0)
-            throw new ArrayIndexOutOfBoundsException("Negative index: " + index);
-        if (index >= Integer.MAX_VALUE - 1)
-            throw new ArrayIndexOutOfBoundsException("Index exceeds max array index (2ˆ31 - 2): " + index);
-        return (int) index;
-    }
-
 
     // COLLECTIONS
     private Object map_(MapNode n) {
         PolymorphMap dictionary = new PolymorphMap();
         if (n.elements != null) {
             for (BinaryNode pair : n.elements) {
-                if (isPrimitive(get(pair.left))) {
-                    dictionary.put(get(pair.left), get(pair.right));
+                Object key = get(pair.left);
+                if (isPrimitive(key)) {
+                    dictionary.put(key, get(pair.right));
                 } else {
-                    throw new PassthroughException(new RuntimeException("Cannot use " + type(get(pair.left)) + " as key in map"));
+                    throw new PassthroughException(new RuntimeException("Cannot use " + type(key) + " as key in map"));
                 }
             }
         }
@@ -263,26 +250,53 @@ public final class Interpreter {
         if (n.elements != null) {
             return new PolymorphArray(map(n.elements, new Object[0], visitor));
         } else if (n.size != null) {
-            int arg = getIndex(n.size);
-            return new PolymorphArray(LongStream.range(0, arg).mapToObj((x) -> None.INSTANCE).toArray());
+            return PolymorphArray.nones(index(get(n.size)));
         }
 
         throw new Error("Should not get here");
     }
 
+    private Object set(SetNode n) {
+        PolymorphSet set = new PolymorphSet();
+        for (ASTNode element : n.elements)
+            set.add(setElement(get(element)));
+        return set;
+    }
+
+    /**
+     * Pure list comprehensions (see {@link ListComprehensionNode#pure}) over at least this many
+     * elements are evaluated in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 1024;
+
     private Object listComprehension(ListComprehensionNode n) {
         Object list = get(n.iterable);
         if (!(list instanceof PolymorphArray))
             throw new PassthroughException(new RuntimeException("List comprehension must iterate over an array, not "+type(list)));
+        PolymorphArray array = (PolymorphArray) list;
         List<Object> result = new ArrayList<>();
 
+        if (n.pure && array.size() >= PARALLEL_THRESHOLD) {
+            Comprehension task = new Comprehension(this, storage, n, array, 0, array.size(), Split.grain(array.size()));
+            task.invoke();
+            task.leaves(leaf -> result.addAll(leaf.values));
+        } else {
+            comprehend(n, array, 0, array.size(), result);
+        }
+        return new PolymorphArray(result.toArray());
+    }
+
+    /**
+     * Appends the elements of the list comprehension for the elements {@code from} (included) to
+     * {@code to} (excluded) of {@code array} to {@code result}.
+     */
+    private void comprehend(ListComprehensionNode n, PolymorphArray array, int from, int to, List<Object> result) {
         ScopeStorage oldStorage = storage;
-        Scope scope = reactor.get(n, "scope");
-        storage = new ScopeStorage(scope, storage);
+        storage = new ScopeStorage(n.scope, storage);
 
-        PolymorphArray array = (PolymorphArray) list;
-        for (Object elem : array) {
-            storage.set(scope, n.variable.value, elem);
+        for (int i = from; i < to; ++i) {
+            Object elem = array.get(i);
+            storage.set(n.scope, n.variable.slot, elem);
             if (n.condition != null) {
                 Object condition = get(n.condition);
                 if (!(condition instanceof Boolean))
@@ -297,8 +311,105 @@ public final class Interpreter {
         }
 
         storage = oldStorage;
-        return new PolymorphArray(result.toArray());
+    }
+
+    /**
+     * Work on the elements {@code from} (included) to {@code to} (excluded) of an array, split in
+     * halves done in parallel, down to {@code grain} elements.
+     *
+     * <p>Each part is done by its own interpreter, whose storage is chained to the storage the
+     * work was started from. Semantic analysis makes sure that nothing but maps, which are
+     * accessed under their lock (see {@link #locked}), is written in that storage nor in the
+     * values reachable from it in the meantime.
+     *
+     * <p>Errors are recorded rather than thrown, so that {@link #leaves} reports the error of the
+     * first element that fails, as a sequential evaluation would.
+     */
+    private abstract static class Split<T extends Split<T>> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Interpreter parent;
+        final ScopeStorage storage;
+        final PolymorphArray array;
+        final int from, to, grain;
+
+        private T left, right;
+        private RuntimeException error;
+
+        Split(Interpreter parent, ScopeStorage storage, PolymorphArray array, int from, int to, int grain) {
+            this.parent = parent;
+            this.storage = storage;
+            this.array = array;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        /** Returns the part of this work from {@code from} to {@code to}. */
+        abstract T split(int from, int to);
+
+        /** Does the work on elements {@link #from} to {@link #to}, with the given interpreter. */
+        abstract void run(Interpreter worker);
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                Interpreter worker = new Interpreter(parent.args);
+                worker.storage = storage;
+                try {
+                    run(worker);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            left = split(from, middle);
+            right = split(middle, to);
+            left.fork();
+            right.compute();
+            left.join();
+        }
+
+        /** Passes the parts that were not split to {@code action}, in order. */
+        @SuppressWarnings("unchecked")
+        void leaves(Consumer<T> action) {
+            if (left != null) {
+                left.leaves(action);
+                right.leaves(action);
+            } else if (error != null) {
+                throw error;
+            } else {
+                action.accept((T) this);
+            }
+        }
+
+        /** Returns a grain that splits the work on {@code size} elements between the workers. */
+        static int grain(int size) {
+            return Math.max(1, size / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        }
+    }
+
+    /** Evaluation of a pure list comprehension. */
+    private static final class Comprehension extends Split<Comprehension> {
+        private static final long serialVersionUID = 1L;
+
+        private final ListComprehensionNode node;
+        private final List<Object> values = new ArrayList<>();
+
+        Comprehension(Interpreter parent, ScopeStorage storage, ListComprehensionNode node,
+                      PolymorphArray array, int from, int to, int grain) {
+            super(parent, storage, array, from, to, grain);
+            this.node = node;
+        }
 
+        @Override Comprehension split(int from, int to) {
+            return new Comprehension(parent, storage, node, array, from, to, grain);
+        }
+
+        @Override void run(Interpreter worker) {
+            worker.comprehend(node, array, from, to, values);
+        }
     }
 
 
@@ -308,6 +419,8 @@ public final class Interpreter {
         switch (n.code) {
 
             case UnaryNode.NEGATION:
+                if (n.child.type == Type.INTEGER)
+                    return - getLong(n.child);
                 arg = get(n.child);
                 if (arg instanceof Long) {
                     return - (long) arg;
@@ -322,7 +435,10 @@ public final class Interpreter {
                     throw new PassthroughException(new RuntimeException("Cannot apply not operator on a non-boolean value " + type(arg)));
                 }
             case UnaryNode.RETURN:
-                throw new Return(n.child == null ? None.INSTANCE : get(n.child));
+                returned = n.child == null ? None.INSTANCE
+                    : TailCall.isTailCall(n.child) ? tailCall((FunctionCallNode) n.child)
+                    : get(n.child);
+                return RETURN;
             default:
                 return null;
         }
@@ -342,11 +458,44 @@ public final class Interpreter {
             return pair(n);
         } else if (n.isIdxAccess()) {
             return idxAccess(n);
+        } else if (n.isMembership()) {
+            Object element = get(n.left);
+            Object collection = get(n.right);
+            return pfor == null
+                ? contains(collection, element)
+                : locked(collection, () -> contains(collection, element));
         }
         throw new Error("Should not get here");
     }
 
+    private static boolean isLongArithmetic(BinaryNode n) {
+        return n.isArithmeticOperation() && n.left.type == Type.INTEGER && n.right.type == Type.INTEGER;
+    }
+
+    private long arithmeticLong(BinaryNode n) {
+        long left = getLong(n.left);
+        long right = getLong(n.right);
+
+        switch (n.code) {
+            case BinaryNode.ADD:
+                return left + right;
+            case BinaryNode.SUB:
+                return left - right;
+            case BinaryNode.MUL:
+                return left * right;
+            case BinaryNode.DIV:
+                return left / right;
+            case BinaryNode.MOD:
+                return left % right;
+        }
+
+        throw new Error("Should not get here");
+    }
+
     private Object arithmeticOperation(BinaryNode n) {
+        if (isLongArithmetic(n))
+            return arithmeticLong(n);
+
         Object leftObject = get(n.left);
         Object rightObject = get(n.right);
 
@@ -399,6 +548,9 @@ public final class Interpreter {
     }
 
     private Object equalityComparison(BinaryNode n) {
+        if (n.left.type == Type.INTEGER && n.right.type == Type.INTEGER)
+            return (getLong(n.left) == getLong(n.right)) == (n.code == BinaryNode.EQ);
+
         switch (n.code) {
             case BinaryNode.EQ:
                 return get(n.left).equals(get(n.right));
@@ -410,6 +562,9 @@ public final class Interpreter {
     }
 
     private Object inequalityComparison(BinaryNode n) {
+        if (n.left.type == Type.INTEGER && n.right.type == Type.INTEGER)
+            return comparison(n, Long.compare(getLong(n.left), getLong(n.right)));
+
         Object leftObject = get(n.left);
         Object rightObject = get(n.right);
 
@@ -433,6 +588,10 @@ public final class Interpreter {
                     + type(rightObject) + "."));
         }
 
+        return comparison(n, comparison);
+    }
+
+    private static Boolean comparison(BinaryNode n, int comparison) {
         switch (n.code) {
             case BinaryNode.LEQ:
                 return comparison <= 0;
@@ -457,7 +616,7 @@ public final class Interpreter {
 
         if (leftObject instanceof PolymorphArray && rightObject instanceof Long) {
             PolymorphArray list = (PolymorphArray) leftObject;
-            int idx = getIndex(n.right);
+            int idx = index(rightObject);
 
             try {
                 return list.get(idx);
@@ -467,7 +626,7 @@ public final class Interpreter {
         } else if (leftObject instanceof PolymorphMap && isPrimitive(rightObject)) {
             PolymorphMap map = (PolymorphMap) leftObject;
             try {
-                return map.get(rightObject);
+                return pfor == null ? map.get(rightObject) : locked(map, () -> map.get(rightObject));
             } catch (RuntimeException e) {
                 throw new PassthroughException(e);
             }
@@ -491,25 +650,21 @@ public final class Interpreter {
         if (!(arg instanceof Boolean))
             throw new PassthroughException(new RuntimeException("If statement needs boolean condition, not " + type(arg)));
 
-        if (get(n.bool))
-            get(n.block);
+        if ((boolean) arg)
+            return completion(get(n.block));
 
         else if (n.else_blocks != null) {
             for (ElseNode elseNode : n.else_blocks) {
-                if (elseNode.bool == null) {
-                    get(elseNode.block);
-                    break;
-                }
+                if (elseNode.bool == null)
+                    return completion(get(elseNode.block));
 
-                arg = get(n.bool);
+                arg = get(elseNode.bool);
 
                 if (!(arg instanceof Boolean))
                     throw new PassthroughException(new RuntimeException("Elsif statement needs boolean condition, not " + type(arg)));
 
-                if (get(elseNode.bool)) {
-                    get(elseNode.block);
-                    break;
-                }
+                if ((boolean) arg)
+                    return completion(get(elseNode.block));
             }
         }
         return null;
@@ -520,41 +675,152 @@ public final class Interpreter {
     }
 
     private Object for_(ForNode n) {
+        if (n.parallel && pfor == null)
+            return pfor(n);
+
         ScopeStorage oldStorage = storage;
-        Scope scope = reactor.get(n, "scope");
-        storage = new ScopeStorage(scope, storage);
+        storage = new ScopeStorage(n.scope, storage);
 
         Object arg = get(n.list);
         if (!(arg instanceof PolymorphArray))
             throw new PassthroughException(new RuntimeException("Cannot iterate over " + type(arg)));
 
         PolymorphArray array = (PolymorphArray) arg;
-        for (Object elem : array) {
-            storage.set(scope, n.variable.value, elem);
-            get(n.block);
+        Object result = null;
+        for (int i = 0; i < array.size(); ++i) {
+            Object elem = array.get(i);
+            storage.set(n.scope, n.variable.slot, elem);
+            if (get(n.block) == RETURN) {
+                result = RETURN;
+                break;
+            }
         }
 
         storage = oldStorage;
+        return result;
+    }
+
+    /**
+     * Runs the iterations of a pfor loop in parallel. Nested pfor loops, including those of the
+     * functions called by the loop, run sequentially.
+     */
+    private Object pfor(ForNode n) {
+        Object arg = get(n.list);
+        if (!(arg instanceof PolymorphArray))
+            throw new PassthroughException(new RuntimeException("Cannot iterate over " + type(arg)));
+        PolymorphArray array = (PolymorphArray) arg;
+
+        Loop task = new Loop(this, storage, n, array, 0, array.size(), Split.grain(array.size()));
+        task.invoke();
+        task.leaves(leaf -> {
+            for (Reduction r : leaf.reductions.values()) {
+                Scope scope = r.target.context.scope;
+                storage.set(scope, r.target.slot, Reduction.combine(r.code, storage.get(scope, r.target.slot), r.value));
+            }
+        });
         return null;
     }
 
-    private Object while_(WhileNode n) {
+    /** Runs iterations {@code from} (included) to {@code to} (excluded) of a pfor loop. */
+    private void iterate(ForNode n, PolymorphArray array, int from, int to) {
         ScopeStorage oldStorage = storage;
-        Scope scope = reactor.get(n, "scope");
-        storage = new ScopeStorage(scope, storage);
+        storage = new ScopeStorage(n.scope, storage);
+        for (int i = from; i < to; ++i) {
+            storage.set(n.scope, n.variable.slot, array.get(i));
+            get(n.block);
+        }
+        storage = oldStorage;
+    }
+
+    /**
+     * Runs a reduction ({@code x = x + e}) in a pfor loop, by combining {@code e} with the
+     * contribution of the previous iterations of this worker.
+     */
+    private Object reduce(VarAssignmentNode n) {
+        BinaryNode operation = (BinaryNode) n.right;
+        Object value = get(operation.right);
+        IdentifierNode target = (IdentifierNode) n.left;
+        Reduction reduction = reductions.get(target.context.declaration);
+        if (reduction == null)
+            reductions.put(target.context.declaration, new Reduction(target, operation.code, value));
+        else
+            reduction.value = Reduction.combine(operation.code, reduction.value, value);
+        return value;
+    }
+
+    /**
+     * Returns {@code action.get()}, holding the lock of {@code value} if it is a map, which other
+     * pfor workers may access concurrently. Only used by pfor workers.
+     */
+    private static <T> T locked(Object value, Supplier<T> action) {
+        if (!(value instanceof PolymorphMap))
+            return action.get();
+        synchronized (value) {
+            return action.get();
+        }
+    }
+
+    /** The contribution of the iterations run by a pfor worker to a variable reduced by the loop. */
+    private static final class Reduction {
+        final IdentifierNode target;
+        final int code;
+        Object value;
+
+        Reduction(IdentifierNode target, int code, Object value) {
+            this.target = target;
+            this.code = code;
+            this.value = value;
+        }
+
+        /** Returns {@code left op right}, where {@code op} is the operator with the given code. */
+        static Object combine(int code, Object left, Object right) {
+            switch (code) {
+                case BinaryNode.ADD: return NSRuntime.add(left, right);
+                case BinaryNode.MUL: return NSRuntime.mul(left, right);
+                case BinaryNode.AND: return NSRuntime.and(left, right);
+                case BinaryNode.OR:  return NSRuntime.or(left, right);
+                default: throw new Error("Should not get here");
+            }
+        }
+    }
+
+    /** Iterations of a pfor loop. */
+    private static final class Loop extends Split<Loop> {
+        private static final long serialVersionUID = 1L;
+
+        private final ForNode node;
+        private final IdentityHashMap<DeclarationNode, Reduction> reductions = new IdentityHashMap<>();
+
+        Loop(Interpreter parent, ScopeStorage storage, ForNode node, PolymorphArray array,
+             int from, int to, int grain) {
+            super(parent, storage, array, from, to, grain);
+            this.node = node;
+        }
+
+        @Override Loop split(int from, int to) {
+            return new Loop(parent, storage, node, array, from, to, grain);
+        }
 
+        @Override void run(Interpreter worker) {
+            worker.pfor = node;
+            worker.reductions = reductions;
+            worker.iterate(node, array, from, to);
+        }
+    }
+
+    private Object while_(WhileNode n) {
         Object arg = get(n.bool);
         if (!(arg instanceof Boolean))
             throw new PassthroughException(new RuntimeException("While loop needs boolean condition, not " + type(arg)));
 
         while ((boolean) arg) {
-            get(n.block);
+            if (get(n.block) == RETURN)
+                return RETURN;
             arg = get(n.bool);
             if (!(arg instanceof Boolean))
                 throw new PassthroughException(new RuntimeException("While loop needs boolean condition, not " + type(arg)));
         }
 
-        storage = oldStorage;
         return null;
     }
 
@@ -563,8 +829,7 @@ public final class Interpreter {
     private Object functionCall(FunctionCallNode n) {
         Object decl = get(n.functionName);
 
-        n.args.forEach(this::run);
-        Object[] args = map(n.args, new Object[0], visitor);
+        Object[] args = n.args == null ? new Object[0] : map(n.args, new Object[0], visitor);
 
         if (decl == None.INSTANCE)
             throw new PassthroughException(new NullPointerException("calling a null function"));
@@ -572,116 +837,58 @@ public final class Interpreter {
 
         //
         if (decl instanceof SyntheticDeclarationNode) {
-            SyntheticDeclarationNode declNode = (SyntheticDeclarationNode) decl;
-            return builtin(declNode.name(), args);
+            Builtin builtin = Builtin.of(((SyntheticDeclarationNode) decl).name());
+            if (pfor != null && n.shared && !(args[0] instanceof PolymorphMap))
+                throw new PassthroughException(new RuntimeException("Only maps can be modified when the iterations of a pfor loop may share them, not " + type(args[0])));
+            return pfor == null || args.length == 0
+                ? builtin.call(args)
+                : locked(args[0], () -> builtin.call(args));
         }
 
-        ScopeStorage oldStorage = storage;
-        Scope scope = reactor.get(decl, "scope");
-        storage = new ScopeStorage(scope, storage);
-
         FunctionDefinitionNode funDecl = (FunctionDefinitionNode) decl;
-
-        coIterate(args, funDecl.args,
-                (arg, param) -> storage.set(scope, param.param.value, arg));
-
+        // the function's frame is linked to the frame of its lexically enclosing scope
+        return invoke(funDecl, args, storage.frame(funDecl.scope.parent));
+    }
+
+    /**
+     * Evaluates the arguments of a call in tail position ({@code return f(...)}), but leaves the
+     * call itself to the {@link #invoke} running the current function, so that tail calls do not
+     * grow the Java stack.
+     */
+    private TailCall tailCall(FunctionCallNode n) {
+        Object[] args = n.args == null ? new Object[0] : map(n.args, new Object[0], visitor);
+        FunctionDefinitionNode funDecl = (FunctionDefinitionNode) n.functionName.context.declaration;
+        return new TailCall(funDecl, args, storage.frame(funDecl.scope.parent));
+    }
+
+    /**
+     * Invokes {@code function} in a frame linked to {@code parent}, then runs the tail calls it
+     * makes (see {@link #tailCall}) in a loop.
+     */
+    private Object invoke(FunctionDefinitionNode function, Object[] args, ScopeStorage parent) {
+        ScopeStorage oldStorage = storage;
         try {
-            get(funDecl.block);
-        } catch (Return r) {
-            return r.value;
+            while (true) {
+                Scope scope = function.scope;
+                storage = new ScopeStorage(scope, parent);
+                coIterate(args, function.args,
+                        (arg, param) -> storage.set(scope, param.param.slot, arg));
+
+                if (get(function.block) != RETURN)
+                    return None.INSTANCE;
+
+                Object value = returned;
+                returned = null;
+                if (!(value instanceof TailCall))
+                    return value;
+
+                TailCall call = (TailCall) value;
+                function = call.function;
+                args = call.args;
+                parent = call.parent;
+            }
         } finally {
             storage = oldStorage;
         }
-        return None.INSTANCE;
-    }
-
-    private Object builtin (String name, Object[] args) {
-        switch (name) {
-            case "range":
-                return new PolymorphArray(LongStream.range(0, ((Long) args[0]).intValue()).boxed().toArray());
-
-            case "indexer":
-                if (args[0] instanceof PolymorphArray) {
-                    PolymorphArray array = (PolymorphArray) args[0];
-                    return new PolymorphArray(LongStream.range(0, array.size()).boxed().toArray());
-                } else if (args[0] instanceof PolymorphMap) {
-                    PolymorphMap map = (PolymorphMap) args[0];
-                    return new PolymorphArray(map.keys());
-                } else {
-                    throw new PassthroughException(new RuntimeException("Argument of range function must be a map or an array, not " + type(args[0])));
-                }
-            case "sort":
-                if (args[0] instanceof PolymorphArray) {
-                    PolymorphArray original = (PolymorphArray) args[0];
-                    PolymorphArray copy = original.clone();
-                    try {
-                        copy.sort();
-                        return copy;
-                    } catch (ClassCastException e) {
-                        throw new PassthroughException(e);
-                    }
-                } else {
-                    throw new PassthroughException(new RuntimeException("Argument of sort function must be an array, not " + type(args[0])));
-                }
-            case "int":
-                if (args[0] instanceof String) {
-                    String s = (String) args[0];
-                    return Long.parseLong(s);
-                } else {
-                    throw new PassthroughException(new RuntimeException("Argument of int function must be a string, not " + type(args[0])));
-                }
-            case "print":
-                String out = convertToString(args[0]);
-                System.out.print(out);
-                return None.INSTANCE;
-            case "println":
-                String outln = convertToString(args[0]);
-                System.out.println(outln);
-                return None.INSTANCE;
-            case "len":
-                if (args[0] instanceof PolymorphArray) {
-                    PolymorphArray array = (PolymorphArray) args[0];
-                    return ((Integer) array.size()).longValue();
-                } else if (args[0] instanceof PolymorphMap) {
-                    PolymorphMap map = (PolymorphMap) args[0];
-                    return ((Integer) map.size()).longValue();
-                } else {
-                    throw new PassthroughException(new RuntimeException("Argument of len function must be an array or a map, not" + type(args[0])));
-                }
-            case "open":
-                assert args.length == 2;
-                try {
-                    return new File((String) args[0], (String) args[1]);
-                } catch (IOException e) {
-                    throw new PassthroughException(e);
-                }
-            case "close":
-                assert args.length == 1;
-                File fClose = (File) args[0];
-                try {
-                    fClose.close();
-                } catch (IOException e) {
-                    throw new PassthroughException(e);
-                }
-                return None.INSTANCE;
-            case "read":
-                assert args.length == 1;
-                File fRead = (File) args[0];
-                try {
-                    return fRead.read();
-                } catch (IOException e) {
-                    throw new PassthroughException(e);
-                }
-            case "write":
-                assert args.length == 2;
-                File fWrite = (File) args[0];
-                try {
-                    fWrite.write(args[1]);
-                } catch (IOException e) {
-                    throw new PassthroughException(e);
-                }
-                return None.INSTANCE;
-        }
-        throw new Error("Should not get here");
     }
 }
@@ -0,0 +1,193 @@
+package interpreter;
+
+import Types.Type;
+import ast.*;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import scopes.DeclarationContext;
+import scopes.DeclarationKind;
+import scopes.Scope;
+import scopes.SyntheticDeclarationNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+
+/**
+ * Copies the attributes computed by semantic analysis from the {@link Reactor} onto the AST
+ * nodes themselves, so that the interpreter never needs to query the reactor at run time.
+ *
+ * <p>This fills in {@link ASTNode#type} for every node, the {@code scope} field of the nodes that
+ * introduce a scope ({@link RootNode}, {@link BlockNode}, {@link ForNode},
+ * {@link ListComprehensionNode} and {@link FunctionDefinitionNode}), the declaration and slot
+ * of every {@link IdentifierNode}, whether each {@link ListComprehensionNode} is pure, and what the
+ * stores into collections and the calls to built-ins may share with the iterations of pfor loops
+ * ({@link VarAssignmentNode#pforScope} and the {@code shared} fields).
+ *
+ * <p>The types are made sound on the way: semantic analysis gives a variable the type of its
+ * first assignment, but the variable may later be assigned values of another type. Identifiers
+ * referring to such variables are given {@link Type#UNKNOWN_TYPE}, so that the engines can trust
+ * any other type to hold at run time. Instability spreads through assignments: a variable
+ * assigned an expression that reads an unstable variable (e.g. {@code b = a}) is unstable too.
+ *
+ * <p>Must be run after the reactor has run without errors.
+ *
+ * <p>A linked tree doesn't need the reactor anymore. Trees that were linked before, e.g. trees
+ * read from a cache, are "linked" again without one (see {@link #link}).
+ */
+public final class Linker
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final Reactor reactor;
+
+    private final List<IdentifierNode> identifiers = new ArrayList<>();
+
+    /** Variables that are assigned values of another type than their declared type. */
+    private final Set<DeclarationNode> unstable = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Maps declarations to the variables assigned expressions that read them. */
+    private final Map<DeclarationNode, List<DeclarationNode>> readers = new IdentityHashMap<>();
+
+    /** Number of identifiers seen before each assignment being walked. */
+    private final ArrayDeque<Integer> assignments = new ArrayDeque<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Linker (Reactor reactor) {
+        this.reactor = reactor;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Links the given tree, using the attributes stored in {@code reactor}. If {@code reactor} is
+     * null, the tree must have been linked already, and is left untouched.
+     */
+    public static void link (Reactor reactor, ASTNode root)
+    {
+        if (reactor == null)
+            return;
+
+        Linker linker = new Linker(reactor);
+        ReflectiveFieldWalker<ASTNode> walker = new ReflectiveFieldWalker<>(
+            ASTNode.class, PRE_VISIT, POST_VISIT);
+
+        walker.register(IdentifierNode.class,           PRE_VISIT, linker::identifier);
+        walker.register(FunctionCallNode.class,         POST_VISIT, linker::functionCall);
+        walker.register(VarAssignmentNode.class,        PRE_VISIT, n -> linker.assignments.push(linker.identifiers.size()));
+        walker.register(VarAssignmentNode.class,        POST_VISIT, linker::assignment);
+        walker.register(RootNode.class,                 PRE_VISIT, n -> n.scope = linker.scope(n));
+        walker.register(BlockNode.class,                PRE_VISIT, n -> n.scope = linker.scope(n));
+        walker.register(ForNode.class,                  PRE_VISIT, n -> n.scope = linker.scope(n));
+        walker.register(ListComprehensionNode.class,    PRE_VISIT, linker::comprehension);
+        walker.register(FunctionDefinitionNode.class,   PRE_VISIT, n -> n.scope = linker.scope(n));
+
+        walker.registerFallback(PRE_VISIT,  node -> {});
+        walker.registerFallback(POST_VISIT, linker::type);
+
+        walker.walk(root);
+        linker.spreadInstability();
+
+        for (IdentifierNode identifier : linker.identifiers)
+            if (linker.unstable.contains(identifier.context.declaration))
+                identifier.type = Type.UNKNOWN_TYPE;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Scope scope (ASTNode node) {
+        return reactor.get(node, "scope");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void comprehension (ListComprehensionNode node) {
+        node.scope = scope(node);
+        node.pure = reactor.get(node, "pure");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void type (ASTNode node) {
+        node.type = reactor.get(node, "type");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void identifier (IdentifierNode node)
+    {
+        Scope scope = reactor.get(node, "scope");
+        DeclarationNode decl = reactor.get(node, "decl");
+        node.context = new DeclarationContext(scope, decl);
+
+        boolean variable = decl instanceof VarAssignmentNode
+            || decl instanceof ParameterNode
+            || decl instanceof ForNode
+            || decl instanceof ListComprehensionNode
+            || decl instanceof SyntheticDeclarationNode
+                && ((SyntheticDeclarationNode) decl).kind() == DeclarationKind.VARIABLE;
+
+        node.slot = variable ? reactor.get(node, "slot") : -1;
+        identifiers.add(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void functionCall (FunctionCallNode node)
+    {
+        type(node);
+        node.shared = Boolean.TRUE.equals(reactor.get(node, "shared"));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void assignment (VarAssignmentNode node)
+    {
+        type(node);
+        node.pforScope = reactor.get(node, "pforScope");
+        node.shared = Boolean.TRUE.equals(reactor.get(node, "shared"));
+        int start = assignments.pop();
+        if (!(node.left instanceof IdentifierNode))
+            return;
+
+        IdentifierNode left = (IdentifierNode) node.left;
+        if (left.slot < 0)
+            throw new Error("[implementation bug] assignment to " + left.value + ", which has no slot");
+
+        DeclarationNode decl = left.context.declaration;
+        if (!(decl instanceof VarAssignmentNode))
+            return;
+        if (decl != node && ((VarAssignmentNode) decl).type != node.type)
+            unstable.add(decl);
+
+        // the identifiers seen since the start of the assignment are the target and those read
+        for (IdentifierNode read : identifiers.subList(start, identifiers.size()))
+            if (read != node.left)
+                readers.computeIfAbsent(read.context.declaration, k -> new ArrayList<>()).add(decl);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Makes unstable the variables assigned expressions that read unstable variables, until none
+     * is left.
+     */
+    private void spreadInstability ()
+    {
+        ArrayDeque<DeclarationNode> work = new ArrayDeque<>(unstable);
+        while (!work.isEmpty())
+            for (DeclarationNode reader : readers.getOrDefault(work.pop(), List.of()))
+                if (unstable.add(reader))
+                    work.push(reader);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
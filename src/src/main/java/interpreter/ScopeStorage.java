@@ -3,7 +3,7 @@ import Types.PolymorphArray;
 import scopes.RootScope;
 import scopes.Scope;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * The concrete instantiation of a {@link Scope} at runtime.
@@ -11,6 +11,12 @@ import java.util.HashMap;
  * <p>The scope itself cannot be used directly, as many "copies" of the scope will be needed
  * at runtime (for instance, one for each function invocation), sometimes at the same type,
  * in the presence of recursion.
+ *
+ * <p>Values are stored in an array, indexed by the slot that semantic analysis assigned to each
+ * declaration of the scope (see {@link Scope#slot(String)}). Storages are chained following the
+ * lexical nesting of scopes, so the storage of the scope declaring a value is always found by
+ * walking up from the current storage until reaching the depth of the declaring scope (the
+ * storage found there is checked to belong to the declaring scope).
  */
 public final class ScopeStorage
 {
@@ -18,46 +24,57 @@ public final class ScopeStorage
 
     public final Scope scope;
     public final ScopeStorage parent;
+    public final int depth;
 
     // ---------------------------------------------------------------------------------------------
 
-    private final HashMap<String, Object> values = new HashMap<>();
+    private final Object[] values;
 
     // ---------------------------------------------------------------------------------------------
 
     ScopeStorage (Scope scope, ScopeStorage parent) {
         this.scope = scope;
         this.parent = parent;
+        this.depth = scope.depth;
+        this.values = new Object[scope.size()];
     }
 
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Returns the value with the given name, defined in the given scope (determined by semantic
-     * analysis), which should be this scope or one of its ancestors.
+     * Returns the storage for the given scope (determined by semantic analysis), which should be
+     * this scope or one of its ancestors.
      */
-    Object get (Scope scope, String name)
+    ScopeStorage frame (Scope scope)
     {
-        if (scope == this.scope)
-            return values.get(name);
-        else if (parent != null)
-            return parent.get(scope, name);
-        else
-            throw new Error("[implementation bug] could not lookup name: " + name);
+        ScopeStorage storage = this;
+        while (storage != null && storage.depth > scope.depth)
+            storage = storage.parent;
+        // the storage at the depth of the scope must be that of the scope itself, which is not the
+        // case if the scope is not an ancestor of this one
+        if (storage == null || storage.scope != scope)
+            throw new Error("[implementation bug] could not find the frame of scope " + scope);
+        return storage;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Sets the value with the given name, defined in the given scope (determined by semantic
+     * Returns the value stored in the given slot of the given scope (determined by semantic
      * analysis), which should be this scope or one of its ancestors.
      */
-    void set (Scope scope, String name, Object value)
-    {
-        if (scope == this.scope)
-            values.put(name, value);
-        else
-            parent.set(scope, name, value);
+    Object get (Scope scope, int slot) {
+        return frame(scope).values[slot];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the value stored in the given slot of the given scope (determined by semantic
+     * analysis), which should be this scope or one of its ancestors.
+     */
+    void set (Scope scope, int slot, Object value) {
+        frame(scope).values[slot] = value;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -67,28 +84,21 @@ public final class ScopeStorage
      */
     void initRoot(RootScope root, String[] args)
     {
-        set(root, root._true  .name(), true);
-        set(root, root._false .name(), false);
-        set(root, root._none  .name(), None.INSTANCE);
+        set(root, root.slot(root._true  .name()), true);
+        set(root, root.slot(root._false .name()), false);
+        set(root, root.slot(root._none  .name()), None.INSTANCE);
 
-        set(root, root._args  .name(), new PolymorphArray((Object[]) args));
+        set(root, root.slot(root._args  .name()), new PolymorphArray((Object[]) args));
 
         // Function and types are not assigned values in frames - instead they derive
-        // their runtime value values from the corresponding Decla        set(root, root._true  .name(), true);
-        //        set(root, root._false .name(), false);
-        //        set(root, root._none  .name(), None.INSTANCE);
-        //
-        //        set(root, root._args  .name(), new PolymorphArray(args));
-        //
-        //        // Function and types are not assigned values in frames - instead they derive
-        //        // their runtime value values from the corresponding DeclarationNode.rationNode.
+        // their runtime value values from the corresponding DeclarationNode.
     }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override public String toString() {
-        return "ScopeStorage " + values.toString();
+        return "ScopeStorage " + Arrays.toString(values);
     }
 
     // ---------------------------------------------------------------------------------------------
-}
\ No newline at end of file
+}
@@ -0,0 +1,630 @@
+package interpreter;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import ast.*;
+import jvm.NSRuntime;
+import norswap.uranium.Reactor;
+import norswap.utils.exceptions.Exceptions;
+import scopes.RootScope;
+import scopes.Scope;
+import scopes.SyntheticDeclarationNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A variant of the {@link Interpreter} that does not use the Java stack to evaluate nested nodes:
+ * the nodes being evaluated are kept on an explicit stack of {@link Task}s, and the values of
+ * evaluated children on an explicit value stack. The depth of recursion of NS programs is thus
+ * only bounded by the heap, not by the size of the thread's stack.
+ *
+ * <p>The semantics and error messages are the same as those of the {@link Interpreter}, including
+ * the elimination of tail calls (see {@link TailCall}).
+ */
+public final class StacklessInterpreter
+{
+    // ---------------------------------------------------------------------------------------------
+
+    // Kinds of nodes, dispatched on by step().
+    private static final int ROOT        = 0;
+    private static final int BLOCK       = 1;
+    private static final int ASSIGN      = 2;
+    private static final int ASSIGN_AT   = 3;
+    private static final int MAP         = 4;
+    private static final int ARRAY       = 5;
+    private static final int SIZED_ARRAY = 6;
+    private static final int COMPREHEND  = 7;
+    private static final int UNARY       = 8;
+    private static final int RETURN_STMT = 9;
+    private static final int BINARY      = 10;
+    private static final int IF          = 11;
+    private static final int WHILE       = 12;
+    private static final int FOR         = 13;
+    private static final int CALL        = 14;
+    private static final int SET         = 15;
+
+    /** Value of statements completed by a return statement, see {@link Interpreter}. */
+    private static final Object RETURN = new Object();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A node being evaluated. {@code state} records how far the evaluation went, and the other
+     * fields hold what the node needs to remember across the evaluation of its children. Tasks are
+     * reused once popped.
+     */
+    private static final class Task {
+        ASTNode node;
+        int kind;
+        int state;
+        int index;
+        Object x, y;
+        ScopeStorage saved;
+        boolean tail;
+
+        void init (ASTNode node, int kind) {
+            this.node = node;
+            this.kind = kind;
+            this.state = 0;
+            this.index = 0;
+            this.x = null;
+            this.y = null;
+            this.saved = null;
+            this.tail = false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Reactor reactor;
+    private final String[] args;
+
+    private ScopeStorage storage = null;
+    private Object returned;
+
+    private Task[] tasks = new Task[64];
+    private int tasksTop = 0;
+
+    private Object[] values = new Object[64];
+    private int valuesTop = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public StacklessInterpreter (Reactor reactor, String[] args) {
+        this.reactor = reactor;
+        this.args = args;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Object interpret (ASTNode root)
+    {
+        Linker.link(reactor, root);
+        try {
+            push(root);
+            while (tasksTop > 0) {
+                Task task = tasks[tasksTop - 1];
+                try {
+                    step(task);
+                } catch (InterpreterException | PassthroughException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    throw new InterpreterException("exception while executing " + task.node, e);
+                }
+            }
+            return pop();
+        } catch (PassthroughException e) {
+            throw Exceptions.runtime(e.getCause());
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // STACKS
+
+    /**
+     * Schedules the evaluation of {@code node}, whose value will be found on the value stack once
+     * its task completes. Leaves are evaluated right away.
+     */
+    private void push (ASTNode node)
+    {
+        int kind;
+        if (node instanceof IntegerNode)        { value(((IntegerNode) node).value); return; }
+        if (node instanceof StringNode)         { value(((StringNode) node).value); return; }
+        if (node instanceof BoolNode)           { value(((BoolNode) node).value); return; }
+        if (node instanceof NoneNode)           { value(None.INSTANCE); return; }
+        if (node instanceof IdentifierNode)     { value(identifier((IdentifierNode) node)); return; }
+
+        if (node instanceof BinaryNode)         kind = BINARY;
+        else if (node instanceof FunctionCallNode)  kind = CALL;
+        else if (node instanceof BlockNode)     kind = BLOCK;
+        else if (node instanceof IfNode)        kind = IF;
+        else if (node instanceof WhileNode)     kind = WHILE;
+        else if (node instanceof ForNode)       kind = FOR;
+        else if (node instanceof VarAssignmentNode)
+            kind = ((VarAssignmentNode) node).left instanceof IdentifierNode ? ASSIGN : ASSIGN_AT;
+        else if (node instanceof UnaryNode)
+            kind = ((UnaryNode) node).code == UnaryNode.RETURN ? RETURN_STMT : UNARY;
+        else if (node instanceof ArrayNode)
+            kind = ((ArrayNode) node).elements != null ? ARRAY : SIZED_ARRAY;
+        else if (node instanceof MapNode)       kind = MAP;
+        else if (node instanceof SetNode)       kind = SET;
+        else if (node instanceof ListComprehensionNode) kind = COMPREHEND;
+        else if (node instanceof RootNode)      kind = ROOT;
+        else { value(null); return; }
+
+        if (tasksTop == tasks.length)
+            tasks = Arrays.copyOf(tasks, tasks.length * 2);
+        Task task = tasks[tasksTop];
+        if (task == null)
+            tasks[tasksTop] = task = new Task();
+        ++tasksTop;
+        task.init(node, kind);
+    }
+
+    /** Completes the task on top of the stack with the given value. */
+    private void complete (Object value) {
+        Task task = tasks[--tasksTop];
+        task.init(null, 0);
+        value(value);
+    }
+
+    private void value (Object value) {
+        if (valuesTop == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[valuesTop++] = value;
+    }
+
+    private Object pop () {
+        Object value = values[--valuesTop];
+        values[valuesTop] = null;
+        return value;
+    }
+
+    /** Pops the last {@code count} values, in the order they were pushed. */
+    private Object[] pop (int count) {
+        Object[] result = Arrays.copyOfRange(values, valuesTop - count, valuesTop);
+        Arrays.fill(values, valuesTop - count, valuesTop, null);
+        valuesTop -= count;
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Object identifier (IdentifierNode n) {
+        if (n.slot >= 0)
+            return storage.get(n.context.scope, n.slot);
+
+        return n.context.declaration;
+    }
+
+    /** Statements evaluate to null, unless they complete with a return. */
+    private static Object completion (Object result) {
+        return result == RETURN ? RETURN : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Advances the evaluation of the given task, which is on top of the stack, until it either
+     * completes or needs the value of one of its children.
+     */
+    private void step (Task t)
+    {
+        switch (t.kind) {
+            case ROOT:          root(t);            break;
+            case BLOCK:         block(t);           break;
+            case ASSIGN:        assign(t);          break;
+            case ASSIGN_AT:     assignAt(t);        break;
+            case MAP:           map(t);             break;
+            case ARRAY:         array(t);           break;
+            case SIZED_ARRAY:   sizedArray(t);      break;
+            case SET:           set(t);             break;
+            case COMPREHEND:    comprehension(t);   break;
+            case UNARY:         unary(t);           break;
+            case RETURN_STMT:   return_(t);         break;
+            case BINARY:        binary(t);          break;
+            case IF:            if_(t);             break;
+            case WHILE:         while_(t);          break;
+            case FOR:           for_(t);            break;
+            case CALL:          call(t);            break;
+            default:            throw new Error("Should not get here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // SCOPES
+
+    private void root (Task t) {
+        RootNode n = (RootNode) t.node;
+        if (t.state == 0) {
+            RootScope rootScope = (RootScope) n.scope;
+            storage = new ScopeStorage(rootScope, null);
+            storage.initRoot(rootScope, args);
+            t.state = 1;
+            push(n.block);
+        } else {
+            storage = null;
+            complete(pop());
+        }
+    }
+
+    private void block (Task t) {
+        BlockNode n = (BlockNode) t.node;
+        if (t.state == 0) {
+            t.saved = storage;
+            storage = new ScopeStorage(n.scope, storage);
+            t.state = 1;
+        } else {
+            t.x = pop();
+            if (t.x == RETURN) {
+                storage = t.saved;
+                complete(RETURN);
+                return;
+            }
+        }
+
+        if (t.index < n.statements.size()) {
+            push(n.statements.get(t.index++));
+        } else {
+            storage = t.saved;
+            complete(t.x);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // VARIABLES
+
+    private void assign (Task t) {
+        VarAssignmentNode n = (VarAssignmentNode) t.node;
+        if (t.state == 0) {
+            t.state = 1;
+            push(n.right);
+        } else {
+            IdentifierNode left = (IdentifierNode) n.left;
+            Object rvalue = pop();
+            storage.set(left.context.scope, left.slot, rvalue);
+            complete(rvalue);
+        }
+    }
+
+    private void assignAt (Task t) {
+        VarAssignmentNode n = (VarAssignmentNode) t.node;
+        BinaryNode access = (BinaryNode) n.left;
+        switch (t.state++) {
+            case 0:
+                push(access.left);
+                break;
+            case 1:
+                t.x = NSRuntime.storeTarget(pop(), n.left.toString());
+                push(access.right);
+                break;
+            case 2:
+                t.y = NSRuntime.storeKey(t.x, pop());
+                push(n.right);
+                break;
+            default:
+                NSRuntime.store(t.x, t.y, pop());
+                complete(null);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // COLLECTIONS
+
+    private void map (Task t) {
+        MapNode n = (MapNode) t.node;
+        if (t.state == 0) {
+            t.x = new PolymorphMap();
+            t.state = 1;
+        } else if (t.state == 2) {
+            t.y = NSRuntime.mapKey(pop());
+            t.state = 3;
+            push(n.elements.get(t.index).right);
+            return;
+        } else if (t.state == 3) {
+            ((PolymorphMap) t.x).put(t.y, pop());
+            ++t.index;
+        }
+
+        if (n.elements != null && t.index < n.elements.size()) {
+            t.state = 2;
+            push(n.elements.get(t.index).left);
+        } else {
+            complete(t.x);
+        }
+    }
+
+    private void array (Task t) {
+        ArrayNode n = (ArrayNode) t.node;
+        if (t.index < n.elements.size())
+            push(n.elements.get(t.index++));
+        else
+            complete(new PolymorphArray(pop(n.elements.size())));
+    }
+
+    private void set (Task t) {
+        SetNode n = (SetNode) t.node;
+        if (t.index < n.elements.size())
+            push(n.elements.get(t.index++));
+        else
+            complete(NSRuntime.set(pop(n.elements.size())));
+    }
+
+    private void sizedArray (Task t) {
+        ArrayNode n = (ArrayNode) t.node;
+        if (t.state == 0) {
+            t.state = 1;
+            push(n.size);
+        } else {
+            complete(NSRuntime.sizedArray(pop()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void comprehension (Task t) {
+        ListComprehensionNode n = (ListComprehensionNode) t.node;
+        switch (t.state) {
+            case 0:
+                t.state = 1;
+                push(n.iterable);
+                return;
+            case 1:
+                t.x = NSRuntime.comprehensionIterator(pop());
+                t.y = new ArrayList<>();
+                t.saved = storage;
+                storage = new ScopeStorage(n.scope, storage);
+                break;
+            case 2:
+                if (NSRuntime.filterCondition(pop())) {
+                    t.state = 3;
+                    push(n.expression);
+                    return;
+                }
+                break;
+            default:
+                ((List<Object>) t.y).add(pop());
+        }
+
+        Iterator<Object> iterator = (Iterator<Object>) t.x;
+        if (iterator.hasNext()) {
+            storage.set(n.scope, n.variable.slot, iterator.next());
+            t.state = n.condition != null ? 2 : 3;
+            push(n.condition != null ? n.condition : n.expression);
+        } else {
+            storage = t.saved;
+            complete(NSRuntime.toArray((ArrayList<Object>) t.y));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // OPERATIONS
+
+    private void unary (Task t) {
+        UnaryNode n = (UnaryNode) t.node;
+        if (t.state == 0) {
+            t.state = 1;
+            push(n.child);
+        } else {
+            Object arg = pop();
+            complete(n.code == UnaryNode.NEGATION ? NSRuntime.negate(arg) : NSRuntime.not(arg));
+        }
+    }
+
+    private void return_ (Task t) {
+        UnaryNode n = (UnaryNode) t.node;
+        if (n.child == null) {
+            returned = None.INSTANCE;
+            complete(RETURN);
+        } else if (t.state == 0) {
+            t.state = 1;
+            push(n.child);
+            if (TailCall.isTailCall(n.child))
+                tasks[tasksTop - 1].tail = true;
+        } else {
+            returned = pop();
+            complete(RETURN);
+        }
+    }
+
+    private void binary (Task t) {
+        BinaryNode n = (BinaryNode) t.node;
+        switch (t.state++) {
+            case 0:
+                push(n.left);
+                return;
+            case 1:
+                push(n.right);
+                return;
+        }
+
+        Object right = pop();
+        Object left = pop();
+        switch (n.code) {
+            case BinaryNode.ADD:        complete(NSRuntime.add(left, right)); return;
+            case BinaryNode.SUB:        complete(NSRuntime.sub(left, right)); return;
+            case BinaryNode.MUL:        complete(NSRuntime.mul(left, right)); return;
+            case BinaryNode.DIV:        complete(NSRuntime.div(left, right)); return;
+            case BinaryNode.MOD:        complete(NSRuntime.mod(left, right)); return;
+            case BinaryNode.OR:         complete(NSRuntime.or(left, right)); return;
+            case BinaryNode.AND:        complete(NSRuntime.and(left, right)); return;
+            case BinaryNode.EQ:         complete(NSRuntime.eq(left, right)); return;
+            case BinaryNode.NEQ:        complete(NSRuntime.neq(left, right)); return;
+            case BinaryNode.LEQ:        complete(NSRuntime.leq(left, right)); return;
+            case BinaryNode.GEQ:        complete(NSRuntime.geq(left, right)); return;
+            case BinaryNode.L:          complete(NSRuntime.lt(left, right)); return;
+            case BinaryNode.G:          complete(NSRuntime.gt(left, right)); return;
+            case BinaryNode.IDX_ACCESS: complete(NSRuntime.get(left, right)); return;
+            case BinaryNode.IN:         complete(NSRuntime.in(left, right)); return;
+        }
+        throw new Error("Should not get here");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // STATEMENTS
+
+    private void if_ (Task t) {
+        IfNode n = (IfNode) t.node;
+        switch (t.state) {
+            case 0:
+                t.state = 1;
+                push(n.bool);
+                return;
+            case 1:
+                if (NSRuntime.ifCondition(pop())) {
+                    t.state = 3;
+                    push(n.block);
+                    return;
+                }
+                break;
+            case 2:
+                if (NSRuntime.elsifCondition(pop())) {
+                    t.state = 3;
+                    push(n.else_blocks.get(t.index).block);
+                    return;
+                }
+                ++t.index;
+                break;
+            default:
+                complete(completion(pop()));
+                return;
+        }
+
+        if (n.else_blocks == null || t.index == n.else_blocks.size()) {
+            complete(null);
+            return;
+        }
+
+        ElseNode branch = n.else_blocks.get(t.index);
+        t.state = branch.bool == null ? 3 : 2;
+        push(branch.bool == null ? branch.block : branch.bool);
+    }
+
+    private void while_ (Task t) {
+        WhileNode n = (WhileNode) t.node;
+        switch (t.state) {
+            case 0:
+                t.state = 1;
+                push(n.bool);
+                return;
+            case 1:
+                if (NSRuntime.whileCondition(pop())) {
+                    t.state = 2;
+                    push(n.block);
+                } else {
+                    complete(null);
+                }
+                return;
+            default:
+                if (pop() == RETURN) {
+                    complete(RETURN);
+                } else {
+                    t.state = 1;
+                    push(n.bool);
+                }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void for_ (Task t) {
+        ForNode n = (ForNode) t.node;
+        switch (t.state) {
+            case 0:
+                t.saved = storage;
+                storage = new ScopeStorage(n.scope, storage);
+                t.state = 1;
+                push(n.list);
+                return;
+            case 1:
+                t.x = NSRuntime.forIterator(pop());
+                t.state = 2;
+                break;
+            default:
+                if (pop() == RETURN) {
+                    storage = t.saved;
+                    complete(RETURN);
+                    return;
+                }
+        }
+
+        Iterator<Object> iterator = (Iterator<Object>) t.x;
+        if (iterator.hasNext()) {
+            storage.set(n.scope, n.variable.slot, iterator.next());
+            push(n.block);
+        } else {
+            storage = t.saved;
+            complete(null);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // FUNCTIONS
+
+    private void call (Task t) {
+        FunctionCallNode n = (FunctionCallNode) t.node;
+        int count = n.args == null ? 0 : n.args.size();
+
+        if (t.state == 0) {
+            Object decl = identifier(n.functionName);
+            if (decl == None.INSTANCE)
+                throw new PassthroughException(new NullPointerException("calling a null function"));
+            t.x = decl;
+            t.state = 1;
+        }
+
+        if (t.state == 1) {
+            if (t.index < count) {
+                push(n.args.get(t.index++));
+                return;
+            }
+
+            Object[] args = pop(count);
+            if (t.x instanceof SyntheticDeclarationNode) {
+                complete(Builtin.of(((SyntheticDeclarationNode) t.x).name()).call(args));
+                return;
+            }
+
+            FunctionDefinitionNode function = (FunctionDefinitionNode) t.x;
+            // the function's frame is linked to the frame of its lexically enclosing scope
+            ScopeStorage parent = storage.frame(function.scope.parent);
+            if (t.tail) {
+                complete(new TailCall(function, args, parent));
+                return;
+            }
+
+            t.saved = storage;
+            t.state = 2;
+            enter(function, args, parent);
+            return;
+        }
+
+        // the body of the function completed
+        if (pop() != RETURN) {
+            storage = t.saved;
+            complete(None.INSTANCE);
+            return;
+        }
+
+        Object value = returned;
+        returned = null;
+        if (value instanceof TailCall) {
+            TailCall call = (TailCall) value;
+            enter(call.function, call.args, call.parent);
+        } else {
+            storage = t.saved;
+            complete(value);
+        }
+    }
+
+    private void enter (FunctionDefinitionNode function, Object[] args, ScopeStorage parent) {
+        Scope scope = function.scope;
+        storage = new ScopeStorage(scope, parent);
+        for (int i = 0; i < args.length; ++i)
+            storage.set(scope, function.args.get(i).param.slot, args[i]);
+        push(function.block);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
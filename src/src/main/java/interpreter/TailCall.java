@@ -0,0 +1,41 @@
+package interpreter;
+
+import ast.ASTNode;
+import ast.FunctionCallNode;
+import ast.FunctionDefinitionNode;
+
+/**
+ * A call in tail position ({@code return f(...)}) whose arguments have been evaluated, returned by
+ * the interpreters in place of the value of the call. The function invocation that receives it
+ * runs the call itself instead of returning, so that tail calls run in constant stack space.
+ */
+final class TailCall
+{
+    // ---------------------------------------------------------------------------------------------
+
+    final FunctionDefinitionNode function;
+    final Object[] args;
+
+    /** Storage of the scope in which the function is defined. */
+    final ScopeStorage parent;
+
+    // ---------------------------------------------------------------------------------------------
+
+    TailCall (FunctionDefinitionNode function, Object[] args, ScopeStorage parent) {
+        this.function = function;
+        this.args = args;
+        this.parent = parent;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@code node}, the child of a return statement, is a call to a user-defined function.
+     */
+    static boolean isTailCall (ASTNode node) {
+        return node instanceof FunctionCallNode
+            && ((FunctionCallNode) node).functionName.context.declaration instanceof FunctionDefinitionNode;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,810 @@
+package jvm;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import Types.PolymorphSet;
+import ast.*;
+import interpreter.Builtins;
+import interpreter.Linker;
+import interpreter.None;
+import interpreter.PassthroughException;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import scopes.RootScope;
+import scopes.Scope;
+import scopes.SyntheticDeclarationNode;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static org.objectweb.asm.Opcodes.*;
+import static org.objectweb.asm.Type.getInternalName;
+import static org.objectweb.asm.Type.getMethodDescriptor;
+
+/**
+ * Compiles an analysed AST into a JVM class, so that NS code can be JIT-compiled by the JVM.
+ *
+ * <p>The generated class has one static method per {@link FunctionDefinitionNode}, and a
+ * {@code public static Object run(String[])} method for the top-level code, which returns the
+ * value of the last statement. It also has a {@code main} method, so that it can be run directly
+ * once written to disk (see {@code NSC}). All values are represented by the same objects as in the
+ * {@link interpreter.Interpreter}, except function references, which are {@link NSFunction}s.
+ * Operations that need dynamic type checks call into {@link NSRuntime}, built-in functions call
+ * into {@link Builtins}.
+ *
+ * <p>Variables live in JVM locals of the method of the function that declares them, unless they
+ * are accessed from a nested function. Such shared variables live in static fields if they are
+ * declared at the top-level, or else in an environment array allocated on every invocation of the
+ * declaring function. A function receives the environments of all the enclosing functions that
+ * have one as its first parameters.
+ */
+public final class BytecodeCompiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String OBJECT      = "java/lang/Object";
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String ENV_DESC    = "[Ljava/lang/Object;";
+    private static final String RUNTIME     = getInternalName(NSRuntime.class);
+    private static final String BUILTINS    = getInternalName(Builtins.class);
+    private static final String NONE        = getInternalName(None.class);
+    private static final String NONE_DESC   = "L" + NONE + ";";
+    private static final String ARRAY       = getInternalName(PolymorphArray.class);
+    private static final String MAP         = getInternalName(PolymorphMap.class);
+    private static final String SET         = getInternalName(PolymorphSet.class);
+    private static final String FUNCTION    = getInternalName(NSFunction.class);
+    private static final String LIST        = getInternalName(ArrayList.class);
+    private static final String ITERATOR    = getInternalName(Iterator.class);
+    private static final String PASSTHROUGH = getInternalName(PassthroughException.class);
+
+    private static final String BINARY_DESC = "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC;
+    private static final String UNARY_DESC  = "(" + OBJECT_DESC + ")" + OBJECT_DESC;
+    private static final String TEST_DESC   = "(" + OBJECT_DESC + ")Z";
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Where a variable is stored. */
+    private enum Storage { LOCAL, STATIC, ENV }
+
+    private static final class Variable {
+        final Function owner;
+        Storage storage = Storage.LOCAL;
+        /** Local index, static field number or environment index, depending on the storage. */
+        int index = -1;
+
+        Variable (Function owner) {
+            this.owner = owner;
+        }
+    }
+
+    /** A function, or the top-level code if {@code node} is null. */
+    private static final class Function {
+        final FunctionDefinitionNode node;
+        final Function outer;
+        final List<Variable> variables = new ArrayList<>();
+        /** Enclosing functions whose environment is passed to this function, outermost first. */
+        final List<Function> envs = new ArrayList<>();
+        final IdentityHashMap<Function, Integer> envParams = new IdentityHashMap<>();
+        int envSize;
+        int envLocal = -1;
+        String name;
+        String descriptor;
+
+        Function (FunctionDefinitionNode node, Function outer) {
+            this.node = node;
+            this.outer = outer;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final String className;
+    private final ClassWriter cw;
+    private final IdentityHashMap<Scope, Variable[]> variables = new IdentityHashMap<>();
+    private final IdentityHashMap<FunctionDefinitionNode, Function> functions = new IdentityHashMap<>();
+    /** The functions, in the order of their definition. */
+    private final List<Function> order = new ArrayList<>();
+    private final Function main = new Function(null, null);
+    private int staticCount;
+
+    // state of the method being generated
+    private MethodVisitor mv;
+    private Function current;
+    private int nextLocal;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private BytecodeCompiler (String className)
+    {
+        this.className = className;
+        this.cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            // all values are handled as objects, so precise merged types are never needed
+            @Override protected String getCommonSuperClass (String type1, String type2) {
+                return OBJECT;
+            }
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given tree, which must have been analysed without errors by {@code reactor},
+     * and returns the bytes of a class with the given (binary) name.
+     */
+    public static byte[] compile (Reactor reactor, RootNode root, String className)
+    {
+        Linker.link(reactor, root);
+        BytecodeCompiler compiler = new BytecodeCompiler(className.replace('.', '/'));
+        compiler.analyse(root);
+        return compiler.generate(root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // ANALYSIS
+
+    /**
+     * Finds all the variables of each function, and decides where they are stored.
+     */
+    private void analyse (RootNode root)
+    {
+        current = main;
+        ReflectiveFieldWalker<ASTNode> walker = new ReflectiveFieldWalker<>(
+            ASTNode.class, PRE_VISIT, POST_VISIT);
+
+        walker.register(FunctionDefinitionNode.class, PRE_VISIT, n -> {
+            current = new Function(n, current);
+            functions.put(n, current);
+            order.add(current);
+        });
+        walker.register(FunctionDefinitionNode.class, POST_VISIT, n -> current = current.outer);
+        walker.register(IdentifierNode.class, PRE_VISIT, this::reference);
+        walker.registerFallback(PRE_VISIT,  node -> {});
+        walker.registerFallback(POST_VISIT, node -> {});
+        walker.walk(root);
+
+        for (Variable v : main.variables)
+            if (v.storage == Storage.STATIC) {
+                v.index = staticCount++;
+                cw.visitField(ACC_PRIVATE | ACC_STATIC, "v" + v.index, OBJECT_DESC, null, null).visitEnd();
+            }
+
+        int count = 0;
+        for (Function function : order) {
+            for (Variable v : function.variables)
+                if (v.storage == Storage.ENV)
+                    v.index = function.envSize++;
+
+            function.name = "f" + count++ + "_" + function.node.name.value;
+        }
+
+        for (Function function : order) {
+            for (Function outer = function.outer; outer != main; outer = outer.outer)
+                if (outer.envSize > 0)
+                    function.envs.add(0, outer);
+
+            StringBuilder descriptor = new StringBuilder("(");
+            for (int i = 0; i < function.envs.size(); ++i)
+                descriptor.append(ENV_DESC);
+            for (int i = 0; i < params(function.node); ++i)
+                descriptor.append(OBJECT_DESC);
+            function.descriptor = descriptor.append(")").append(OBJECT_DESC).toString();
+        }
+    }
+
+    private void reference (IdentifierNode node)
+    {
+        if (node.slot < 0) return;
+        Variable v = variable(node);
+
+        if (node.context.scope instanceof RootScope || v.owner != current)
+            v.storage = v.owner == main ? Storage.STATIC : Storage.ENV;
+    }
+
+    private Variable variable (IdentifierNode node) {
+        return variable(node.context.scope, node.slot);
+    }
+
+    private Variable variable (Scope scope, int slot)
+    {
+        Variable[] slots = variables.computeIfAbsent(scope, s -> new Variable[s.size()]);
+        if (slots[slot] == null) {
+            Function owner = owner(scope);
+            slots[slot] = new Variable(owner);
+            owner.variables.add(slots[slot]);
+        }
+        return slots[slot];
+    }
+
+    private Function owner (Scope scope)
+    {
+        for (; scope != null; scope = scope.parent)
+            if (scope.node instanceof FunctionDefinitionNode)
+                return functions.get(scope.node);
+        return main;
+    }
+
+    private static int params (FunctionDefinitionNode node) {
+        return node.args == null ? 0 : node.args.size();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // METHODS
+
+    private byte[] generate (RootNode root)
+    {
+        cw.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, OBJECT, null);
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "([Ljava/lang/String;)" + OBJECT_DESC, null, null);
+        mv.visitCode();
+        current = main;
+        nextLocal = 1;
+        initRoot((RootScope) root.scope);
+        initLocals(main);
+
+        List<ASTNode> statements = root.block.statements;
+        for (int i = 0; i < statements.size() - 1; ++i)
+            statement(statements.get(i));
+        if (statements.isEmpty())
+            mv.visitInsn(ACONST_NULL);
+        else
+            expression(statements.get(statements.size() - 1));
+        mv.visitInsn(ARETURN);
+        endMethod();
+
+        for (Function function : order)
+            function(function);
+
+        main();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates {@code public static void main(String[])}, which runs the program and reports
+     * runtime errors like the interpreter does.
+     */
+    private void main ()
+    {
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        mv.visitCode();
+        mv.visitTryCatchBlock(start, end, handler, PASSTHROUGH);
+        mv.visitLabel(start);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESTATIC, className, "run", "([Ljava/lang/String;)" + OBJECT_DESC, false);
+        mv.visitInsn(POP);
+        mv.visitLabel(end);
+        mv.visitInsn(RETURN);
+        mv.visitLabel(handler);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "unwrap",
+            "(L" + PASSTHROUGH + ";)Ljava/lang/RuntimeException;", false);
+        mv.visitInsn(ATHROW);
+        endMethod();
+    }
+
+    private void endMethod () {
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private void initRoot (RootScope scope)
+    {
+        mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+        initRoot(scope, scope._true);
+        mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+        initRoot(scope, scope._false);
+        mv.visitFieldInsn(GETSTATIC, NONE, "INSTANCE", NONE_DESC);
+        initRoot(scope, scope._none);
+        mv.visitTypeInsn(NEW, ARRAY);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, ARRAY, "<init>", "(" + ENV_DESC + ")V", false);
+        initRoot(scope, scope._args);
+    }
+
+    private void initRoot (RootScope scope, SyntheticDeclarationNode decl)
+    {
+        Variable[] slots = variables.get(scope);
+        Variable v = slots == null ? null : slots[scope.slot(decl.name())];
+        if (v == null)
+            mv.visitInsn(POP);
+        else
+            mv.visitFieldInsn(PUTSTATIC, className, "v" + v.index, OBJECT_DESC);
+    }
+
+    /** Allocates the environment and the JVM locals of the current method's variables. */
+    private void initLocals (Function function)
+    {
+        if (function.envSize > 0) {
+            function.envLocal = nextLocal++;
+            push(function.envSize);
+            mv.visitTypeInsn(ANEWARRAY, OBJECT);
+            mv.visitVarInsn(ASTORE, function.envLocal);
+        }
+
+        for (Variable v : function.variables)
+            if (v.storage == Storage.LOCAL && v.index < 0) {
+                v.index = nextLocal++;
+                mv.visitInsn(ACONST_NULL);
+                mv.visitVarInsn(ASTORE, v.index);
+            }
+    }
+
+    private void function (Function function)
+    {
+        FunctionDefinitionNode node = function.node;
+        mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, function.name, function.descriptor, null, null);
+        mv.visitCode();
+        current = function;
+        nextLocal = 0;
+
+        for (Function env : function.envs)
+            function.envParams.put(env, nextLocal++);
+
+        int firstParam = nextLocal;
+        nextLocal += params(node);
+        for (int i = 0; i < params(node); ++i) {
+            Variable v = variable(node.args.get(i).param);
+            if (v.storage == Storage.LOCAL)
+                v.index = firstParam + i;
+        }
+
+        initLocals(function);
+
+        for (int i = 0; i < params(node); ++i) {
+            Variable v = variable(node.args.get(i).param);
+            if (v.storage == Storage.ENV) {
+                mv.visitVarInsn(ALOAD, function.envLocal);
+                push(v.index);
+                mv.visitVarInsn(ALOAD, firstParam + i);
+                mv.visitInsn(AASTORE);
+            }
+        }
+
+        block(node.block);
+        mv.visitFieldInsn(GETSTATIC, NONE, "INSTANCE", NONE_DESC);
+        mv.visitInsn(ARETURN);
+        endMethod();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // VARIABLES
+
+    private void load (Variable v)
+    {
+        switch (v.storage) {
+            case LOCAL:
+                mv.visitVarInsn(ALOAD, v.index);
+                break;
+            case STATIC:
+                mv.visitFieldInsn(GETSTATIC, className, "v" + v.index, OBJECT_DESC);
+                break;
+            case ENV:
+                env(v.owner);
+                push(v.index);
+                mv.visitInsn(AALOAD);
+                break;
+        }
+    }
+
+    /**
+     * Stores the value pushed by {@code value} into the variable, leaving a copy of it on the
+     * stack if {@code keep} is true.
+     */
+    private void store (Variable v, Runnable value, boolean keep)
+    {
+        switch (v.storage) {
+            case LOCAL:
+                value.run();
+                if (keep) mv.visitInsn(DUP);
+                mv.visitVarInsn(ASTORE, v.index);
+                break;
+            case STATIC:
+                value.run();
+                if (keep) mv.visitInsn(DUP);
+                mv.visitFieldInsn(PUTSTATIC, className, "v" + v.index, OBJECT_DESC);
+                break;
+            case ENV:
+                env(v.owner);
+                push(v.index);
+                value.run();
+                if (keep) mv.visitInsn(DUP_X2);
+                mv.visitInsn(AASTORE);
+                break;
+        }
+    }
+
+    /** Pushes the environment of the given function, which must be or enclose the current one. */
+    private void env (Function function) {
+        mv.visitVarInsn(ALOAD, function == current
+            ? current.envLocal
+            : current.envParams.get(function));
+    }
+
+    private void push (int value)
+    {
+        if (value <= 5)
+            mv.visitInsn(ICONST_0 + value);
+        else if (value <= Byte.MAX_VALUE)
+            mv.visitIntInsn(BIPUSH, value);
+        else if (value <= Short.MAX_VALUE)
+            mv.visitIntInsn(SIPUSH, value);
+        else
+            mv.visitLdcInsn(value);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // STATEMENTS
+
+    private void block (BlockNode node) {
+        for (ASTNode statement : node.statements)
+            statement(statement);
+    }
+
+    /** Generates code for a node whose value is not used. */
+    private void statement (ASTNode node)
+    {
+        if (node instanceof VarAssignmentNode)
+            assignment((VarAssignmentNode) node, false);
+        else if (node instanceof IfNode)
+            if_((IfNode) node);
+        else if (node instanceof WhileNode)
+            while_((WhileNode) node);
+        else if (node instanceof ForNode)
+            for_((ForNode) node);
+        else if (node instanceof BlockNode)
+            block((BlockNode) node);
+        else if (node instanceof UnaryNode && ((UnaryNode) node).code == UnaryNode.RETURN)
+            return_((UnaryNode) node);
+        else if (!(node instanceof FunctionDefinitionNode)) {
+            expression(node);
+            mv.visitInsn(POP);
+        }
+    }
+
+    private void if_ (IfNode node)
+    {
+        Label end = new Label();
+        Label next = new Label();
+
+        expression(node.bool);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "ifCondition", TEST_DESC, false);
+        mv.visitJumpInsn(IFEQ, next);
+        block(node.block);
+        mv.visitJumpInsn(GOTO, end);
+
+        if (node.else_blocks != null)
+            for (ElseNode branch : node.else_blocks) {
+                mv.visitLabel(next);
+                next = new Label();
+                if (branch.bool != null) {
+                    expression(branch.bool);
+                    mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "elsifCondition", TEST_DESC, false);
+                    mv.visitJumpInsn(IFEQ, next);
+                }
+                block(branch.block);
+                mv.visitJumpInsn(GOTO, end);
+            }
+
+        mv.visitLabel(next);
+        mv.visitLabel(end);
+    }
+
+    private void while_ (WhileNode node)
+    {
+        Label start = new Label();
+        Label end = new Label();
+
+        mv.visitLabel(start);
+        expression(node.bool);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "whileCondition", TEST_DESC, false);
+        mv.visitJumpInsn(IFEQ, end);
+        block(node.block);
+        mv.visitJumpInsn(GOTO, start);
+        mv.visitLabel(end);
+    }
+
+    private void for_ (ForNode node)
+    {
+        Label start = new Label();
+        Label end = new Label();
+        int iterator = nextLocal++;
+
+        expression(node.list);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "forIterator",
+            "(" + OBJECT_DESC + ")L" + ITERATOR + ";", false);
+        mv.visitVarInsn(ASTORE, iterator);
+
+        mv.visitLabel(start);
+        mv.visitVarInsn(ALOAD, iterator);
+        mv.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "hasNext", "()Z", true);
+        mv.visitJumpInsn(IFEQ, end);
+        store(variable(node.variable), () -> next(iterator), false);
+        block(node.block);
+        mv.visitJumpInsn(GOTO, start);
+        mv.visitLabel(end);
+    }
+
+    private void next (int iterator) {
+        mv.visitVarInsn(ALOAD, iterator);
+        mv.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "next", "()" + OBJECT_DESC, true);
+    }
+
+    private void return_ (UnaryNode node)
+    {
+        if (node.child == null)
+            mv.visitFieldInsn(GETSTATIC, NONE, "INSTANCE", NONE_DESC);
+        else
+            expression(node.child);
+        mv.visitInsn(ARETURN);
+    }
+
+    private void assignment (VarAssignmentNode node, boolean keep)
+    {
+        if (node.left instanceof IdentifierNode) {
+            store(variable((IdentifierNode) node.left), () -> expression(node.right), keep);
+            return;
+        }
+
+        if (node.left instanceof BinaryNode && ((BinaryNode) node.left).code == BinaryNode.IDX_ACCESS) {
+            BinaryNode access = (BinaryNode) node.left;
+            expression(access.left);
+            mv.visitLdcInsn(node.left.toString());
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "storeTarget",
+                "(" + OBJECT_DESC + "Ljava/lang/String;)" + OBJECT_DESC, false);
+            mv.visitInsn(DUP);
+            expression(access.right);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "storeKey", BINARY_DESC, false);
+            expression(node.right);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "store",
+                "(" + OBJECT_DESC + OBJECT_DESC + OBJECT_DESC + ")V", false);
+            if (keep) mv.visitInsn(ACONST_NULL);
+            return;
+        }
+
+        throw new Error("Should not get here");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // EXPRESSIONS
+
+    /** Generates code pushing the value of the node on the stack. */
+    private void expression (ASTNode node)
+    {
+        if (node instanceof NoneNode)
+            mv.visitFieldInsn(GETSTATIC, NONE, "INSTANCE", NONE_DESC);
+        else if (node instanceof BoolNode)
+            mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean",
+                ((BoolNode) node).value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+        else if (node instanceof IntegerNode) {
+            mv.visitLdcInsn(((IntegerNode) node).value);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+        }
+        else if (node instanceof StringNode)
+            mv.visitLdcInsn(((StringNode) node).value);
+        else if (node instanceof IdentifierNode)
+            identifier((IdentifierNode) node);
+        else if (node instanceof VarAssignmentNode)
+            assignment((VarAssignmentNode) node, true);
+        else if (node instanceof MapNode)
+            map((MapNode) node);
+        else if (node instanceof ArrayNode)
+            array((ArrayNode) node);
+        else if (node instanceof SetNode) {
+            objectArray(((SetNode) node).elements);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "set", "(" + ENV_DESC + ")L" + SET + ";", false);
+        }
+        else if (node instanceof ListComprehensionNode)
+            listComprehension((ListComprehensionNode) node);
+        else if (node instanceof UnaryNode)
+            unary((UnaryNode) node);
+        else if (node instanceof BinaryNode)
+            binary((BinaryNode) node);
+        else if (node instanceof FunctionCallNode)
+            functionCall((FunctionCallNode) node);
+        else {
+            statement(node);
+            mv.visitInsn(ACONST_NULL);
+        }
+    }
+
+    private void identifier (IdentifierNode node)
+    {
+        if (node.slot >= 0) {
+            load(variable(node));
+            return;
+        }
+
+        Object decl = node.context.declaration;
+        String name = decl instanceof FunctionDefinitionNode
+            ? ((FunctionDefinitionNode) decl).name.value
+            : ((SyntheticDeclarationNode) decl).name();
+
+        mv.visitTypeInsn(NEW, FUNCTION);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(name);
+        mv.visitMethodInsn(INVOKESPECIAL, FUNCTION, "<init>", "(Ljava/lang/String;)V", false);
+    }
+
+    private void map (MapNode node)
+    {
+        mv.visitTypeInsn(NEW, MAP);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, MAP, "<init>", "()V", false);
+
+        if (node.elements != null)
+            for (BinaryNode pair : node.elements) {
+                mv.visitInsn(DUP);
+                expression(pair.left);
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "mapKey", UNARY_DESC, false);
+                expression(pair.right);
+                mv.visitMethodInsn(INVOKEVIRTUAL, MAP, "put", "(" + OBJECT_DESC + OBJECT_DESC + ")V", false);
+            }
+    }
+
+    private void array (ArrayNode node)
+    {
+        if (node.elements != null) {
+            objectArray(node.elements);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "array", "(" + ENV_DESC + ")L" + ARRAY + ";", false);
+        } else if (node.size != null) {
+            expression(node.size);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "sizedArray", "(" + OBJECT_DESC + ")L" + ARRAY + ";", false);
+        } else {
+            throw new Error("Should not get here");
+        }
+    }
+
+    private void objectArray (List<ASTNode> elements)
+    {
+        push(elements.size());
+        mv.visitTypeInsn(ANEWARRAY, OBJECT);
+        for (int i = 0; i < elements.size(); ++i) {
+            mv.visitInsn(DUP);
+            push(i);
+            expression(elements.get(i));
+            mv.visitInsn(AASTORE);
+        }
+    }
+
+    private void listComprehension (ListComprehensionNode node)
+    {
+        Label start = new Label();
+        Label end = new Label();
+        int iterator = nextLocal++;
+        int list = nextLocal++;
+
+        expression(node.iterable);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "comprehensionIterator",
+            "(" + OBJECT_DESC + ")L" + ITERATOR + ";", false);
+        mv.visitVarInsn(ASTORE, iterator);
+        mv.visitTypeInsn(NEW, LIST);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, LIST, "<init>", "()V", false);
+        mv.visitVarInsn(ASTORE, list);
+
+        mv.visitLabel(start);
+        mv.visitVarInsn(ALOAD, iterator);
+        mv.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "hasNext", "()Z", true);
+        mv.visitJumpInsn(IFEQ, end);
+        store(variable(node.variable), () -> next(iterator), false);
+        if (node.condition != null) {
+            expression(node.condition);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "filterCondition", TEST_DESC, false);
+            mv.visitJumpInsn(IFEQ, start);
+        }
+        mv.visitVarInsn(ALOAD, list);
+        expression(node.expression);
+        mv.visitMethodInsn(INVOKEVIRTUAL, LIST, "add", "(" + OBJECT_DESC + ")Z", false);
+        mv.visitInsn(POP);
+        mv.visitJumpInsn(GOTO, start);
+
+        mv.visitLabel(end);
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "toArray", "(L" + LIST + ";)L" + ARRAY + ";", false);
+    }
+
+    private void unary (UnaryNode node)
+    {
+        switch (node.code) {
+            case UnaryNode.NEGATION:
+                expression(node.child);
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "negate", UNARY_DESC, false);
+                break;
+            case UnaryNode.NOT:
+                expression(node.child);
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "not", UNARY_DESC, false);
+                break;
+            case UnaryNode.RETURN:
+                return_(node);
+                mv.visitInsn(ACONST_NULL);
+                break;
+            default:
+                throw new Error("Should not get here");
+        }
+    }
+
+    private void binary (BinaryNode node)
+    {
+        String operation;
+        switch (node.code) {
+            case BinaryNode.ADD:        operation = "add";   break;
+            case BinaryNode.SUB:        operation = "sub";   break;
+            case BinaryNode.MUL:        operation = "mul";   break;
+            case BinaryNode.DIV:        operation = "div";   break;
+            case BinaryNode.MOD:        operation = "mod";   break;
+            case BinaryNode.OR:         operation = "or";    break;
+            case BinaryNode.AND:        operation = "and";   break;
+            case BinaryNode.EQ:         operation = "eq";    break;
+            case BinaryNode.NEQ:        operation = "neq";   break;
+            case BinaryNode.LEQ:        operation = "leq";   break;
+            case BinaryNode.GEQ:        operation = "geq";   break;
+            case BinaryNode.L:          operation = "lt";    break;
+            case BinaryNode.G:          operation = "gt";    break;
+            case BinaryNode.IDX_ACCESS: operation = "get";   break;
+            case BinaryNode.IN:         operation = "in";    break;
+            default: throw new Error("Should not get here");
+        }
+
+        expression(node.left);
+        expression(node.right);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, operation, BINARY_DESC, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // FUNCTIONS
+
+    private void functionCall (FunctionCallNode node)
+    {
+        Object decl = node.functionName.context.declaration;
+        List<ASTNode> args = node.args == null ? List.of() : node.args;
+
+        if (decl instanceof SyntheticDeclarationNode) {
+            Method builtin = builtin(((SyntheticDeclarationNode) decl).name(), args.size());
+            args.forEach(this::expression);
+            mv.visitMethodInsn(INVOKESTATIC, BUILTINS, builtin.getName(), getMethodDescriptor(builtin), false);
+            return;
+        }
+
+        if (decl instanceof FunctionDefinitionNode) {
+            Function function = functions.get(decl);
+            function.envs.forEach(this::env);
+            args.forEach(this::expression);
+            mv.visitMethodInsn(INVOKESTATIC, className, function.name, function.descriptor, false);
+            return;
+        }
+
+        // semantic analysis only allows calls to functions and built-ins
+        throw new Error("Should not get here");
+    }
+
+    /**
+     * Returns the method of {@link Builtins} implementing the built-in with the given name.
+     */
+    private static Method builtin (String name, int arity)
+    {
+        String method;
+        switch (name) {
+            case "int":             method = "parseInt";    break;
+            case "sort_in_place":   method = "sortInPlace"; break;
+            default:                method = name;
+        }
+        for (Method candidate : Builtins.class.getMethods())
+            if (candidate.getName().equals(method) && candidate.getParameterCount() == arity)
+                return candidate;
+        throw new Error("Unknown built-in function " + name);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,73 @@
+package jvm;
+
+import ast.RootNode;
+import interpreter.InterpreterException;
+import interpreter.PassthroughException;
+import norswap.uranium.Reactor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A program compiled to a JVM class by the {@link BytecodeCompiler}, which can be run any number
+ * of times (but not concurrently, as top-level variables are stored in static fields).
+ */
+public final class JvmProgram
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Name of the class generated for programs compiled in memory. */
+    public static final String CLASS_NAME = "NSProgram";
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final MethodHandle run;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Wraps a class generated by the {@link BytecodeCompiler}.
+     */
+    public JvmProgram (Class<?> generated)
+    {
+        try {
+            run = MethodHandles.publicLookup().findStatic(generated, "run",
+                MethodType.methodType(Object.class, String[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(generated + " is not a compiled program", e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given tree, which must have been analysed without errors by {@code reactor},
+     * and loads the resulting class.
+     */
+    public static JvmProgram compile (Reactor reactor, RootNode root) {
+        byte[] code = BytecodeCompiler.compile(reactor, root, CLASS_NAME);
+        return new JvmProgram(new ProgramLoader().define(CLASS_NAME, code));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the program with the given command line arguments, and returns the value of its last
+     * statement.
+     */
+    public Object run (String[] args)
+    {
+        try {
+            return (Object) run.invokeExact(args);
+        } catch (PassthroughException e) {
+            throw NSRuntime.unwrap(e);
+        } catch (InterpreterException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InterpreterException("exception while executing program", e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,26 @@
+package jvm;
+
+/**
+ * Runtime value of a reference to a function (user-defined or built-in) in compiled code, where
+ * the {@link ast.FunctionDefinitionNode} that the interpreter uses is not available.
+ */
+public final class NSFunction
+{
+    public final String name;
+
+    public NSFunction (String name) {
+        this.name = name;
+    }
+
+    @Override public boolean equals (Object o) {
+        return o instanceof NSFunction && ((NSFunction) o).name.equals(name);
+    }
+
+    @Override public int hashCode () {
+        return name.hashCode();
+    }
+
+    @Override public String toString () {
+        return name;
+    }
+}
@@ -0,0 +1,274 @@
+package jvm;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import Types.PolymorphSet;
+import interpreter.Builtins;
+import interpreter.None;
+import interpreter.PassthroughException;
+import norswap.utils.exceptions.Exceptions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static interpreter.Builtins.index;
+import static interpreter.Builtins.isPrimitive;
+import static interpreter.Builtins.type;
+
+/**
+ * Runtime support for the code generated by the {@link BytecodeCompiler}: the operations that
+ * need dynamic type checks are implemented here, with the same semantics and error messages as
+ * the reference {@link interpreter.Interpreter}. Built-in functions are called directly on
+ * {@link interpreter.Builtins}.
+ */
+public final class NSRuntime
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private NSRuntime() {}
+
+    // ---------------------------------------------------------------------------------------------
+    // ARITHMETIC & LOGIC
+
+    private static PassthroughException operandError (String operation, Object left, Object right) {
+        return new PassthroughException(new ClassCastException("Cannot do " + operation + " on "
+            + type(left) + " and "
+            + type(right) + "."));
+    }
+
+    private static void checkArithmetic (Object left, Object right) {
+        if (!(left instanceof Long && right instanceof Long))
+            throw operandError("arithmetic operations", left, right);
+    }
+
+    private static void checkLogic (Object left, Object right) {
+        if (!(left instanceof Boolean && right instanceof Boolean))
+            throw operandError("logic operations", left, right);
+    }
+
+    public static Object add (Object left, Object right) {
+        checkArithmetic(left, right);
+        return (Long) left + (Long) right;
+    }
+
+    public static Object sub (Object left, Object right) {
+        checkArithmetic(left, right);
+        return (Long) left - (Long) right;
+    }
+
+    public static Object mul (Object left, Object right) {
+        checkArithmetic(left, right);
+        return (Long) left * (Long) right;
+    }
+
+    public static Object div (Object left, Object right) {
+        checkArithmetic(left, right);
+        return (Long) left / (Long) right;
+    }
+
+    public static Object mod (Object left, Object right) {
+        checkArithmetic(left, right);
+        return (Long) left % (Long) right;
+    }
+
+    public static Object or (Object left, Object right) {
+        checkLogic(left, right);
+        return (Boolean) left || (Boolean) right;
+    }
+
+    public static Object and (Object left, Object right) {
+        checkLogic(left, right);
+        return (Boolean) left && (Boolean) right;
+    }
+
+    public static Object negate (Object arg) {
+        if (!(arg instanceof Long))
+            throw new PassthroughException(new RuntimeException("Cannot negate a non-int value " + type(arg)));
+        return - (Long) arg;
+    }
+
+    public static Object not (Object arg) {
+        if (!(arg instanceof Boolean))
+            throw new PassthroughException(new RuntimeException("Cannot apply not operator on a non-boolean value " + type(arg)));
+        return !(Boolean) arg;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // COMPARISONS
+
+    public static Object eq (Object left, Object right) {
+        return left.equals(right);
+    }
+
+    public static Object neq (Object left, Object right) {
+        return !left.equals(right);
+    }
+
+    private static int compare (Object left, Object right) {
+        if (left instanceof Long && right instanceof Long)
+            return ((Long) left).compareTo((Long) right);
+        if (left instanceof String && right instanceof String)
+            return ((String) left).compareTo((String) right);
+        throw operandError("inequality comparisons", left, right);
+    }
+
+    public static Object leq (Object left, Object right) {
+        return compare(left, right) <= 0;
+    }
+
+    public static Object geq (Object left, Object right) {
+        return compare(left, right) >= 0;
+    }
+
+    public static Object lt (Object left, Object right) {
+        return compare(left, right) < 0;
+    }
+
+    public static Object gt (Object left, Object right) {
+        return compare(left, right) > 0;
+    }
+
+    public static Object in (Object left, Object right) {
+        return Builtins.contains(right, left);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // CONDITIONS
+
+    private static boolean condition (Object value, String message) {
+        if (!(value instanceof Boolean))
+            throw new PassthroughException(new RuntimeException(message + type(value)));
+        return (Boolean) value;
+    }
+
+    public static boolean ifCondition (Object value) {
+        return condition(value, "If statement needs boolean condition, not ");
+    }
+
+    public static boolean elsifCondition (Object value) {
+        return condition(value, "Elsif statement needs boolean condition, not ");
+    }
+
+    public static boolean whileCondition (Object value) {
+        return condition(value, "While loop needs boolean condition, not ");
+    }
+
+    public static boolean filterCondition (Object value) {
+        return condition(value, "Filter condition in list comprehension must be a boolean not ");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // COLLECTIONS
+
+    public static Object get (Object indexable, Object key)
+    {
+        if (indexable instanceof PolymorphArray && key instanceof Long) {
+            try {
+                return ((PolymorphArray) indexable).get(index(key));
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new PassthroughException(e);
+            }
+        } else if (indexable instanceof PolymorphMap && isPrimitive(key)) {
+            try {
+                return ((PolymorphMap) indexable).get(key);
+            } catch (RuntimeException e) {
+                throw new PassthroughException(e);
+            }
+        }
+
+        if (indexable instanceof PolymorphMap)
+            throw new PassthroughException(new ClassCastException(type(key) + " cannot index a map"));
+        else if (indexable instanceof PolymorphArray)
+            throw new PassthroughException(new ClassCastException(type(key) + " cannot index an array"));
+        else
+            throw new PassthroughException(new ClassCastException("Only array and map can be indexed, not " + type(indexable)));
+    }
+
+    /**
+     * First step of an indexed assignment {@code a[k] = v}: checks the indexed value, before the
+     * key is evaluated.
+     */
+    public static Object storeTarget (Object indexable, String description) {
+        if (indexable == None.INSTANCE)
+            throw new PassthroughException(new NullPointerException("Indexing null array " + description));
+        if (!(indexable instanceof PolymorphArray || indexable instanceof PolymorphMap))
+            throw new Error("Should not get here");
+        return indexable;
+    }
+
+    /**
+     * Second step of an indexed assignment {@code a[k] = v}: checks the key, before the value is
+     * evaluated.
+     */
+    public static Object storeKey (Object indexable, Object key) {
+        if (indexable instanceof PolymorphArray)
+            index(key);
+        else if (!isPrimitive(key))
+            throw new PassthroughException(new RuntimeException("Can only use string, integers and booleans as keys of a map, not " + type(key)));
+        return key;
+    }
+
+    /**
+     * Last step of an indexed assignment {@code a[k] = v}.
+     */
+    public static void store (Object indexable, Object key, Object value) {
+        if (indexable instanceof PolymorphArray) {
+            try {
+                ((PolymorphArray) indexable).set(index(key), value);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new PassthroughException(e);
+            }
+        } else {
+            ((PolymorphMap) indexable).put(key, value);
+        }
+    }
+
+    public static Object mapKey (Object key) {
+        if (!isPrimitive(key))
+            throw new PassthroughException(new RuntimeException("Cannot use " + type(key) + " as key in map"));
+        return key;
+    }
+
+    public static PolymorphArray array (Object[] elements) {
+        return new PolymorphArray(elements);
+    }
+
+    public static PolymorphSet set (Object[] elements) {
+        PolymorphSet set = new PolymorphSet();
+        for (Object element : elements)
+            set.add(Builtins.setElement(element));
+        return set;
+    }
+
+    public static PolymorphArray sizedArray (Object size) {
+        return PolymorphArray.nones(index(size));
+    }
+
+    public static Iterator<Object> forIterator (Object iterable) {
+        if (!(iterable instanceof PolymorphArray))
+            throw new PassthroughException(new RuntimeException("Cannot iterate over " + type(iterable)));
+        return ((PolymorphArray) iterable).iterator();
+    }
+
+    public static Iterator<Object> comprehensionIterator (Object iterable) {
+        if (!(iterable instanceof PolymorphArray))
+            throw new PassthroughException(new RuntimeException("List comprehension must iterate over an array, not " + type(iterable)));
+        return ((PolymorphArray) iterable).iterator();
+    }
+
+    public static PolymorphArray toArray (ArrayList<Object> list) {
+        return new PolymorphArray(list.toArray());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // ERRORS
+
+    /**
+     * Converts an error raised while running a program into the exception reported to the user.
+     */
+    public static RuntimeException unwrap (PassthroughException e) {
+        return Exceptions.runtime(e.getCause());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
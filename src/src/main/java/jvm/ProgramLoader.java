@@ -0,0 +1,19 @@
+package jvm;
+
+/**
+ * Class loader for the classes generated by the {@link BytecodeCompiler}. Each program is loaded
+ * by its own loader, so that several programs can use the same class name.
+ */
+public final class ProgramLoader extends ClassLoader
+{
+    public ProgramLoader () {
+        super(ProgramLoader.class.getClassLoader());
+    }
+
+    /**
+     * Defines the class with the given binary name from its bytes.
+     */
+    public Class<?> define (String name, byte[] code) {
+        return defineClass(name, code, 0, code.length);
+    }
+}
@@ -3,11 +3,15 @@ package scopes;
 import ast.DeclarationNode;
 import ast.VarAssignmentNode;
 
+import java.io.Serializable;
+
 /**
  * A pair of a {@link Scope} and a {@link DeclarationNode} declaring an entry in that scope.
  */
-public final class DeclarationContext
+public final class DeclarationContext implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     public final Scope scope;
     public final DeclarationNode declaration;
 
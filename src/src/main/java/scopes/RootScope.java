@@ -16,6 +16,10 @@ public final class RootScope extends Scope
 {
     // ---------------------------------------------------------------------------------------------
 
+    private static final long serialVersionUID = 1L;
+
+    // ---------------------------------------------------------------------------------------------
+
     private SyntheticDeclarationNode decl (String name, DeclarationKind kind) {
         SyntheticDeclarationNode decl = new SyntheticDeclarationNode(name, kind);
         declare(name,  decl);
@@ -33,6 +37,13 @@ public final class RootScope extends Scope
     public final SyntheticDeclarationNode print   = decl("print",   FUNCTION);
     public final SyntheticDeclarationNode println = decl("println", FUNCTION);
     public final SyntheticDeclarationNode sort    = decl("sort",    FUNCTION);
+    public final SyntheticDeclarationNode sortInPlace = decl("sort_in_place", FUNCTION);
+    public final SyntheticDeclarationNode append  = decl("append",  FUNCTION);
+    public final SyntheticDeclarationNode pop     = decl("pop",     FUNCTION);
+    public final SyntheticDeclarationNode slice   = decl("slice",   FUNCTION);
+    public final SyntheticDeclarationNode set     = decl("set",     FUNCTION);
+    public final SyntheticDeclarationNode add     = decl("add",     FUNCTION);
+    public final SyntheticDeclarationNode get     = decl("get",     FUNCTION);
     public final SyntheticDeclarationNode range   = decl("range",   FUNCTION);
     public final SyntheticDeclarationNode indexer = decl("indexer", FUNCTION);
     public final SyntheticDeclarationNode len     = decl("len",     FUNCTION);
@@ -55,6 +66,13 @@ public final class RootScope extends Scope
         reactor.set(print,      "type",         Type.NONE);
         reactor.set(println,    "type",         Type.NONE);
         reactor.set(sort,       "type",         Type.ARRAY);
+        reactor.set(sortInPlace, "type",        Type.ARRAY);
+        reactor.set(append,     "type",         Type.NONE);
+        reactor.set(pop,        "type",         Type.UNKNOWN_TYPE);
+        reactor.set(slice,      "type",         Type.ARRAY);
+        reactor.set(set,        "type",         Type.SET);
+        reactor.set(add,        "type",         Type.NONE);
+        reactor.set(get,        "type",         Type.UNKNOWN_TYPE);
         reactor.set(range,      "type",         Type.ARRAY);
         reactor.set(indexer,    "type",         Type.ARRAY);
         reactor.set(len,        "type",         Type.INTEGER);
@@ -4,15 +4,20 @@ import ast.ASTNode;
 import ast.DeclarationNode;
 import ast.VarAssignmentNode;
 
+import java.io.Serializable;
 import java.util.HashMap;
 
 /**
  * Represent a lexical scope in which declarations occurs.
  */
-public class Scope
+public class Scope implements Serializable
 {
     // ---------------------------------------------------------------------------------------------
 
+    private static final long serialVersionUID = 1L;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The AST node that introduces this scope.
      */
@@ -23,24 +28,53 @@ public class Scope
      */
     public final Scope parent;
 
+    /**
+     * The number of scopes enclosing this one (0 for the root scope). Together with the slot of a
+     * declaration, this is the coordinate the interpreter uses to locate a value at runtime.
+     */
+    public final int depth;
+
     // ---------------------------------------------------------------------------------------------
 
     private final HashMap<String, DeclarationNode> declarations = new HashMap<>();
+    private final HashMap<String, Integer> slots = new HashMap<>();
 
     // ---------------------------------------------------------------------------------------------
 
     public Scope (ASTNode node, Scope parent) {
         this.node = node;
         this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Adds a new declaration to this scope.
+     * Adds a new declaration to this scope, and returns the slot assigned to it. Redeclaring a name
+     * reuses the slot of the previous declaration.
      */
-    public void declare (String identifier, DeclarationNode node) {
+    public int declare (String identifier, DeclarationNode node) {
         declarations.put(identifier, node);
+        return slots.computeIfAbsent(identifier, k -> slots.size());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the slot of the given name in this scope, or -1 if it isn't declared in this scope.
+     */
+    public int slot (String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of slots needed to store the values declared in this scope.
+     */
+    public int size () {
+        return slots.size();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -2,6 +2,7 @@ package scopes;
 
 import ast.*;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -13,8 +14,10 @@ import java.util.Locale;
  *
  * <p>At present, all such declarations are unconditionally introduced in the {@link RootScope}.
  */
-public final class SyntheticDeclarationNode implements DeclarationNode
+public final class SyntheticDeclarationNode implements DeclarationNode, Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     private final String name;
     private final DeclarationKind kind;
 
@@ -47,7 +50,30 @@ public final class SyntheticDeclarationNode implements DeclarationNode
                 params.add(new ParameterNode(new IdentifierNode("limit")));
                 break;
             case "sort":
+            case "sort_in_place":
+                params.add(new ParameterNode(new IdentifierNode("array")));
+                break;
+            case "append":
+                params.add(new ParameterNode(new IdentifierNode("array")));
+                params.add(new ParameterNode(new IdentifierNode("value")));
+                break;
+            case "pop":
+            case "set":
+                params.add(new ParameterNode(new IdentifierNode("array")));
+                break;
+            case "add":
+                params.add(new ParameterNode(new IdentifierNode("set")));
+                params.add(new ParameterNode(new IdentifierNode("element")));
+                break;
+            case "get":
+                params.add(new ParameterNode(new IdentifierNode("map")));
+                params.add(new ParameterNode(new IdentifierNode("key")));
+                params.add(new ParameterNode(new IdentifierNode("default")));
+                break;
+            case "slice":
                 params.add(new ParameterNode(new IdentifierNode("array")));
+                params.add(new ParameterNode(new IdentifierNode("from")));
+                params.add(new ParameterNode(new IdentifierNode("to")));
                 break;
             case "indexer":
                 params.add(new ParameterNode(new IdentifierNode("indexable")));
@@ -0,0 +1,67 @@
+package vm;
+
+import interpreter.Builtin;
+import interpreter.Builtins;
+
+import static vm.Opcodes.NAMES;
+import static vm.Opcodes.OPERANDS;
+
+/**
+ * Renders the code of a {@link Program} in a human-readable format.
+ */
+public final class Disassembler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Disassembler() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static String disassemble (Program program)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < program.functions.length; ++i) {
+            if (i > 0) builder.append('\n');
+            disassemble(program, program.functions[i], builder);
+        }
+        return builder.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void disassemble (Program program, Function function, StringBuilder builder)
+    {
+        builder.append(function.name)
+            .append(" (level ").append(function.level)
+            .append(", params ").append(function.params)
+            .append(", registers ").append(function.registers)
+            .append(")\n");
+
+        int[] code = function.code;
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            String operands = OPERANDS[opcode];
+            builder.append(String.format("%5d  %-13s", pc, NAMES[opcode]));
+
+            for (int i = 0; i < operands.length(); ++i) {
+                int operand = code[pc + 1 + i];
+                builder.append(i == 0 ? " " : ", ");
+                switch (operands.charAt(i)) {
+                    case 'r': builder.append('r').append(operand); break;
+                    case 'k': builder.append('#').append(operand).append(' ')
+                        .append(Builtins.recConvertToString(function.constants[operand])); break;
+                    case 't': builder.append('@').append(operand); break;
+                    case 'f': builder.append(program.functions[operand].name); break;
+                    case 'i': builder.append(Builtin.values()[operand].name); break;
+                    default:  builder.append(operand);
+                }
+            }
+
+            builder.append('\n');
+            pc += 1 + operands.length();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
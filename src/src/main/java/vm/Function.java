@@ -0,0 +1,50 @@
+package vm;
+
+import java.io.Serializable;
+
+/**
+ * The code of a NS function (or of the top-level code of a program) for the {@link VM}.
+ */
+public final class Function implements Serializable
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final long serialVersionUID = 1L;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final String name;
+
+    /** Number of functions lexically enclosing this one (0 for the top-level code). */
+    public final int level;
+
+    /** Number of parameters, which are stored in the first registers. */
+    public final int params;
+
+    /** Number of registers in a frame of this function. */
+    public final int registers;
+
+    public final int[] code;
+
+    /** Constant pool: {@link Long}, {@link String} and {@link Boolean} values. */
+    public final Object[] constants;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Function (String name, int level, int params, int registers, int[] code, Object[] constants) {
+        this.name = name;
+        this.level = level;
+        this.params = params;
+        this.registers = registers;
+        this.code = code;
+        this.constants = constants;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString () {
+        return name;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,227 @@
+package vm;
+
+/**
+ * The instructions of the VM. Code is an {@code int[]} where each opcode is followed by its
+ * operands, whose kinds are given by {@link #OPERANDS}:
+ *
+ * <ul>
+ * <li>{@code r}: a register of the current frame</li>
+ * <li>{@code k}: an index in the constant pool of the function</li>
+ * <li>{@code t}: a jump target (index in the code)</li>
+ * <li>{@code n}: a count</li>
+ * <li>{@code f}: an index in the function table of the program</li>
+ * <li>{@code i}: the ordinal of a {@link interpreter.Builtin}</li>
+ * </ul>
+ *
+ * <p>In the descriptions below, the operands are named {@code a}, {@code b}, {@code c}, ... in
+ * order.
+ */
+public final class Opcodes
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Opcodes() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** r[a] = null (value of statements) */
+    public static final int NULL          = 0;
+    /** r[a] = None */
+    public static final int NONE          = 1;
+    /** r[a] = constants[b] */
+    public static final int CONST         = 2;
+    /** r[a] = reference to the function named constants[b] */
+    public static final int FUNCTION      = 3;
+    /** r[a] = r[b] */
+    public static final int MOVE          = 4;
+    /** r[a] = r[c] of the frame b levels up */
+    public static final int GET_UP        = 5;
+    /** r[b] of the frame a levels up = r[c] */
+    public static final int SET_UP        = 6;
+    /** r[a] = r[b] + r[c] */
+    public static final int ADD           = 7;
+    /** r[a] = r[b] - r[c] */
+    public static final int SUB           = 8;
+    /** r[a] = r[b] * r[c] */
+    public static final int MUL           = 9;
+    /** r[a] = r[b] / r[c] */
+    public static final int DIV           = 10;
+    /** r[a] = r[b] % r[c] */
+    public static final int MOD           = 11;
+    /** r[a] = r[b] or r[c] */
+    public static final int OR            = 12;
+    /** r[a] = r[b] and r[c] */
+    public static final int AND           = 13;
+    /** r[a] = r[b] == r[c] */
+    public static final int EQ            = 14;
+    /** r[a] = r[b] != r[c] */
+    public static final int NEQ           = 15;
+    /** r[a] = r[b] <= r[c] */
+    public static final int LEQ           = 16;
+    /** r[a] = r[b] >= r[c] */
+    public static final int GEQ           = 17;
+    /** r[a] = r[b] < r[c] */
+    public static final int LT            = 18;
+    /** r[a] = r[b] > r[c] */
+    public static final int GT            = 19;
+    /** r[a] = - r[b] */
+    public static final int NEG           = 20;
+    /** r[a] = not r[b] */
+    public static final int NOT           = 21;
+    /** r[a] = r[b][r[c]] */
+    public static final int GET           = 22;
+    /** checks that r[a] can be assigned into (constants[b] describes it) */
+    public static final int STORE_TARGET  = 23;
+    /** checks that r[b] is a valid index or key for r[a] */
+    public static final int STORE_KEY     = 24;
+    /** r[a][r[b]] = r[c] */
+    public static final int STORE         = 25;
+    /** jumps to a */
+    public static final int JUMP          = 26;
+    /** jumps to b if r[a] (an if condition) is false */
+    public static final int IF_FALSE      = 27;
+    /** jumps to b if r[a] (an elsif condition) is false */
+    public static final int ELSIF_FALSE   = 28;
+    /** jumps to b if r[a] (a while condition) is false */
+    public static final int WHILE_FALSE   = 29;
+    /** jumps to b if r[a] (a list comprehension filter) is false */
+    public static final int FILTER_FALSE  = 30;
+    /** r[a] = iterator over r[b], for a for loop */
+    public static final int FOR_ITER      = 31;
+    /** r[a] = iterator over r[b], for a list comprehension */
+    public static final int COMP_ITER     = 32;
+    /** r[a] = next element of iterator r[b], or jumps to c if there is none */
+    public static final int NEXT          = 33;
+    /** r[a] = new list */
+    public static final int NEW_LIST      = 34;
+    /** appends r[b] to list r[a] */
+    public static final int APPEND        = 35;
+    /** r[a] = array with the elements of list r[b] */
+    public static final int LIST_TO_ARRAY = 36;
+    /** r[a] = [r[b], ..., r[b+c-1]] */
+    public static final int ARRAY         = 37;
+    /** r[a] = [:r[b]] */
+    public static final int SIZED_ARRAY   = 38;
+    /** r[a] = {} */
+    public static final int NEW_MAP       = 39;
+    /** checks that r[a] can be used as a map key */
+    public static final int MAP_KEY       = 40;
+    /** r[a][r[b]] = r[c], for a map literal */
+    public static final int MAP_PUT       = 41;
+    /** r[a] = function b (r[c], ..., r[c+d-1]), defined in the frame e levels up */
+    public static final int CALL          = 42;
+    /** r[a] = built-in b (r[c], ..., r[c+d-1]) */
+    public static final int BUILTIN       = 43;
+    /** returns r[a] from the current function */
+    public static final int RETURN        = 44;
+    /** r[a] = r[b] in r[c] */
+    public static final int IN            = 45;
+    /** r[a] = {r[b], ..., r[b+c-1]} */
+    public static final int SET           = 46;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Names of the instructions, indexed by opcode. */
+    public static final String[] NAMES = {
+        "NULL",
+        "NONE",
+        "CONST",
+        "FUNCTION",
+        "MOVE",
+        "GET_UP",
+        "SET_UP",
+        "ADD",
+        "SUB",
+        "MUL",
+        "DIV",
+        "MOD",
+        "OR",
+        "AND",
+        "EQ",
+        "NEQ",
+        "LEQ",
+        "GEQ",
+        "LT",
+        "GT",
+        "NEG",
+        "NOT",
+        "GET",
+        "STORE_TARGET",
+        "STORE_KEY",
+        "STORE",
+        "JUMP",
+        "IF_FALSE",
+        "ELSIF_FALSE",
+        "WHILE_FALSE",
+        "FILTER_FALSE",
+        "FOR_ITER",
+        "COMP_ITER",
+        "NEXT",
+        "NEW_LIST",
+        "APPEND",
+        "LIST_TO_ARRAY",
+        "ARRAY",
+        "SIZED_ARRAY",
+        "NEW_MAP",
+        "MAP_KEY",
+        "MAP_PUT",
+        "CALL",
+        "BUILTIN",
+        "RETURN",
+        "IN",
+        "SET"
+    };
+
+    /** Kinds of the operands of each instruction, indexed by opcode. */
+    public static final String[] OPERANDS = {
+        "r",
+        "r",
+        "rk",
+        "rk",
+        "rr",
+        "rnr",
+        "nrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rrr",
+        "rr",
+        "rr",
+        "rrr",
+        "rk",
+        "rr",
+        "rrr",
+        "t",
+        "rt",
+        "rt",
+        "rt",
+        "rt",
+        "rr",
+        "rr",
+        "rrt",
+        "r",
+        "rr",
+        "rr",
+        "rrn",
+        "rr",
+        "r",
+        "r",
+        "rrr",
+        "rfrnn",
+        "rirn",
+        "r",
+        "rrr",
+        "rrn"
+    };
+
+    // ---------------------------------------------------------------------------------------------
+}
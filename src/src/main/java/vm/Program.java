@@ -0,0 +1,60 @@
+package vm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * A program compiled for the {@link VM}. The first function is the top-level code of the program.
+ *
+ * <p>Programs only contain plain data, and can be serialized with {@link #write} and
+ * {@link #read}.
+ */
+public final class Program implements Serializable
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final long serialVersionUID = 1L;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final Function[] functions;
+
+    /**
+     * Registers of the top-level code holding the values of {@code True}, {@code False},
+     * {@code None} and {@code args}, or -1 if the program doesn't use them.
+     */
+    public final int trueRegister, falseRegister, noneRegister, argsRegister;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Program (Function[] functions,
+                    int trueRegister, int falseRegister, int noneRegister, int argsRegister) {
+        this.functions = functions;
+        this.trueRegister = trueRegister;
+        this.falseRegister = falseRegister;
+        this.noneRegister = noneRegister;
+        this.argsRegister = argsRegister;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public void write (OutputStream out) throws IOException {
+        ObjectOutputStream stream = new ObjectOutputStream(out);
+        stream.writeObject(this);
+        stream.flush();
+    }
+
+    public static Program read (InputStream in) throws IOException {
+        try {
+            return (Program) new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("not a serialized program", e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,330 @@
+package vm;
+
+import Types.PolymorphArray;
+import Types.PolymorphMap;
+import interpreter.Builtin;
+import interpreter.InterpreterException;
+import interpreter.None;
+import interpreter.PassthroughException;
+import jvm.NSFunction;
+import jvm.NSRuntime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static vm.Opcodes.*;
+
+/**
+ * Runs {@link Program}s compiled by the {@link VMCompiler}.
+ *
+ * <p>The VM is a single dispatch loop over the instructions of the current function. Calls do not
+ * recurse on the Java stack: each call allocates a {@link Frame} linking back to its caller, so
+ * the depth of recursion of NS programs is only bounded by the heap.
+ */
+public final class VM
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Frame {
+        final Function function;
+        final Object[] registers;
+        /** Frame of the function in which the function of this frame is defined. */
+        final Frame link;
+        final Frame caller;
+        /** Where to resume this frame when the function it called returns. */
+        int pc;
+        /** Register to receive the value returned by the function this frame called. */
+        int result;
+
+        Frame (Function function, Frame link, Frame caller) {
+            this.function = function;
+            this.registers = new Object[function.registers];
+            this.link = link;
+            this.caller = caller;
+        }
+
+        Frame up (int levels) {
+            Frame frame = this;
+            for (int i = 0; i < levels; ++i)
+                frame = frame.link;
+            return frame;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Program program;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public VM (Program program) {
+        this.program = program;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the program with the given command line arguments, and returns the value of its last
+     * statement.
+     */
+    public Object run (String[] args)
+    {
+        try {
+            return execute(args);
+        } catch (PassthroughException e) {
+            throw NSRuntime.unwrap(e);
+        } catch (InterpreterException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InterpreterException("exception while executing program", e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @SuppressWarnings("unchecked")
+    private Object execute (String[] args)
+    {
+        Function[] functions = program.functions;
+        Frame frame = new Frame(functions[0], null, null);
+        Object[] r = frame.registers;
+
+        if (program.trueRegister  >= 0) r[program.trueRegister]  = true;
+        if (program.falseRegister >= 0) r[program.falseRegister] = false;
+        if (program.noneRegister  >= 0) r[program.noneRegister]  = None.INSTANCE;
+        if (program.argsRegister  >= 0) r[program.argsRegister]  = new PolymorphArray((Object[]) args);
+
+        int[] code = frame.function.code;
+        Object[] constants = frame.function.constants;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc]) {
+                case NULL:
+                    r[code[pc + 1]] = null;
+                    pc += 2;
+                    break;
+                case NONE:
+                    r[code[pc + 1]] = None.INSTANCE;
+                    pc += 2;
+                    break;
+                case CONST:
+                    r[code[pc + 1]] = constants[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case FUNCTION:
+                    r[code[pc + 1]] = new NSFunction((String) constants[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case MOVE:
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case GET_UP:
+                    r[code[pc + 1]] = frame.up(code[pc + 2]).registers[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case SET_UP:
+                    frame.up(code[pc + 1]).registers[code[pc + 2]] = r[code[pc + 3]];
+                    pc += 4;
+                    break;
+
+                case ADD:
+                    r[code[pc + 1]] = NSRuntime.add(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case SUB:
+                    r[code[pc + 1]] = NSRuntime.sub(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case MUL:
+                    r[code[pc + 1]] = NSRuntime.mul(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case DIV:
+                    r[code[pc + 1]] = NSRuntime.div(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case MOD:
+                    r[code[pc + 1]] = NSRuntime.mod(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case OR:
+                    r[code[pc + 1]] = NSRuntime.or(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case AND:
+                    r[code[pc + 1]] = NSRuntime.and(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case EQ:
+                    r[code[pc + 1]] = NSRuntime.eq(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case NEQ:
+                    r[code[pc + 1]] = NSRuntime.neq(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case LEQ:
+                    r[code[pc + 1]] = NSRuntime.leq(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case GEQ:
+                    r[code[pc + 1]] = NSRuntime.geq(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case LT:
+                    r[code[pc + 1]] = NSRuntime.lt(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case GT:
+                    r[code[pc + 1]] = NSRuntime.gt(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case NEG:
+                    r[code[pc + 1]] = NSRuntime.negate(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case NOT:
+                    r[code[pc + 1]] = NSRuntime.not(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+
+                case GET:
+                    r[code[pc + 1]] = NSRuntime.get(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case IN:
+                    r[code[pc + 1]] = NSRuntime.in(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case STORE_TARGET:
+                    NSRuntime.storeTarget(r[code[pc + 1]], (String) constants[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case STORE_KEY:
+                    NSRuntime.storeKey(r[code[pc + 1]], r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case STORE:
+                    NSRuntime.store(r[code[pc + 1]], r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case IF_FALSE:
+                    pc = NSRuntime.ifCondition(r[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                    break;
+                case ELSIF_FALSE:
+                    pc = NSRuntime.elsifCondition(r[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                    break;
+                case WHILE_FALSE:
+                    pc = NSRuntime.whileCondition(r[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                    break;
+                case FILTER_FALSE:
+                    pc = NSRuntime.filterCondition(r[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                    break;
+
+                case FOR_ITER:
+                    r[code[pc + 1]] = NSRuntime.forIterator(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case COMP_ITER:
+                    r[code[pc + 1]] = NSRuntime.comprehensionIterator(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case NEXT: {
+                    Iterator<Object> iterator = (Iterator<Object>) r[code[pc + 2]];
+                    if (iterator.hasNext()) {
+                        r[code[pc + 1]] = iterator.next();
+                        pc += 4;
+                    } else {
+                        pc = code[pc + 3];
+                    }
+                    break;
+                }
+                case NEW_LIST:
+                    r[code[pc + 1]] = new ArrayList<>();
+                    pc += 2;
+                    break;
+                case APPEND:
+                    ((ArrayList<Object>) r[code[pc + 1]]).add(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case LIST_TO_ARRAY:
+                    r[code[pc + 1]] = NSRuntime.toArray((ArrayList<Object>) r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case ARRAY: {
+                    int base = code[pc + 2];
+                    r[code[pc + 1]] = new PolymorphArray(Arrays.copyOfRange(r, base, base + code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case SET: {
+                    int base = code[pc + 2];
+                    r[code[pc + 1]] = NSRuntime.set(Arrays.copyOfRange(r, base, base + code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case SIZED_ARRAY:
+                    r[code[pc + 1]] = NSRuntime.sizedArray(r[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case NEW_MAP:
+                    r[code[pc + 1]] = new PolymorphMap();
+                    pc += 2;
+                    break;
+                case MAP_KEY:
+                    NSRuntime.mapKey(r[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case MAP_PUT:
+                    ((PolymorphMap) r[code[pc + 1]]).put(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+
+                case CALL: {
+                    Function callee = functions[code[pc + 2]];
+                    Frame next = new Frame(callee, frame.up(code[pc + 5]), frame);
+                    System.arraycopy(r, code[pc + 3], next.registers, 0, code[pc + 4]);
+                    frame.result = code[pc + 1];
+                    frame.pc = pc + 6;
+                    frame = next;
+                    r = next.registers;
+                    code = callee.code;
+                    constants = callee.constants;
+                    pc = 0;
+                    break;
+                }
+                case BUILTIN: {
+                    int base = code[pc + 3];
+                    Object[] values = Arrays.copyOfRange(r, base, base + code[pc + 4]);
+                    r[code[pc + 1]] = Builtin.values()[code[pc + 2]].call(values);
+                    pc += 5;
+                    break;
+                }
+                case RETURN: {
+                    Object value = r[code[pc + 1]];
+                    frame = frame.caller;
+                    if (frame == null)
+                        return value;
+                    r = frame.registers;
+                    r[frame.result] = value;
+                    code = frame.function.code;
+                    constants = frame.function.constants;
+                    pc = frame.pc;
+                    break;
+                }
+
+                default:
+                    throw new Error("Unknown opcode " + code[pc] + " at " + pc + " in " + frame.function);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,614 @@
+package vm;
+
+import ast.*;
+import interpreter.Builtin;
+import interpreter.Linker;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import scopes.RootScope;
+import scopes.Scope;
+import scopes.SyntheticDeclarationNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+import static vm.Opcodes.*;
+
+/**
+ * Compiles an analysed AST into a {@link Program} for the {@link VM}.
+ *
+ * <p>Each function (and the top-level code) gets a register file holding all the variables it
+ * declares, in all its nested scopes, followed by temporaries. Parameters occupy the first
+ * registers. Variables of enclosing functions are accessed through the static link of frames,
+ * a fixed number of levels up.
+ *
+ * <p>Every expression is compiled so that its destination register is only written by its last
+ * instruction, which lets assignments target the register of the assigned variable directly.
+ */
+public final class VMCompiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** A function being compiled, or the top-level code if {@code node} is null. */
+    private static final class Unit {
+        final FunctionDefinitionNode node;
+        final Unit outer;
+        final int level;
+        final int index;
+        int variables;
+
+        int[] code = new int[64];
+        int size;
+        final List<Object> constants = new ArrayList<>();
+        final HashMap<Object, Integer> constantIndices = new HashMap<>();
+        int top;
+        int registers;
+
+        Unit (FunctionDefinitionNode node, Unit outer, int index) {
+            this.node = node;
+            this.outer = outer;
+            this.level = outer == null ? 0 : outer.level + 1;
+            this.index = index;
+        }
+    }
+
+    /** A variable: the register it occupies in the frames of the function that declares it. */
+    private static final class Variable {
+        final Unit owner;
+        final int register;
+
+        Variable (Unit owner, int register) {
+            this.owner = owner;
+            this.register = register;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final IdentityHashMap<Scope, Variable[]> variables = new IdentityHashMap<>();
+    private final IdentityHashMap<FunctionDefinitionNode, Unit> units = new IdentityHashMap<>();
+    private final List<Unit> order = new ArrayList<>();
+
+    private RootNode root;
+
+    /** The unit being compiled. */
+    private Unit unit;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private VMCompiler () {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given tree, which must have been analysed without errors by {@code reactor}.
+     */
+    public static Program compile (Reactor reactor, RootNode root)
+    {
+        Linker.link(reactor, root);
+        VMCompiler compiler = new VMCompiler();
+        compiler.root = root;
+        compiler.allocate(root);
+
+        Function[] functions = new Function[compiler.order.size()];
+        for (Unit unit : compiler.order)
+            functions[unit.index] = compiler.generate(unit);
+
+        RootScope scope = (RootScope) root.scope;
+        return new Program(functions,
+            compiler.register(scope, scope._true),
+            compiler.register(scope, scope._false),
+            compiler.register(scope, scope._none),
+            compiler.register(scope, scope._args));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // REGISTER ALLOCATION
+
+    /**
+     * Assigns a register to every variable, in the function that declares it.
+     */
+    private void allocate (RootNode root)
+    {
+        unit = unit(null);
+        ReflectiveFieldWalker<ASTNode> walker = new ReflectiveFieldWalker<>(
+            ASTNode.class, PRE_VISIT, POST_VISIT);
+
+        walker.register(FunctionDefinitionNode.class, PRE_VISIT, n -> {
+            unit = unit(n);
+            if (n.args != null)
+                for (ParameterNode param : n.args)
+                    variable(param.param);
+        });
+        walker.register(FunctionDefinitionNode.class, POST_VISIT, n -> unit = unit.outer);
+        walker.register(IdentifierNode.class, PRE_VISIT, n -> {
+            if (n.slot >= 0) variable(n);
+        });
+        walker.registerFallback(PRE_VISIT,  node -> {});
+        walker.registerFallback(POST_VISIT, node -> {});
+        walker.walk(root);
+    }
+
+    private Unit unit (FunctionDefinitionNode node)
+    {
+        Unit unit = new Unit(node, this.unit, order.size());
+        order.add(unit);
+        if (node != null)
+            units.put(node, unit);
+        return unit;
+    }
+
+    private Variable variable (IdentifierNode node)
+    {
+        Variable[] slots = variables.computeIfAbsent(node.context.scope, s -> new Variable[s.size()]);
+        if (slots[node.slot] == null) {
+            Unit owner = owner(node.context.scope);
+            slots[node.slot] = new Variable(owner, owner.variables++);
+        }
+        return slots[node.slot];
+    }
+
+    private Unit owner (Scope scope)
+    {
+        for (; scope != null; scope = scope.parent)
+            if (scope.node instanceof FunctionDefinitionNode)
+                return units.get(scope.node);
+        return order.get(0);
+    }
+
+    private int register (RootScope scope, SyntheticDeclarationNode decl) {
+        Variable[] slots = variables.get(scope);
+        Variable v = slots == null ? null : slots[scope.slot(decl.name())];
+        return v == null ? -1 : v.register;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // EMISSION
+
+    private void emit (int... words)
+    {
+        if (unit.size + words.length > unit.code.length)
+            unit.code = Arrays.copyOf(unit.code, Math.max(unit.code.length * 2, unit.size + words.length));
+        System.arraycopy(words, 0, unit.code, unit.size, words.length);
+        unit.size += words.length;
+    }
+
+    /** Returns the current position in the code, to be used as a jump target. */
+    private int here () {
+        return unit.size;
+    }
+
+    /** Sets the jump target stored at the given position to the current position. */
+    private void patch (int position) {
+        unit.code[position] = unit.size;
+    }
+
+    private int constant (Object value) {
+        return unit.constantIndices.computeIfAbsent(value, v -> {
+            unit.constants.add(v);
+            return unit.constants.size() - 1;
+        });
+    }
+
+    private int temp () {
+        int register = unit.top++;
+        unit.registers = Math.max(unit.registers, unit.top);
+        return register;
+    }
+
+    private int hops (Unit owner) {
+        return unit.level - owner.level;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // FUNCTIONS
+
+    private Function generate (Unit unit)
+    {
+        this.unit = unit;
+        unit.top = unit.variables;
+        unit.registers = unit.variables;
+
+        if (unit.node == null) {
+            List<ASTNode> statements = root.block.statements;
+            for (int i = 0; i < statements.size() - 1; ++i)
+                statement(statements.get(i));
+            int result = temp();
+            if (statements.isEmpty())
+                emit(NULL, result);
+            else
+                expression(statements.get(statements.size() - 1), result);
+            emit(RETURN, result);
+        } else {
+            block(unit.node.block);
+            int result = temp();
+            emit(NONE, result);
+            emit(RETURN, result);
+        }
+
+        String name = unit.node == null ? "<main>" : unit.node.name.value;
+        int params = unit.node == null || unit.node.args == null ? 0 : unit.node.args.size();
+        return new Function(name, unit.level, params, unit.registers,
+            Arrays.copyOf(unit.code, unit.size), unit.constants.toArray());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // VARIABLES
+
+    /** Emits code loading the variable into the given register. */
+    private void load (Variable v, int target)
+    {
+        if (v.owner != unit)
+            emit(GET_UP, target, hops(v.owner), v.register);
+        else if (v.register != target)
+            emit(MOVE, target, v.register);
+    }
+
+    /**
+     * Returns the register holding the value of the given node, which is the register of the
+     * variable if the node is a variable of the current function, or a new temporary otherwise.
+     */
+    private int operand (ASTNode node)
+    {
+        if (node instanceof IdentifierNode && ((IdentifierNode) node).slot >= 0) {
+            Variable v = variable((IdentifierNode) node);
+            if (v.owner == unit) return v.register;
+        }
+        int register = temp();
+        expression(node, register);
+        return register;
+    }
+
+    /** Whether evaluating the node cannot change the value of any variable. */
+    private static boolean simple (ASTNode node) {
+        return node instanceof IdentifierNode
+            || node instanceof IntegerNode
+            || node instanceof StringNode
+            || node instanceof BoolNode
+            || node instanceof NoneNode;
+    }
+
+    /** Emits code assigning the value of the node to the variable. */
+    private void assign (Variable v, ASTNode value)
+    {
+        if (v.owner == unit) {
+            expression(value, v.register);
+        } else {
+            int top = unit.top;
+            int register = temp();
+            expression(value, register);
+            emit(SET_UP, hops(v.owner), v.register, register);
+            unit.top = top;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // STATEMENTS
+
+    private void block (BlockNode node) {
+        for (ASTNode statement : node.statements)
+            statement(statement);
+    }
+
+    private void statement (ASTNode node)
+    {
+        int top = unit.top;
+
+        if (node instanceof VarAssignmentNode)
+            assignment((VarAssignmentNode) node);
+        else if (node instanceof IfNode)
+            if_((IfNode) node);
+        else if (node instanceof WhileNode)
+            while_((WhileNode) node);
+        else if (node instanceof ForNode)
+            for_((ForNode) node);
+        else if (node instanceof BlockNode)
+            block((BlockNode) node);
+        else if (node instanceof UnaryNode && ((UnaryNode) node).code == UnaryNode.RETURN)
+            return_((UnaryNode) node);
+        else if (!(node instanceof FunctionDefinitionNode))
+            expression(node, temp());
+
+        unit.top = top;
+    }
+
+    private void assignment (VarAssignmentNode node)
+    {
+        if (node.left instanceof IdentifierNode) {
+            assign(variable((IdentifierNode) node.left), node.right);
+            return;
+        }
+
+        if (node.left instanceof BinaryNode && ((BinaryNode) node.left).code == BinaryNode.IDX_ACCESS) {
+            BinaryNode access = (BinaryNode) node.left;
+            int target = temp();
+            expression(access.left, target);
+            emit(STORE_TARGET, target, constant(node.left.toString()));
+            int key = temp();
+            expression(access.right, key);
+            emit(STORE_KEY, target, key);
+            int value = operand(node.right);
+            emit(STORE, target, key, value);
+            return;
+        }
+
+        throw new Error("Should not get here");
+    }
+
+    private void if_ (IfNode node)
+    {
+        List<Integer> ends = new ArrayList<>();
+
+        emit(IF_FALSE, operand(node.bool), -1);
+        int next = here() - 1;
+        block(node.block);
+        emit(JUMP, -1);
+        ends.add(here() - 1);
+
+        if (node.else_blocks != null)
+            for (ElseNode branch : node.else_blocks) {
+                patch(next);
+                next = -1;
+                if (branch.bool != null) {
+                    emit(ELSIF_FALSE, operand(branch.bool), -1);
+                    next = here() - 1;
+                }
+                block(branch.block);
+                emit(JUMP, -1);
+                ends.add(here() - 1);
+            }
+
+        if (next >= 0) patch(next);
+        ends.forEach(this::patch);
+    }
+
+    private void while_ (WhileNode node)
+    {
+        int top = unit.top;
+        int start = here();
+        emit(WHILE_FALSE, operand(node.bool), -1);
+        int exit = here() - 1;
+        unit.top = top;
+        block(node.block);
+        emit(JUMP, start);
+        patch(exit);
+    }
+
+    private void for_ (ForNode node)
+    {
+        int iterator = temp();
+        emit(FOR_ITER, iterator, operand(node.list));
+        int start = here();
+        int exit = next(variable(node.variable), iterator);
+        block(node.block);
+        emit(JUMP, start);
+        patch(exit);
+    }
+
+    /**
+     * Emits the {@link Opcodes#NEXT} instruction storing the next element of the iterator in the
+     * variable, and returns the position of its jump target.
+     */
+    private int next (Variable v, int iterator)
+    {
+        if (v.owner == unit) {
+            emit(NEXT, v.register, iterator, -1);
+            return here() - 1;
+        }
+        int register = temp();
+        emit(NEXT, register, iterator, -1);
+        int exit = here() - 1;
+        emit(SET_UP, hops(v.owner), v.register, register);
+        return exit;
+    }
+
+    private void return_ (UnaryNode node)
+    {
+        if (node.child == null) {
+            int register = temp();
+            emit(NONE, register);
+            emit(RETURN, register);
+        } else {
+            emit(RETURN, operand(node.child));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // EXPRESSIONS
+
+    /**
+     * Emits code computing the value of the node into the target register. Only the last
+     * instruction writes to the target register.
+     */
+    private void expression (ASTNode node, int target)
+    {
+        int top = unit.top;
+
+        if (node instanceof NoneNode)
+            emit(NONE, target);
+        else if (node instanceof BoolNode)
+            emit(CONST, target, constant(((BoolNode) node).value));
+        else if (node instanceof IntegerNode)
+            emit(CONST, target, constant(((IntegerNode) node).value));
+        else if (node instanceof StringNode)
+            emit(CONST, target, constant(((StringNode) node).value));
+        else if (node instanceof IdentifierNode)
+            identifier((IdentifierNode) node, target);
+        else if (node instanceof MapNode)
+            map((MapNode) node, target);
+        else if (node instanceof ArrayNode)
+            array((ArrayNode) node, target);
+        else if (node instanceof SetNode)
+            set((SetNode) node, target);
+        else if (node instanceof ListComprehensionNode)
+            listComprehension((ListComprehensionNode) node, target);
+        else if (node instanceof UnaryNode && ((UnaryNode) node).code != UnaryNode.RETURN)
+            unary((UnaryNode) node, target);
+        else if (node instanceof BinaryNode)
+            binary((BinaryNode) node, target);
+        else if (node instanceof FunctionCallNode)
+            functionCall((FunctionCallNode) node, target);
+        else if (node instanceof VarAssignmentNode && ((VarAssignmentNode) node).left instanceof IdentifierNode) {
+            IdentifierNode left = (IdentifierNode) ((VarAssignmentNode) node).left;
+            statement(node);
+            load(variable(left), target);
+        } else {
+            statement(node);
+            emit(NULL, target);
+        }
+
+        unit.top = top;
+    }
+
+    private void identifier (IdentifierNode node, int target)
+    {
+        if (node.slot >= 0) {
+            load(variable(node), target);
+            return;
+        }
+
+        Object decl = node.context.declaration;
+        String name = decl instanceof FunctionDefinitionNode
+            ? ((FunctionDefinitionNode) decl).name.value
+            : ((SyntheticDeclarationNode) decl).name();
+        emit(FUNCTION, target, constant(name));
+    }
+
+    private void map (MapNode node, int target)
+    {
+        int map = temp();
+        emit(NEW_MAP, map);
+        if (node.elements != null)
+            for (BinaryNode pair : node.elements) {
+                int top = unit.top;
+                int key = temp();
+                expression(pair.left, key);
+                emit(MAP_KEY, key);
+                emit(MAP_PUT, map, key, operand(pair.right));
+                unit.top = top;
+            }
+        emit(MOVE, target, map);
+    }
+
+    private void array (ArrayNode node, int target)
+    {
+        if (node.elements != null) {
+            int base = unit.top;
+            for (ASTNode element : node.elements)
+                expression(element, temp());
+            emit(ARRAY, target, base, node.elements.size());
+        } else if (node.size != null) {
+            emit(SIZED_ARRAY, target, operand(node.size));
+        } else {
+            throw new Error("Should not get here");
+        }
+    }
+
+    private void set (SetNode node, int target)
+    {
+        int base = unit.top;
+        for (ASTNode element : node.elements)
+            expression(element, temp());
+        emit(SET, target, base, node.elements.size());
+    }
+
+    private void listComprehension (ListComprehensionNode node, int target)
+    {
+        int iterator = temp();
+        int list = temp();
+        emit(COMP_ITER, iterator, operand(node.iterable));
+        emit(NEW_LIST, list);
+
+        int start = here();
+        int exit = next(variable(node.variable), iterator);
+        int top = unit.top;
+        if (node.condition != null) {
+            emit(FILTER_FALSE, operand(node.condition), start);
+            unit.top = top;
+        }
+        emit(APPEND, list, operand(node.expression));
+        unit.top = top;
+        emit(JUMP, start);
+        patch(exit);
+        emit(LIST_TO_ARRAY, target, list);
+    }
+
+    private void unary (UnaryNode node, int target)
+    {
+        switch (node.code) {
+            case UnaryNode.NEGATION:
+                emit(NEG, target, operand(node.child));
+                break;
+            case UnaryNode.NOT:
+                emit(NOT, target, operand(node.child));
+                break;
+            default:
+                throw new Error("Should not get here");
+        }
+    }
+
+    private void binary (BinaryNode node, int target)
+    {
+        int opcode;
+        switch (node.code) {
+            case BinaryNode.ADD:        opcode = ADD; break;
+            case BinaryNode.SUB:        opcode = SUB; break;
+            case BinaryNode.MUL:        opcode = MUL; break;
+            case BinaryNode.DIV:        opcode = DIV; break;
+            case BinaryNode.MOD:        opcode = MOD; break;
+            case BinaryNode.OR:         opcode = OR;  break;
+            case BinaryNode.AND:        opcode = AND; break;
+            case BinaryNode.EQ:         opcode = EQ;  break;
+            case BinaryNode.NEQ:        opcode = NEQ; break;
+            case BinaryNode.LEQ:        opcode = LEQ; break;
+            case BinaryNode.GEQ:        opcode = GEQ; break;
+            case BinaryNode.L:          opcode = LT;  break;
+            case BinaryNode.G:          opcode = GT;  break;
+            case BinaryNode.IDX_ACCESS: opcode = GET; break;
+            case BinaryNode.IN:         opcode = IN;  break;
+            default: throw new Error("Should not get here");
+        }
+
+        // the variable holding the left operand must not be modified while evaluating the right
+        int left;
+        if (simple(node.right)) {
+            left = operand(node.left);
+        } else {
+            left = temp();
+            expression(node.left, left);
+        }
+        emit(opcode, target, left, operand(node.right));
+    }
+
+    private void functionCall (FunctionCallNode node, int target)
+    {
+        Object decl = node.functionName.context.declaration;
+        List<ASTNode> args = node.args == null ? List.of() : node.args;
+
+        int base = unit.top;
+        for (ASTNode arg : args)
+            expression(arg, temp());
+
+        if (decl instanceof SyntheticDeclarationNode) {
+            Builtin builtin = Builtin.of(((SyntheticDeclarationNode) decl).name());
+            emit(BUILTIN, target, builtin.ordinal(), base, args.size());
+            return;
+        }
+
+        if (decl instanceof FunctionDefinitionNode) {
+            Unit callee = units.get(decl);
+            emit(CALL, target, callee.index, base, args.size(), hops(callee.outer));
+            return;
+        }
+
+        // semantic analysis only allows calls to functions and built-ins
+        throw new Error("Should not get here");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,15 @@
+import ast.ASTNode;
+import ast.RootNode;
+import compiler.Compiler;
+import norswap.uranium.Reactor;
+
+/**
+ * Runs the interpreter tests on the closure-compiled engine.
+ */
+public class ClosureEngineUnitTests extends InterpreterUnitTests {
+
+    @Override
+    protected Object execute (Reactor reactor, ASTNode tree) {
+        return Compiler.compile(reactor, (RootNode) tree).run(new String[0]);
+    }
+}
@@ -1,7 +1,9 @@
 import Types.PolymorphArray;
 import Types.PolymorphMap;
+import Types.PolymorphSet;
 import ast.ASTNode;
-import interpreter.Interpreter;
+import ast.RootNode;
+import interpreter.AstProgram;
 import interpreter.None;
 import norswap.autumn.AutumnTestFixture;
 import norswap.utils.TestFixture;
@@ -11,13 +13,17 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class InterpreterUnitTests extends TestFixture {
 
     private ASTNode tree;
     private Reactor reactor;
-    private Interpreter interpreter;
 
     private final NSParser grammar = new NSParser();
     private final AutumnTestFixture autumnFixture = new AutumnTestFixture();
@@ -41,6 +47,14 @@ public class InterpreterUnitTests extends TestFixture {
         return autumnFixture.success(input).topValue();
     }
 
+    /**
+     * Runs the analysed tree and returns its value. Overridden to run the same tests on other
+     * execution engines.
+     */
+    protected Object execute (Reactor reactor, ASTNode tree) {
+        return AstProgram.link(reactor, (RootNode) tree).run(new String[0]);
+    }
+
 
     protected void successExpect(String input, Object expected) {
         tree = (ASTNode) parse(input);
@@ -50,8 +64,7 @@ public class InterpreterUnitTests extends TestFixture {
         assertTrue(reactor.errors().isEmpty(), "Semantic analysis failed: "+reactor.reportErrors(Object::toString));
 
 
-        interpreter = new Interpreter(reactor, new String[0]);
-        Object result = interpreter.interpret(tree);
+        Object result = execute(reactor, tree);
         assertEquals(result, expected, 1, () -> "");
     }
 
@@ -62,15 +75,34 @@ public class InterpreterUnitTests extends TestFixture {
         reactor.run();
         assertTrue(reactor.errors().isEmpty(), "Semantic analysis failed: "+reactor.reportErrors(Object::toString));
 
-        interpreter = new Interpreter(reactor, new String[0]);
-
         try {
-            interpreter.interpret(tree);
+            execute(reactor, tree);
             throw new RuntimeException("Interpretation succeeded when it was expected to fail");
         } catch (RuntimeException ignored) { }
     }
 
 
+    /**
+     * Checks that the tree-walking interpreter fails to run the program, which passes semantic
+     * analysis.
+     */
+    private void parallelFailure(String input) {
+        tree = (ASTNode) parse(input);
+        reactor = new Reactor();
+        configureSemanticAnalysis(reactor, tree);
+        reactor.run();
+        assertTrue(reactor.errors().isEmpty(), "Semantic analysis failed: "+reactor.reportErrors(Object::toString));
+
+        boolean failed = false;
+        try {
+            AstProgram.link(reactor, (RootNode) tree).run(new String[0]);
+        } catch (RuntimeException e) {
+            failed = true;
+        }
+        assertTrue(failed, "Interpretation succeeded when it was expected to fail");
+    }
+
+
     /*******************************************
                         TESTS
      *******************************************/
@@ -115,6 +147,34 @@ public class InterpreterUnitTests extends TestFixture {
         successExpect("a = None\na", None.INSTANCE);
 
         successExpect("a = True\na", true);
+
+        // variables shadow the built-in functions they are named after
+        successExpect("len = 3\nlen", (long) 3);
+
+        successExpect("set = 3\n" +
+                            "get = 4\n" +
+                            "set + get", (long) 7);
+
+        successExpect("def f(x):\n" +
+                            "  len = x\n" +
+                            "  return len\n" +
+                            "end\n" +
+                            "[f(2), len([1])]", new PolymorphArray((long) 2, (long) 1));
+
+        // b gets the type of a, which changes
+        successExpect("a = 1\n" +
+                            "b = a\n" +
+                            "a = \"s\"\n" +
+                            "b = a\n" +
+                            "b == 1", false);
+
+        successExpect("a = 1\n" +
+                            "b = a\n" +
+                            "c = b + 1\n" +
+                            "a = \"s\"\n" +
+                            "b = a\n" +
+                            "c = b\n" +
+                            "[c == 2, c]", new PolymorphArray(false, "s"));
     }
 
     // COLLECTIONS
@@ -148,6 +208,38 @@ public class InterpreterUnitTests extends TestFixture {
 
         successExpect("[:4]", new PolymorphArray(None.INSTANCE, None.INSTANCE, None.INSTANCE, None.INSTANCE));
 
+        // the store of sized arrays is picked on their first write
+        successExpect("a = [:4]\n" +
+                            "a[0] = 1\n" +
+                            "a[1] = 2\n" +
+                            "a", new PolymorphArray((long) 1, (long) 2, None.INSTANCE, None.INSTANCE));
+
+        successExpect("a = [:4]\n" +
+                            "a[0] = \"yo\"\n" +
+                            "a[2] = \"ya\"\n" +
+                            "a[1] = 3\n" +
+                            "a", new PolymorphArray("yo", (long) 3, "ya", None.INSTANCE));
+
+        successExpect("a = [:3]\n" +
+                            "a[0] = True\n" +
+                            "b = slice(a, 0, 2)\n" +
+                            "b[1] = False\n" +
+                            "append(a, 5)\n" +
+                            "[a, b, pop(b), b]", new PolymorphArray(
+                                new PolymorphArray(true, None.INSTANCE, None.INSTANCE, (long) 5),
+                                new PolymorphArray(true),
+                                false,
+                                new PolymorphArray(true)));
+
+        successExpect("a = range(3)\n" +
+                            "a[1] = \"yo\"\n" +
+                            "a[2] = 5\n" +
+                            "a", new PolymorphArray((long) 0, "yo", (long) 5));
+
+        successExpect("a = [True, False]\n" +
+                            "a[0] = None\n" +
+                            "a", new PolymorphArray(None.INSTANCE, false));
+
         failure("def f(x):\n" +
                       "  return None\n" +
                       "end\n" +
@@ -195,10 +287,24 @@ public class InterpreterUnitTests extends TestFixture {
         successExpect("a = 5\n" +
                             "range(a)", new PolymorphArray((long) 0, (long) 1, (long) 2, (long) 3, (long) 4));
 
+        successExpect("range(0)", new PolymorphArray());
+
+        successExpect("a = range(3)\n" +
+                            "a[0] = 7\n" +
+                            "[a, range(3)]", new PolymorphArray(
+                                new PolymorphArray((long) 7, (long) 1, (long) 2),
+                                new PolymorphArray((long) 0, (long) 1, (long) 2)));
+
+        // ranges are not materialised
+        successExpect("a = range(1000000000)\n" +
+                            "[len(a), a[999999999]]", new PolymorphArray((long) 1000000000, (long) 999999999));
+
         failure("def f(x):\n" +
                       "  return None\n" +
                       "end\n" +
                       "range(f(1))");
+
+        failure("range(5000000000)");
     }
 
     @Test
@@ -206,6 +312,23 @@ public class InterpreterUnitTests extends TestFixture {
         successExpect("a = {1: 3, \"yo\":None}\n" +
                             "indexer(a)", new PolymorphArray((long) 1, "yo"));
 
+        // keys are in insertion order
+        successExpect("a = {3: 1, \"yo\": 2, True: 3, 1: 4}\n" +
+                            "a[\"hey\"] = 5\n" +
+                            "a[3] = 6\n" +
+                            "indexer(a)", new PolymorphArray((long) 3, "yo", true, (long) 1, "hey"));
+
+        // keys added after the call are not part of the result
+        successExpect("a = {1: 2}\n" +
+                            "for k in indexer(a):\n" +
+                            "  a[k + 1] = 0\n" +
+                            "end\n" +
+                            "[len(a), indexer(a)]", new PolymorphArray((long) 2, new PolymorphArray((long) 1, (long) 2)));
+
+        successExpect("a = indexer({\"yo\": 1, \"hey\": 2})\n" +
+                            "a[0] = 3\n" +
+                            "a", new PolymorphArray((long) 3, "hey"));
+
         successExpect("a = [1, 2, 3]\n" +
                             "indexer(a)", new PolymorphArray((long) 0, (long) 1, (long) 2));
 
@@ -223,8 +346,274 @@ public class InterpreterUnitTests extends TestFixture {
         successExpect("a = [\"a\", \"c\", \"b\"]\n" +
                             "sort(a)", new PolymorphArray("a", "b", "c"));
 
+        successExpect("a = [True, False, True, False]\n" +
+                            "sort(a)", new PolymorphArray(false, false, true, true));
+
+        successExpect("a = range(3)\n" +
+                            "b = sort(a)\n" +
+                            "a[0] = \"yo\"\n" +
+                            "b", new PolymorphArray((long) 0, (long) 1, (long) 2));
+
         failure("a = [1, \"yo\"]\n" +
                       "sort(a)");
+
+        successExpect("a = [3, 1, 2]\n" +
+                            "b = sort_in_place(a)\n" +
+                            "b[0] = 0\n" +
+                            "a", new PolymorphArray((long) 0, (long) 2, (long) 3));
+
+        // sort() leaves the original alone, even though the copy shares its store until sorted
+        successExpect("a = [\"c\", \"a\", \"b\"]\n" +
+                            "b = sort(a)\n" +
+                            "a[0] = \"d\"\n" +
+                            "[a, b]", new PolymorphArray(new PolymorphArray("d", "a", "b"), new PolymorphArray("a", "b", "c")));
+
+        failure("a = [1, \"yo\"]\n" +
+                      "sort_in_place(a)");
+    }
+
+    @Test
+    public void testAppendPop() {
+        successExpect("a = [1]\n" +
+                            "for i in range(10):\n" +
+                            "  append(a, i)\n" +
+                            "end\n" +
+                            "[len(a), pop(a) + pop(a), a[0], len(a)]", new PolymorphArray((long) 11, (long) 17, (long) 1, (long) 9));
+
+        successExpect("a = range(2)\n" +
+                            "append(a, \"yo\")\n" +
+                            "a", new PolymorphArray((long) 0, (long) 1, "yo"));
+
+        successExpect("a = [:0]\n" +
+                            "append(a, True)\n" +
+                            "append(a, False)\n" +
+                            "[pop(a), a]", new PolymorphArray(false, new PolymorphArray(true)));
+
+        // appended elements are part of the iteration
+        successExpect("a = [1, 2]\n" +
+                            "b = 0\n" +
+                            "for x in a:\n" +
+                            "  if x < 4:\n" +
+                            "    append(a, x + 2)\n" +
+                            "  end\n" +
+                            "  b = b + x\n" +
+                            "end\n" +
+                            "b", (long) 1 + 2 + 3 + 4 + 5);
+
+        failure("a = [:0]\n" +
+                      "pop(a)");
+        failure("def f(x):\n" +
+                      "  return None\n" +
+                      "end\n" +
+                      "append(f(1), 3)");
+    }
+
+    @Test
+    public void testSlice() {
+        successExpect("slice([1, 2, 3, 4], 1, 3)", new PolymorphArray((long) 2, (long) 3));
+        successExpect("slice(range(10), 7, 10)", new PolymorphArray((long) 7, (long) 8, (long) 9));
+        successExpect("slice([1, 2], 1, 1)", new PolymorphArray());
+
+        // slices and their array do not see each other's writes
+        successExpect("a = [\"a\", \"b\", \"c\"]\n" +
+                            "b = slice(a, 1, 3)\n" +
+                            "b[0] = 1\n" +
+                            "a[2] = \"d\"\n" +
+                            "append(b, \"e\")\n" +
+                            "[a, b]", new PolymorphArray(new PolymorphArray("a", "b", "d"), new PolymorphArray((long) 1, "c", "e")));
+
+        failure("slice([1, 2], 1, 3)");
+        failure("slice([1, 2], 2, 1)");
+    }
+
+    @Test
+    public void testSet() {
+        PolymorphSet set = new PolymorphSet();
+        set.add((long) 1);
+        set.add("a");
+        set.add(true);
+        successExpect("{1, \"a\", True, 1}", set);
+        successExpect("[2 in {1, 2}, 3 in {1, 2}, \"a\" in {1}]", new PolymorphArray(true, false, false));
+
+        set.add((long) 2);
+        successExpect("s = set([1, \"a\", 1])\n" +
+                            "add(s, True)\n" +
+                            "add(s, 2)\n" +
+                            "add(s, \"a\")\n" +
+                            "s", set);
+        successExpect("len({3, 3, 4})", (long) 2);
+        successExpect("indexer({3, 1, 3, 2})", new PolymorphArray((long) 3, (long) 1, (long) 2));
+
+        failure("def f(x):\n" +
+                      "  return None\n" +
+                      "end\n" +
+                      "1 in f(1)");
+        failure("def f(x):\n" +
+                      "  return [x]\n" +
+                      "end\n" +
+                      "{f(1)}");
+    }
+
+    @Test
+    public void testParallelComprehension() {
+        Object[] squares = new Object[3000];
+        for (int i = 0; i < squares.length; ++i)
+            squares[i] = (long) i * i;
+        successExpect("def square(x):\n" +
+                            "  return x * x\n" +
+                            "end\n" +
+                            "[square(x) for x in range(3000)]", new PolymorphArray(squares));
+
+        successExpect("a = [[y for y in range(x % 3)] for x in range(3000) if x % 2 == 0]\n" +
+                            "[len(a), a[1000], a[1001]]",
+                      new PolymorphArray((long) 1500, new PolymorphArray((long) 0, (long) 1), new PolymorphArray((long) 0)));
+
+        // impure comprehensions are evaluated in order
+        successExpect("a = [:0]\n" +
+                            "b = [append(a, x) for x in range(3000)]\n" +
+                            "slice(a, 2997, 3000)", new PolymorphArray((long) 2997, (long) 2998, (long) 2999));
+
+        failure("def f(x):\n" +
+                      "  if x == 2500:\n" +
+                      "    return None\n" +
+                      "  end\n" +
+                      "  return x\n" +
+                      "end\n" +
+                      "[f(x) + 1 for x in range(3000)]");
+    }
+
+    @Test
+    public void testPfor() {
+        successExpect("total = 0\n" +
+                            "all = True\n" +
+                            "pfor i in range(3000):\n" +
+                            "  total = total + i\n" +
+                            "  all = all and i < 3000\n" +
+                            "end\n" +
+                            "[total, all]", new PolymorphArray((long) 4498500, true));
+
+        successExpect("m = {}\n" +
+                            "pfor i in range(3000):\n" +
+                            "  m[i % 7] = i % 7\n" +
+                            "end\n" +
+                            "[len(m), m[3]]", new PolymorphArray((long) 7, (long) 3));
+
+        // nested loops run sequentially within an iteration of the outer one
+        successExpect("total = 1\n" +
+                            "pfor i in range(100):\n" +
+                            "  pfor j in range(3):\n" +
+                            "    total = total + j\n" +
+                            "  end\n" +
+                            "end\n" +
+                            "total", (long) 301);
+
+        failure("def f(x):\n" +
+                      "  return None\n" +
+                      "end\n" +
+                      "total = 0\n" +
+                      "pfor i in range(3000):\n" +
+                      "  total = total + f(i)\n" +
+                      "end");
+
+        // functions may modify the collections they allocate, and maps
+        successExpect("def f(n):\n" +
+                            "  r = [:1]\n" +
+                            "  r[0] = n\n" +
+                            "  append(r, n)\n" +
+                            "  return r\n" +
+                            "end\n" +
+                            "def put(m, k):\n" +
+                            "  m[k] = k\n" +
+                            "end\n" +
+                            "m = {}\n" +
+                            "total = 0\n" +
+                            "pfor i in range(3000):\n" +
+                            "  a = f(i)\n" +
+                            "  total = total + (a[0] + a[1])\n" +
+                            "  put(m, i % 7)\n" +
+                            "end\n" +
+                            "[total, len(m)]", new PolymorphArray((long) 8997000, (long) 7));
+    }
+
+    @Test
+    public void testPforSharedArrays() {
+        // only the tree-walking interpreter runs the iterations of pfor loops concurrently
+        parallelFailure("a = range(3000)\n" +
+                        "def f(b, i):\n" +
+                        "  b[i] = \"x\"\n" +
+                        "end\n" +
+                        "pfor i in range(3000):\n" +
+                        "  f(a, i)\n" +
+                        "end");
+
+        parallelFailure("a = range(3000)\n" +
+                        "def f(x):\n" +
+                        "  return a\n" +
+                        "end\n" +
+                        "pfor i in range(3000):\n" +
+                        "  b = f(i)\n" +
+                        "  b[i] = \"x\"\n" +
+                        "end");
+
+        parallelFailure("a = [:0]\n" +
+                        "def f(b):\n" +
+                        "  append(b, 1)\n" +
+                        "end\n" +
+                        "pfor i in range(3000):\n" +
+                        "  f(a)\n" +
+                        "end");
+    }
+
+    @Test
+    public void testConcurrentRuns() throws Exception {
+        // always runs on the tree-walking interpreter, whose programs can be shared between threads
+        ASTNode tree = (ASTNode) parse("def fib(n):\n" +
+                                       "  if n < 2:\n" +
+                                       "    return n\n" +
+                                       "  end\n" +
+                                       "  return fib(n - 1) + fib(n - 2)\n" +
+                                       "end\n" +
+                                       "a = [:0]\n" +
+                                       "for i in range(int(args[0])):\n" +
+                                       "  append(a, fib(i))\n" +
+                                       "end\n" +
+                                       "a");
+        Reactor reactor = new Reactor();
+        configureSemanticAnalysis(reactor, tree);
+        reactor.run();
+        assertTrue(reactor.errors().isEmpty(), "Semantic analysis failed: "+reactor.reportErrors(Object::toString));
+        AstProgram program = AstProgram.link(reactor, (RootNode) tree);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                String[] args = { String.valueOf(10 + i % 8) };
+                results.add(executor.submit(() -> program.run(args)));
+            }
+            for (int i = 0; i < 64; ++i) {
+                Object[] fibs = new Object[10 + i % 8];
+                for (int j = 0; j < fibs.length; ++j)
+                    fibs[j] = j < 2 ? (long) j : (long) fibs[j - 1] + (long) fibs[j - 2];
+                assertEquals(results.get(i).get(), new PolymorphArray(fibs), 1, () -> "");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMapLookup() {
+        successExpect("m = {1: 2, \"a\": None}\n" +
+                            "[1 in m, \"a\" in m, 2 in m, True in m]", new PolymorphArray(true, true, false, false));
+        successExpect("get({1: 2, 3: 4}, 3, 0)", (long) 4);
+        successExpect("get({1: 2}, \"a\", 0)", (long) 0);
+        successExpect("get({1: 2}, [1], None)", None.INSTANCE);
+
+        failure("def f(x):\n" +
+                      "  return None\n" +
+                      "end\n" +
+                      "get(f(1), 1, 2)");
     }
 
     @Test
@@ -254,7 +643,7 @@ public class InterpreterUnitTests extends TestFixture {
         expected += "1\n";
 
         successExpect("println({1:3, True:None, \"yo\": [1, None, False]})", None.INSTANCE);
-        expected += "{1: 3, \"yo\": [1, None, False], True: None}\n";
+        expected += "{1: 3, True: None, \"yo\": [1, None, False]}\n";
 
         successExpect("println({1:{2: None, 3: 5}, True:None})", None.INSTANCE);
         expected += "{1: {2: None, 3: 5}, True: None}\n";
@@ -491,6 +880,17 @@ public class InterpreterUnitTests extends TestFixture {
                 "  x = x+1\n" +
                 "end\n" +
                 "f(1) == None");
+
+        // the declared type of x no longer holds after the second assignment
+        successExpect("x = 1\n" +
+                "x = \"one\"\n" +
+                "x == 1", false);
+        successExpect("x = 1\n" +
+                "def f(y):\n" +
+                "  x = y\n" +
+                "end\n" +
+                "f(\"one\")\n" +
+                "x != 1 + 1", true);
     }
 
     @Test
@@ -517,6 +917,18 @@ public class InterpreterUnitTests extends TestFixture {
                 "  x = x+1\n" +
                 "end\n" +
                 "f(1) < 3");
+
+        // the same comparison on operands of different types
+        successExpect("def lt(a, b):\n" +
+                "  return a < b\n" +
+                "end\n" +
+                "[lt(1, 2), lt(\"b\", \"a\"), lt(3, 2), lt(\"a\", \"b\")]",
+                new PolymorphArray(true, false, false, true));
+        successExpect("def eq(a, b):\n" +
+                "  return a == b\n" +
+                "end\n" +
+                "[eq(1, 1), eq(\"x\", \"x\"), eq(1, \"1\"), eq(2, 2)]",
+                new PolymorphArray(true, true, false, true));
     }
 
     @Test
@@ -562,6 +974,13 @@ public class InterpreterUnitTests extends TestFixture {
                 "  return x or y\n" +
                 "end\n" +
                 "f(True, False)[0]");
+
+        // the same index access on arrays and maps
+        successExpect("def at(c, k):\n" +
+                "  return c[k]\n" +
+                "end\n" +
+                "[at([1, 2], 1), at({\"a\": 3}, \"a\"), at([4], 0)]",
+                new PolymorphArray((long) 2, (long) 3, (long) 4));
     }
 
     // STATEMENTS
@@ -614,6 +1033,15 @@ public class InterpreterUnitTests extends TestFixture {
 
     @Test
     public void testFor() {
+        // elements are read when the loop reaches them
+        successExpect("a = [1, 2, 3]\n" +
+                            "b = 0\n" +
+                            "for x in a:\n" +
+                            "  a[2] = 10\n" +
+                            "  b = b + x\n" +
+                            "end\n" +
+                            "b", (long) 13);
+
         successExpect("b = 1\n" +
                             "for a in [{1:2, 3:4}, \"yo\", 2]:\n" +
                             "  b = a\n" +
@@ -630,7 +1058,7 @@ public class InterpreterUnitTests extends TestFixture {
                             "for a in indexer({\"yo\":2, 3:4}):\n" +
                             "  b = a\n" +
                             "end\n" +
-                            "b", "yo");
+                            "b", (long) 3);
 
         failure("def f(x):\n" +
                 "  return None\n" +
@@ -670,6 +1098,14 @@ public class InterpreterUnitTests extends TestFixture {
 
     @Test
     public void testFunction() {
+        // functions shadow the built-in functions they are named after
+        successExpect("s = set([1])\n" +
+                            "add(s, 2)\n" +
+                            "def add(a, b):\n" +
+                            "  return a + b\n" +
+                            "end\n" +
+                            "[add(1, 2), len(s)]", new PolymorphArray((long) 3, (long) 2));
+
         successExpect("def f(x):\n" +
                 "  return x + 2\n" +
                 "end\n" +
@@ -704,5 +1140,80 @@ public class InterpreterUnitTests extends TestFixture {
                             "  return \"nope\"\n" +
                             "end\n" +
                             "f(not False, \"yep\")", "yep");
+
+        // returns from within loops
+        successExpect("def find(a, x):\n" +
+                            "  for i in indexer(a):\n" +
+                            "    if a[i] == x:\n" +
+                            "      return i\n" +
+                            "    end\n" +
+                            "  end\n" +
+                            "  return -1\n" +
+                            "end\n" +
+                            "[find([3, 5, 7], 5), find([3], 4)]", new PolymorphArray((long) 1, (long) -1));
+        successExpect("def count(n):\n" +
+                            "  i = 0\n" +
+                            "  while True:\n" +
+                            "    i = i + 1\n" +
+                            "    if i == n:\n" +
+                            "      return i\n" +
+                            "    end\n" +
+                            "  end\n" +
+                            "end\n" +
+                            "count(4)", (long) 4);
+
+        // tail calls
+        successExpect("def sum(n, acc):\n" +
+                            "  if n == 0:\n" +
+                            "    return acc\n" +
+                            "  end\n" +
+                            "  return sum(n - 1, acc + n)\n" +
+                            "end\n" +
+                            "sum(10, 0)", (long) 55);
+        successExpect("def f(x):\n" +
+                            "  def g(y):\n" +
+                            "    return x + y\n" +
+                            "  end\n" +
+                            "  return g(2)\n" +
+                            "end\n" +
+                            "f(1) + f(3)", (long) 8);
+    }
+
+    @Test
+    public void testScopes() {
+        successExpect("a = 1\n" +
+                "def f(x):\n" +
+                "  b = x + a\n" +
+                "  if x > 0:\n" +
+                "    c = f(x - 1)\n" +
+                "    return b + c\n" +
+                "  end\n" +
+                "  return b\n" +
+                "end\n" +
+                "f(3)", (long) 10);
+
+        successExpect("a = 1\n" +
+                "def f(x):\n" +
+                "  a = x\n" +
+                "end\n" +
+                "f(5)\n" +
+                "for i in range(3):\n" +
+                "  j = i\n" +
+                "  a = a + j\n" +
+                "end\n" +
+                "a", (long) 8);
+
+        successExpect("x = 10\n" +
+                "def f(a):\n" +
+                "  b = a * 2\n" +
+                "  def g(c):\n" +
+                "    b = b + c\n" +
+                "    return b + x\n" +
+                "  end\n" +
+                "  r = g(1)\n" +
+                "  r = g(r)\n" +
+                "  return [r, b]\n" +
+                "end\n" +
+                "f(3)", new PolymorphArray((long) 34, (long) 24));
     }
 }
@@ -0,0 +1,15 @@
+import ast.ASTNode;
+import ast.RootNode;
+import jvm.JvmProgram;
+import norswap.uranium.Reactor;
+
+/**
+ * Runs the interpreter tests on the JVM bytecode backend.
+ */
+public class JvmEngineUnitTests extends InterpreterUnitTests {
+
+    @Override
+    protected Object execute (Reactor reactor, ASTNode tree) {
+        return JvmProgram.compile(reactor, (RootNode) tree).run(new String[0]);
+    }
+}
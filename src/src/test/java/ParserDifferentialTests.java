@@ -0,0 +1,439 @@
+import ast.ASTNode;
+import ast.RootNode;
+
+import org.testng.annotations.Test;
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link NSFastParser} agrees with {@link NSParser}: both must reject the same sources
+ * and build the same trees for the others.
+ *
+ * <p>The inputs of {@link ParserUnitTests}, which are run again here, are checked as programs
+ * and within statements, while the other tests check the programs of the assets and random
+ * programs, which are then mangled to also exercise the errors.
+ */
+public class ParserDifferentialTests extends ParserUnitTests {
+
+    private static final int PROGRAMS = 2000;
+
+    @Override
+    public ParseResult success(Object input, int peel) {
+        agreeAround((String) input);
+        return super.success(input, peel);
+    }
+
+    @Override
+    public ParseResult successExpect(Object input, Object expected, int peel) {
+        agreeAround((String) input);
+        return super.successExpect(input, expected, peel);
+    }
+
+    @Override
+    public ParseResult failure(Object input, int peel) {
+        agreeAround((String) input);
+        return super.failure(input, peel);
+    }
+
+    private void agreeAround(String input) {
+        agree(input);
+        agree("x = " + input);
+        agree("f(" + input + ")\n");
+        agree("while True:\n" + input + "\nend");
+    }
+
+    private void agree(String source) {
+        ParseResult result = Autumn.parse(parser.root, source, ParseOptions.get());
+        String expected = result.fullMatch ? dump(result.topValue()) : "rejected";
+        RootNode tree = NSFastParser.parse(source);
+        String actual = tree != null ? dump(tree) : "rejected";
+        assertEquals(actual, expected, "for the source:\n%s", source);
+    }
+
+    /**
+     * Returns a representation of all the fields of the tree, as the {@code equals} methods of the
+     * nodes skip some of them.
+     */
+    private static String dump(Object value) {
+        if (value instanceof List) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Object item : (List<?>) value)
+                builder.append(dump(item)).append(", ");
+            return builder.append("]").toString();
+        }
+        if (!(value instanceof ASTNode))
+            return String.valueOf(value);
+
+        StringBuilder builder = new StringBuilder(value.getClass().getSimpleName()).append("(");
+        for (Class<?> klass = value.getClass(); klass != Object.class; klass = klass.getSuperclass()) {
+            for (Field field : klass.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()))
+                    continue;
+                try {
+                    field.setAccessible(true);
+                    builder.append(field.getName()).append("=").append(dump(field.get(value))).append(" ");
+                } catch (IllegalAccessException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        return builder.append(")").toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test
+    public void testAssets() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of("src/assets"), "*.ns")) {
+            for (Path file : files) {
+                String source = Files.readString(file);
+                assertTrue(NSFastParser.parse(source) != null);
+                agree(source);
+            }
+        }
+    }
+
+    @Test
+    public void testQuirks() {
+        // whitespace is only skipped after tokens, and not after comments
+        agree("");
+        agree(" x = 1");
+        agree("x = 1 # c\n  y = 2");
+        agree("x = 1\n# c\n# d\ny = 2");
+        agree("x = 1\t\r\n\ty = 2 #");
+        agree("x = [1, # c\n2]");
+        // integers can be followed by reserved words, but not by identifiers
+        agree("x = 12True");
+        agree("x = 12a");
+        agree("x = index + form + True_ + end1");
+        // parentheses are those of boolean operations first
+        agree("x = (a + b) * 2");
+        agree("x = (a + b) < 2");
+        agree("x = 2 * (a + b)");
+        agree("a < b == c");
+        agree("a == b < c");
+        agree("x = - - 1");
+        agree("x = 2 * -1");
+        agree("f(1,)");
+        agree("x = [1,]");
+        agree("x = {1: 2, 3: 4}[1]");
+        agree("x = \"a\"\"b\"");
+        agree("x = a <= = b");
+        agree("x = 99999999999");
+    }
+
+    @Test
+    public void testFuzzedPrograms() {
+        Random random = new Random(2132);
+        int parsed = 0;
+        for (int i = 0; i < PROGRAMS; ++i) {
+            StringBuilder program = new StringBuilder();
+            int statements = 1 + random.nextInt(4);
+            for (int j = 0; j < statements; ++j)
+                statement(program, random, 0);
+            String source = program.toString();
+
+            agree(source);
+            if (NSFastParser.parse(source) != null)
+                ++parsed;
+            for (int j = 0; j < 3; ++j)
+                agree(mangle(source, random));
+        }
+        // the generator must mostly produce valid programs, for the trees to be compared
+        assertTrue(parsed > PROGRAMS / 2, "only %d programs parse", parsed);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Random programs
+
+    private static final String[] SEPARATORS = { " ", " ", " ", "  ", "\n", "\t", "\r\n" };
+
+    private static final String[] IDENTIFIERS = {
+        "a", "b", "x_1", "_", "index", "form", "True_", "end1", "iff", "nothing", "order" };
+
+    private static final String[] OPERATORS = {
+        "+", "-", "*", "/", "%", "<", ">", "<=", ">=", "==", "!=", "and", "or", "in" };
+
+    private static final String[] DISJUNCTION    = { "or" };
+    private static final String[] CONJUNCTION    = { "and" };
+    private static final String[] EQUALITY       = { "==", "!=" };
+    private static final String[] RELATIONAL     = { "<", ">", "<=", ">=", "in" };
+    private static final String[] ADDITIVE       = { "+", "-" };
+    private static final String[] MULTIPLICATIVE = { "*", "/", "%" };
+
+    private static final String[] FRAGMENTS = {
+        " ", "\n", "\t", "#", "# c\n", "(", ")", "[", "]", "{", "}", ",", ":", "=", "==", "<", "<=",
+        "!", "-", "not ", " end", "\"", "1", "a", "True", "None", "9a", "if ", "else" };
+
+    private static String pick(String[] choices, Random random) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    private static void separator(StringBuilder program, Random random) {
+        program.append(pick(SEPARATORS, random));
+    }
+
+    private static void block(StringBuilder program, Random random, int depth) {
+        program.append(":\n");
+        int statements = random.nextInt(3);
+        for (int i = 0; i < statements; ++i)
+            statement(program, random, depth + 1);
+    }
+
+    private static void statement(StringBuilder program, Random random, int depth) {
+        int choice = random.nextInt(depth < 2 ? 13 : 7);
+        switch (choice) {
+            case 0:
+                program.append("# comment ").append(pick(OPERATORS, random)).append("\n");
+                return;
+            case 1:
+                program.append("final ").append(pick(IDENTIFIERS, random)).append(" = ");
+                expression(program, random, depth);
+                break;
+            case 2:
+                program.append("return");
+                if (random.nextBoolean()) {
+                    program.append(" ");
+                    expression(program, random, depth);
+                }
+                break;
+            case 3:
+            case 4:
+                expression(program, random, depth);
+                break;
+            case 5:
+            case 6:
+                program.append(pick(IDENTIFIERS, random));
+                if (random.nextInt(3) == 0) {
+                    program.append("[");
+                    expression(program, random, depth);
+                    program.append("]");
+                }
+                program.append(" = ");
+                expression(program, random, depth);
+                break;
+            case 7:
+            case 8:
+                program.append("if ");
+                expression(program, random, depth);
+                block(program, random, depth);
+                for (int i = random.nextInt(3); i > 0; --i) {
+                    program.append("elsif ");
+                    expression(program, random, depth);
+                    block(program, random, depth);
+                }
+                if (random.nextBoolean()) {
+                    program.append("else");
+                    block(program, random, depth);
+                }
+                program.append("end");
+                break;
+            case 9:
+                program.append("while ");
+                expression(program, random, depth);
+                block(program, random, depth);
+                program.append("end");
+                break;
+            case 10:
+            case 11:
+                program.append(random.nextBoolean() ? "for " : "pfor ").append(pick(IDENTIFIERS, random)).append(" in ");
+                iterable(program, random, depth);
+                block(program, random, depth);
+                program.append("end");
+                break;
+            default:
+                program.append("def ").append(pick(IDENTIFIERS, random)).append("(");
+                for (int i = random.nextInt(3); i > 0; --i)
+                    program.append(pick(IDENTIFIERS, random)).append(i > 1 ? ", " : "");
+                program.append(")");
+                block(program, random, depth);
+                program.append("end");
+                break;
+        }
+        program.append(random.nextInt(4) == 0 ? " # comment\n" : "\n");
+    }
+
+    /**
+     * Appends a random expression, which mostly follows the levels of precedence of the grammar,
+     * so that it parses.
+     */
+    private static void expression(StringBuilder program, Random random, int depth) {
+        if (depth < 4 && random.nextInt(12) == 0) {
+            // anything goes
+            expression(program, random, depth + 1);
+            separator(program, random);
+            program.append(pick(OPERATORS, random));
+            separator(program, random);
+            expression(program, random, depth + 1);
+            return;
+        }
+        String[] comparisons = random.nextBoolean() ? EQUALITY : RELATIONAL;
+        chain(program, random, depth, DISJUNCTION,
+            () -> chain(program, random, depth, CONJUNCTION,
+                () -> chain(program, random, depth, comparisons,
+                    () -> comparisonOperand(program, random, depth + 1))));
+    }
+
+    /** Appends an operand, sometimes followed by one of the given operators and another operand. */
+    private static void chain(StringBuilder program, Random random, int depth, String[] operators, Runnable operand) {
+        operand.run();
+        if (depth < 2 && random.nextInt(5) == 0) {
+            program.append(" ").append(pick(operators, random));
+            separator(program, random);
+            operand.run();
+        }
+    }
+
+    private static void comparisonOperand(StringBuilder program, Random random, int depth) {
+        // the choices from 6 to 8 nest expressions
+        int choice = random.nextInt(depth < 3 ? 10 : 6);
+        switch (choice) {
+            case 0:
+                program.append("\"s").append(random.nextInt(10)).append(" # \"");
+                break;
+            case 1:
+                program.append(random.nextBoolean() ? "True" : "False");
+                break;
+            case 6:
+                program.append("(");
+                expression(program, random, depth + 1);
+                program.append(")");
+                break;
+            case 7:
+                program.append("not ");
+                if (random.nextBoolean())
+                    program.append(random.nextBoolean() ? "True" : "False");
+                else
+                    value(program, random, depth + 1);
+                break;
+            case 8:
+                indexable(program, random, depth + 1);
+                break;
+            default:
+                numericalOperation(program, random, depth);
+                break;
+        }
+    }
+
+    private static void numericalOperation(StringBuilder program, Random random, int depth) {
+        chain(program, random, depth, ADDITIVE, () -> {
+            if (random.nextInt(5) == 0)
+                program.append("-");
+            chain(program, random, depth, MULTIPLICATIVE, () -> {
+                int choice = random.nextInt(depth < 3 ? 6 : 4);
+                if (choice == 5) {
+                    program.append("(");
+                    numericalOperation(program, random, depth + 1);
+                    program.append(")");
+                } else if (choice < 3) {
+                    program.append(random.nextInt(1000));
+                } else {
+                    value(program, random, depth + 1);
+                }
+            });
+        });
+    }
+
+    private static void value(StringBuilder program, Random random, int depth) {
+        int choice = random.nextInt(depth < 3 ? 6 : 2);
+        if (choice == 0 && random.nextBoolean()) {
+            program.append("None");
+            return;
+        }
+        program.append(pick(IDENTIFIERS, random));
+        if (choice >= 4) {
+            program.append("(");
+            for (int i = random.nextInt(3); i > 0; --i) {
+                expression(program, random, depth + 1);
+                program.append(i > 1 ? ", " : "");
+            }
+            program.append(")");
+        }
+        for (int i = choice == 3 || choice == 5 ? 1 + random.nextInt(2) : 0; i > 0; --i) {
+            program.append("[");
+            expression(program, random, depth + 1);
+            program.append("]");
+        }
+    }
+
+    private static void iterable(StringBuilder program, Random random, int depth) {
+        if (random.nextBoolean())
+            indexable(program, random, depth + 1);
+        else
+            value(program, random, depth + 1);
+    }
+
+    private static void indexable(StringBuilder program, Random random, int depth) {
+        switch (random.nextInt(5)) {
+            case 0:
+                program.append("[");
+                for (int i = random.nextInt(3); i > 0; --i) {
+                    expression(program, random, depth + 1);
+                    program.append(i > 1 ? ", " : "");
+                }
+                program.append("]");
+                break;
+            case 1:
+                program.append("[:");
+                numericalOperation(program, random, depth + 1);
+                program.append("]");
+                break;
+            case 2:
+            case 3:
+                program.append("{");
+                boolean map = random.nextBoolean();
+                for (int i = random.nextInt(3) + (map ? 0 : 1); i > 0; --i) {
+                    expression(program, random, depth + 1);
+                    if (map) {
+                        program.append(": ");
+                        expression(program, random, depth + 1);
+                    }
+                    program.append(i > 1 ? ", " : "");
+                }
+                program.append("}");
+                break;
+            default:
+                program.append("[");
+                expression(program, random, depth + 1);
+                program.append(" for ").append(pick(IDENTIFIERS, random)).append(" in ");
+                iterable(program, random, depth + 1);
+                if (random.nextBoolean()) {
+                    program.append(" if ");
+                    expression(program, random, depth + 1);
+                }
+                program.append("]");
+                break;
+        }
+    }
+
+    /** Deletes, duplicates or inserts a few characters of the source. */
+    private static String mangle(String source, Random random) {
+        StringBuilder mangled = new StringBuilder(source);
+        for (int i = 1 + random.nextInt(2); i > 0; --i) {
+            int start = random.nextInt(mangled.length() + 1);
+            int end = Math.min(mangled.length(), start + random.nextInt(4));
+            switch (random.nextInt(3)) {
+                case 0:
+                    mangled.delete(start, end);
+                    break;
+                case 1:
+                    mangled.insert(start, mangled.substring(start, end));
+                    break;
+                default:
+                    mangled.insert(start, pick(FRAGMENTS, random));
+                    break;
+            }
+        }
+        return mangled.toString();
+    }
+}
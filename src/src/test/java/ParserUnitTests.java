@@ -1,7 +1,11 @@
 import ast.*;
 
 import org.testng.annotations.Test;
+import norswap.autumn.Autumn;
 import norswap.autumn.AutumnTestFixture;
+import norswap.autumn.ParseMetrics;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
 
 import java.util.Arrays;
 import java.util.List;
@@ -87,6 +91,7 @@ public class ParserUnitTests extends AutumnTestFixture {
         successExpect("(a < b) > d", new BinaryNode(new BinaryNode(new IdentifierNode("a"), new IdentifierNode("b"), BinaryNode.L), new IdentifierNode("d"), BinaryNode.G));
         successExpect("a < (b > d)", new BinaryNode(new IdentifierNode("a"), new BinaryNode(new IdentifierNode("b"), new IdentifierNode("d"), BinaryNode.G), BinaryNode.L));
         successExpect("True == False", new BinaryNode(new BoolNode(true), new BoolNode(false), BinaryNode.EQ));
+        successExpect("a + 1 in b", new BinaryNode(new BinaryNode(new IdentifierNode("a"), new IntegerNode(1), BinaryNode.ADD), new IdentifierNode("b"), BinaryNode.IN));
     }
 
     @Test
@@ -173,6 +178,16 @@ public class ParserUnitTests extends AutumnTestFixture {
         failure("{1-3}");
     }
 
+    @Test
+    public void testSet() {
+        this.rule = parser.set;
+        successExpect("{1, \"hello\", a}", new SetNode(Arrays.asList(new IntegerNode(1), new StringNode("hello"), new IdentifierNode("a"))));
+        successExpect("{True}", new SetNode(Arrays.asList(new BoolNode(true))));
+        failure("{}");
+        failure("{1, 2");
+        failure("{1 : 2, 3}");
+    }
+
     @Test
     public void testVariableAssignment() {
         this.rule = parser.variable_assignment;
@@ -235,6 +250,15 @@ public class ParserUnitTests extends AutumnTestFixture {
         failure("for i in b x = 1 end");
     }
 
+    @Test
+    public void testPfor() {
+        this.rule = parser.pfor;
+        successExpect("pfor i in b: x = 1 end", new ForNode(new IdentifierNode("i"), new IdentifierNode("b"), new BlockNode(Arrays.asList(new VarAssignmentNode(new IdentifierNode("x"), new IntegerNode(1)))), true));
+        successExpect("pfor i in range(10): x = 1 end", new ForNode(new IdentifierNode("i"), new FunctionCallNode(new IdentifierNode("range"), Arrays.asList(new ASTNode[]{new IntegerNode(10)})), new BlockNode(Arrays.asList(new VarAssignmentNode(new IdentifierNode("x"), new IntegerNode(1)))), true));
+        failure("pfor i in b: x = 1");
+        failure("for i in b: x = 1 end");
+    }
+
     @Test
     public void testFunctionDef() {
         this.rule = parser.function_def;
@@ -301,4 +325,15 @@ public class ParserUnitTests extends AutumnTestFixture {
         failure("indexer");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testProfile() {
+        ParseResult result = Autumn.parse(parser.root, "a = f(1) < 2 and b == 3\n",
+            ParseOptions.builder().metrics(ParseMetrics::new).get());
+        assertTrue(result.fullMatch);
+        String report = NSParser.profile(result.parseMetrics);
+        assertTrue(report.startsWith("RULE"));
+        assertTrue(report.contains("comparison_operand"));
+        assertTrue(report.contains("function_call"));
+    }
+
+}
@@ -6,6 +6,7 @@ import norswap.utils.visitors.Walker;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.List;
 
 public class SemanticUnitTests extends UraniumTestFixture {
 
@@ -41,6 +42,26 @@ public class SemanticUnitTests extends UraniumTestFixture {
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Analyses a program ending with a list comprehension (possibly assigned to a variable), and
+     * returns whether the comprehension was found to be pure.
+     */
+    private boolean pure (String input) {
+        RootNode root = (RootNode) parse(input);
+        Reactor reactor = new Reactor();
+        configureSemanticAnalysis(reactor, root);
+        reactor.run();
+        assertTrue(reactor.errors().isEmpty(), reactor.reportErrors(Object::toString));
+
+        List<ASTNode> statements = root.block.statements;
+        ASTNode last = statements.get(statements.size() - 1);
+        if (last instanceof VarAssignmentNode)
+            last = ((VarAssignmentNode) last).right;
+        return reactor.get(last, "pure");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test
     public void testInteger() {
         successInput("28");
@@ -202,6 +223,10 @@ public class SemanticUnitTests extends UraniumTestFixture {
 
         failureInput(   "b = False\n" +
                         "a = sort(b)");
+        successInput(   "b = [1, 3, 2, 7]\n" +
+                        "a = sort_in_place(b)");
+        failureInput(   "b = False\n" +
+                        "a = sort_in_place(b)");
         failureAt(new RootNode(new BlockNode(Arrays.asList(
                 new FunctionCallNode(new IdentifierNode("sort"), Arrays.asList(new ASTNode[]{new StringNode("Hello")}))
                 ))),
@@ -217,6 +242,190 @@ public class SemanticUnitTests extends UraniumTestFixture {
         ))));
     }
 
+    @Test
+    public void testAppendPopSlice() {
+        successInput("a = [1, 2]\n" +
+                     "append(a, 3)\n" +
+                     "b = pop(a) + 1\n" +
+                     "c = slice(a, 0, b)");
+
+        failureInput("append(1, 2)");
+        failureInput("pop(\"yo\")");
+        failureInput("slice({1: 2}, 0, 1)");
+        failureInput("slice([1], \"0\", 1)");
+        failureInput("append([1])");
+    }
+
+    @Test
+    public void testSet() {
+        successInput("s = {1, 2}\n" +
+                     "add(s, 3)\n" +
+                     "b = 3 in s\n" +
+                     "c = len(s) + len(set([\"a\"]))\n" +
+                     "d = indexer(s)");
+
+        failureInput("s = {1, [2]}");
+        failureInput("b = 1 in [1]");
+        failureInput("add([1], 2)");
+        failureInput("add({1}, [2])");
+        failureInput("set({1})");
+    }
+
+    @Test
+    public void testPurity() {
+        assertTrue(pure("[x * 2 for x in range(3) if x != 1]"));
+        assertTrue(pure("def f(x):\n" +
+                        "    y = x * 2\n" +
+                        "    return slice(sort([y, 1]), 0, 1)\n" +
+                        "end\n" +
+                        "a = [f(x) for x in range(3)]"));
+        assertTrue(pure("def fib(n):\n" +
+                        "    if n < 2:\n" +
+                        "        return n\n" +
+                        "    end\n" +
+                        "    return fib(n - 1) + fib(n - 2)\n" +
+                        "end\n" +
+                        "[fib(x) for x in range(3)]"));
+        // defining an impure function has no effect, calling it does
+        assertTrue(pure("def f(x):\n" +
+                        "    def g(y):\n" +
+                        "        print(y)\n" +
+                        "    end\n" +
+                        "    return x\n" +
+                        "end\n" +
+                        "[f(x) for x in range(3)]"));
+
+        assertFalse(pure("[print(x) for x in range(3)]"));
+        assertFalse(pure("a = [1]\n" +
+                         "[append(a, x) for x in range(3)]"));
+        assertFalse(pure("def f(x):\n" +
+                         "    println(x)\n" +
+                         "end\n" +
+                         "def g(x):\n" +
+                         "    return f(x)\n" +
+                         "end\n" +
+                         "[g(x) for x in range(3)]"));
+        assertFalse(pure("c = 0\n" +
+                         "def f(x):\n" +
+                         "    c = c + x\n" +
+                         "    return c\n" +
+                         "end\n" +
+                         "[f(x) for x in range(3)]"));
+        assertFalse(pure("def f(x):\n" +
+                         "    x[0] = 1\n" +
+                         "    return x\n" +
+                         "end\n" +
+                         "[f([x]) for x in range(3)]"));
+    }
+
+    @Test
+    public void testPfor() {
+        successInput("total = 0\n" +
+                     "all = True\n" +
+                     "m = {}\n" +
+                     "pfor i in range(10):\n" +
+                     "    x = i * 2\n" +
+                     "    total = total + x\n" +
+                     "    all = all and x < 20\n" +
+                     "    m[i] = x\n" +
+                     "end");
+        successInput("a = [1, 2]\n" +
+                     "pfor i in range(10):\n" +
+                     "    b = [a[0]]\n" +
+                     "    append(b, i)\n" +
+                     "end");
+
+        failureInput("c = 0\n" +
+                     "pfor i in range(10):\n" +
+                     "    c = i\n" +
+                     "end");
+        failureInput("c = 0\n" +
+                     "pfor i in range(10):\n" +
+                     "    c = c + i\n" +
+                     "    c = c * i\n" +
+                     "end");
+        failureInput("c = 0\n" +
+                     "pfor i in range(10):\n" +
+                     "    c = c + i\n" +
+                     "    print(c)\n" +
+                     "end");
+        failureInput("a = [1, 2]\n" +
+                     "pfor i in range(2):\n" +
+                     "    a[i] = i\n" +
+                     "end");
+        failureInput("a = [1, 2]\n" +
+                     "pfor i in range(2):\n" +
+                     "    append(a, i)\n" +
+                     "end");
+        // b may be an alias of a
+        failureInput("a = [1, 2]\n" +
+                     "pfor i in range(2):\n" +
+                     "    b = a\n" +
+                     "    b[i] = \"x\"\n" +
+                     "end");
+        failureInput("a = [1, 2]\n" +
+                     "pfor i in range(2):\n" +
+                     "    b = [i]\n" +
+                     "    b = a\n" +
+                     "    append(b, i)\n" +
+                     "end");
+        successInput("pfor i in range(2):\n" +
+                     "    b = [:2]\n" +
+                     "    b[0] = i\n" +
+                     "    c = sort(b)\n" +
+                     "    c[1] = i\n" +
+                     "end");
+        failureInput("c = 0\n" +
+                     "def f(x):\n" +
+                     "    c = x\n" +
+                     "end\n" +
+                     "pfor i in range(2):\n" +
+                     "    f(i)\n" +
+                     "end");
+        failureInput("total = 0\n" +
+                     "def f(x):\n" +
+                     "    return total + x\n" +
+                     "end\n" +
+                     "pfor i in range(3000):\n" +
+                     "    total = total + f(1)\n" +
+                     "end");
+        // through the functions it calls
+        failureInput("total = 0\n" +
+                     "def f(x):\n" +
+                     "    return total + x\n" +
+                     "end\n" +
+                     "def g(x):\n" +
+                     "    return f(x)\n" +
+                     "end\n" +
+                     "pfor i in range(3000):\n" +
+                     "    total = total + g(1)\n" +
+                     "end");
+        successInput("total = 0\n" +
+                     "k = 1\n" +
+                     "def f(x):\n" +
+                     "    return k + x\n" +
+                     "end\n" +
+                     "pfor i in range(3000):\n" +
+                     "    total = total + f(1)\n" +
+                     "end");
+        failureInput("def f(x):\n" +
+                     "    pfor i in range(x):\n" +
+                     "        return i\n" +
+                     "    end\n" +
+                     "end");
+    }
+
+    @Test
+    public void testMapLookup() {
+        successInput("m = {1: 2}\n" +
+                     "b = 1 in m\n" +
+                     "c = get(m, \"a\", 0) + 1");
+
+        failureInput("get([1], 0, 0)");
+        failureInput("get({1: 2}, 1)");
+        failureInput("b = 1 in \"abc\"");
+    }
+
     @Test
     public void testParseInt() {
         successInput("a = int(\"3\")");
@@ -457,6 +666,19 @@ public class SemanticUnitTests extends UraniumTestFixture {
         successInput(   "def fun(a, b):\n" +
                         "   a = b\n" +
                         "end");
+
+        // functions shadow the built-in functions they are named after
+        successInput(   "def add(a, b):\n" +
+                        "   return a + b\n" +
+                        "end\n" +
+                        "c = add(1, 2)");
+
+        failureInput(   "def fun(a):\n" +
+                        "   return a\n" +
+                        "end\n" +
+                        "def fun(a):\n" +
+                        "   return a\n" +
+                        "end");
     }
 
     @Test
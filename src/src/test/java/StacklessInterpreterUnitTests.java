@@ -0,0 +1,34 @@
+import ast.ASTNode;
+import interpreter.StacklessInterpreter;
+import norswap.uranium.Reactor;
+import org.junit.Test;
+
+/**
+ * Runs the interpreter tests on the {@link StacklessInterpreter}, whose recursion depth is not
+ * bounded by the Java stack.
+ */
+public class StacklessInterpreterUnitTests extends InterpreterUnitTests {
+
+    @Override
+    protected Object execute (Reactor reactor, ASTNode tree) {
+        return new StacklessInterpreter(reactor, new String[0]).interpret(tree);
+    }
+
+    @Test
+    public void testDeepRecursion() {
+        successExpect("def sum(n):\n" +
+                "  if n == 0:\n" +
+                "    return 0\n" +
+                "  end\n" +
+                "  return n + sum(n - 1)\n" +
+                "end\n" +
+                "sum(200000)", 20000100000L);
+        successExpect("def sum(n, acc):\n" +
+                "  if n == 0:\n" +
+                "    return acc\n" +
+                "  end\n" +
+                "  return sum(n - 1, acc + n)\n" +
+                "end\n" +
+                "sum(200000, 0)", 20000100000L);
+    }
+}
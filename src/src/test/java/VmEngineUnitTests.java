@@ -0,0 +1,31 @@
+import ast.ASTNode;
+import ast.RootNode;
+import norswap.uranium.Reactor;
+import vm.Program;
+import vm.VM;
+import vm.VMCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Runs the interpreter tests on the register-based {@link VM}. Each program goes through
+ * serialization before running, to check that compiled programs are self-contained.
+ */
+public class VmEngineUnitTests extends InterpreterUnitTests {
+
+    @Override
+    protected Object execute (Reactor reactor, ASTNode tree) {
+        Program program = VMCompiler.compile(reactor, (RootNode) tree);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            program.write(out);
+            program = Program.read(new ByteArrayInputStream(out.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new VM(program).run(new String[0]);
+    }
+}